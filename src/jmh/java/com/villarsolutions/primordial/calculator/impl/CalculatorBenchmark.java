@@ -0,0 +1,144 @@
+package com.villarsolutions.primordial.calculator.impl;
+
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.impl.aws.AWSLambdaCalculator;
+import com.villarsolutions.primordial.calculator.impl.aws.LocalLambdaInvoker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the full <code>calculatePrimes(ceiling)</code> of each calculator, i.e. the same work as
+ * the /primes path without the cache.  The AWSLambdaCalculator runs its lambdas in-process, with the LocalLambdaInvoker,
+ * since the run-time of the real lambdas depends on the network and on their state far more than on this code.  This
+ * measures the fan-out to the lambdas (and the decoding of their responses) for a given latency.
+ * <p>
+ * The BasicTrialDivision only gets small ceilings, since it takes minutes for the ceilings of the sieves.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class CalculatorBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class TrialDivision {
+
+        @Param({"100000", "1000000"})
+        private long ceiling;
+
+        private final BasicTrialDivision calculator = new BasicTrialDivision();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Sieve {
+
+        @Param({"10000000", "1000000000"})
+        private long ceiling;
+
+        private final EratosthenesSieve calculator = new EratosthenesSieve();
+    }
+
+    /**
+     * The thread-pool is created once per trial, like the shared thread-pool of the server.
+     */
+    @State(Scope.Benchmark)
+    public static class ParallelSieve {
+
+        @Param({"10000000", "1000000000"})
+        private long ceiling;
+
+        @Param({"1", "2", "4", "8"})
+        private int threads;
+
+        @Param({"65536", "16777216"})
+        private int minSegmentSize;
+
+        @Param({"32768", "262144"})
+        private int blockSize;
+
+        private ExecutorService executorService;
+        private ParallelEratosthenesSieve calculator;
+
+        @Setup
+        public void setUp() {
+            executorService = Executors.newFixedThreadPool(threads);
+            calculator = new ParallelEratosthenesSieve(executorService, threads, minSegmentSize, Integer.MAX_VALUE, 19, blockSize);
+        }
+
+        @TearDown
+        public void tearDown() {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Each thread of the scheduler plays the part of a lambda, so there are as many of them as lambdas in flight.
+     */
+    @State(Scope.Benchmark)
+    public static class Lambdas {
+
+        @Param({"1000000000"})
+        private long ceiling;
+
+        @Param({"8", "50"})
+        private int lambdas;
+
+        @Param({"0", "50"})
+        private long latencyMillis;
+
+        @Param({"65536", "16777216"})
+        private int minSegmentSize;
+
+        private ScheduledExecutorService scheduler;
+        private AWSLambdaCalculator calculator;
+
+        @Setup
+        public void setUp() {
+            scheduler = Executors.newScheduledThreadPool(lambdas);
+            calculator = new AWSLambdaCalculator(new LocalLambdaInvoker(scheduler, latencyMillis), minSegmentSize,
+                100_000_000, lambdas, 19);
+        }
+
+        @TearDown
+        public void tearDown() {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public PrimeSequence basicTrialDivision(TrialDivision state) {
+        return state.calculator.calculatePrimes(state.ceiling);
+    }
+
+    @Benchmark
+    public PrimeSequence eratosthenesSieve(Sieve state) {
+        return state.calculator.calculatePrimes(state.ceiling);
+    }
+
+    @Benchmark
+    public PrimeSequence parallelEratosthenesSieve(ParallelSieve state) {
+        return state.calculator.calculatePrimes(state.ceiling);
+    }
+
+    @Benchmark
+    public PrimeSequence awsLambdaCalculator(Lambdas state) {
+        return state.calculator.calculatePrimes(state.ceiling);
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.villarsolutions.primordial.calculator.impl;
+
+import com.google.common.collect.Lists;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the bookkeeping around the segments of the parallel calculators: splitting the number line
+ * into segments, and concatenating the primes of every segment into the result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SegmentationBenchmark {
+
+    /**
+     * The same number of segments as the ParallelEratosthenesSieve creates for <code>threads</code> threads.
+     */
+    @State(Scope.Benchmark)
+    public static class NumberLine {
+
+        private static final int SEGMENTS_PER_THREAD = 16;
+
+        @Param({"1000000000", "100000000000"})
+        private long ceiling;
+
+        @Param({"1", "4", "16"})
+        private int threads;
+
+        @Param({"65536", "16777216"})
+        private int minSegmentSize;
+    }
+
+    /**
+     * The primes up to <code>CEILING</code>, split into <code>segments</code> segments of the same size.
+     */
+    @State(Scope.Benchmark)
+    public static class SegmentedPrimes {
+
+        private static final long CEILING = 100_000_000;
+
+        @Param({"4", "64", "256"})
+        private int segments;
+
+        private List<PrimeSequence> sequences;
+
+        @Setup
+        public void setUp() {
+            PrimeSequence primes = new EratosthenesSieve().calculatePrimes(CEILING);
+            long segmentSize = CEILING / segments;
+            sequences = Lists.newArrayListWithCapacity(segments);
+            for (int s = 0; s < segments; s++) {
+                long upperBound = s == segments - 1 ? CEILING : (s + 1) * segmentSize;
+                sequences.add(primes.slice(s * segmentSize + 1, upperBound));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Segment> divideIntoSegments(NumberLine state) {
+        return AbstractSegmentedSieveCalculator.divideIntoSegments(state.ceiling, state.minSegmentSize, Integer.MAX_VALUE,
+            state.threads * NumberLine.SEGMENTS_PER_THREAD, 19);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public PrimeSequence concatenate(SegmentedPrimes state) {
+        return PrimeSequence.concat(state.sequences);
+    }
+
+}
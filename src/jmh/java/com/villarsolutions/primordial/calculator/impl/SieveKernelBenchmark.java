@@ -0,0 +1,80 @@
+package com.villarsolutions.primordial.calculator.impl;
+
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.villarsolutions.primordial.util.PrimordialUtil.isqrt;
+
+/**
+ * Benchmarks the single-threaded kernels which every sieve calculator is built on: the sieve of the
+ * small primes (<code>findPrimes</code>) and the cache-blocked sieve of a single segment.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SieveKernelBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SmallPrimes {
+
+        @Param({"46341", "1000000", "100000000"})
+        private int ceiling;
+
+        private final EratosthenesSieve sieve = new EratosthenesSieve();
+    }
+
+    /**
+     * A segment of <code>segmentSize</code> numbers from <code>lowerBound</code>, and its sieving primes.
+     */
+    @State(Scope.Benchmark)
+    public static class SegmentToSieve {
+
+        @Param({"1000000000", "1000000000000"})
+        private long lowerBound;
+
+        @Param({"1048576", "16777216"})
+        private int segmentSize;
+
+        @Param({"32768", "262144"})
+        private int blockSize;
+
+        private Segment segment;
+        private PrimeSequence smallPrimes;
+
+        @Setup
+        public void setUp() {
+            segment = Segment.create(lowerBound, segmentSize);
+            smallPrimes = new EratosthenesSieve().findPrimes((int) isqrt(segment.getUpperBound()));
+        }
+    }
+
+    @Benchmark
+    public PrimeSequence findPrimes(SmallPrimes state) {
+        return state.sieve.findPrimes(state.ceiling);
+    }
+
+    @Benchmark
+    public PrimeSequence calculatePrimesInSegment(SegmentToSieve state) {
+        return SegmentedSieveUtil.calculatePrimesInSegment(state.smallPrimes, state.segment, state.blockSize);
+    }
+
+    @Benchmark
+    public int countPrimesInSegment(SegmentToSieve state) {
+        return SegmentedSieveUtil.countPrimesInSegment(state.smallPrimes, state.segment, state.blockSize);
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.villarsolutions.primordial;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Preconditions;
+import com.villarsolutions.primordial.exception.CapacityExceededException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.villarsolutions.primordial.util.PrimordialUtil.getDecimalFormat;
+
+/**
+ * Keeps the calculations which run at the same time from needing more heap, between them, than a fixed budget.
+ * <p>
+ * Before a calculation starts, it reserves its estimated peak memory (see <code>PrimeCalculator.estimatePeakMemory</code>)
+ * from the budget, and it gives the reservation back once it is done.  If the budget is exhausted, the calculation waits
+ * for up to <code>maxWaitMillis</code> for other calculations to finish, and is rejected with a CapacityExceededException
+ * after that.  A calculation which would not fit in the whole budget is rejected straight away.
+ * <p>
+ * The following metrics are published:
+ * <ul>
+ *     <li><code>queueDepth</code> - the number of calculations waiting for the budget</li>
+ *     <li><code>reservedBytes</code> - the bytes reserved by the calculations which are running</li>
+ *     <li><code>rejected</code> - the rate of calculations rejected</li>
+ *     <li><code>rejectedBytes</code> - the rate of bytes requested by the calculations rejected</li>
+ * </ul>
+ * This class is thread-safe.
+ */
+public class AdmissionController {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionController.class);
+
+    private final long maxBytes;
+    private final long maxWaitMillis;
+    private final Meter rejected = new Meter();
+    private final Meter rejectedBytes = new Meter();
+
+    // Guarded by this
+    private long reservedBytes;
+    private int queueDepth;
+
+    public AdmissionController(long maxBytes, long maxWaitMillis) {
+        Preconditions.checkArgument(maxBytes > 0, "maxBytes must be greater than 0");
+        Preconditions.checkArgument(maxWaitMillis >= 0, "maxWaitMillis must not be negative");
+        this.maxBytes = maxBytes;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Reserves <code>bytes</code> from the budget, waiting for other calculations to give theirs back if needed.
+     * The reservation must be closed once the calculation is done, whether it succeeded or not.
+     */
+    public Reservation reserve(long bytes) throws CapacityExceededException {
+        if (bytes > maxBytes) {
+            throw reject(bytes, String.format("The calculation needs about [%s] bytes of heap, more than the whole budget of [%s] bytes",
+                getDecimalFormat().format(bytes), getDecimalFormat().format(maxBytes)), 0);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        synchronized (this) {
+            queueDepth++;
+            try {
+                while (reservedBytes + bytes > maxBytes) {
+                    long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remainingMillis <= 0) {
+                        throw reject(bytes, String.format("The calculation needs about [%s] bytes of heap, but only [%s] of the [%s] bytes are free",
+                            getDecimalFormat().format(bytes), getDecimalFormat().format(maxBytes - reservedBytes),
+                            getDecimalFormat().format(maxBytes)), getRetryAfterSecs());
+                    }
+                    wait(remainingMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw reject(bytes, "Interrupted while waiting for heap to be free", getRetryAfterSecs());
+            } finally {
+                queueDepth--;
+            }
+            reservedBytes += bytes;
+        }
+        return new Reservation(bytes);
+    }
+
+    public void registerMetrics(MetricRegistry metrics) {
+        metrics.register(MetricRegistry.name(AdmissionController.class, "queueDepth"), (Gauge<Integer>) this::getQueueDepth);
+        metrics.register(MetricRegistry.name(AdmissionController.class, "reservedBytes"), (Gauge<Long>) this::getReservedBytes);
+        metrics.register(MetricRegistry.name(AdmissionController.class, "rejected"), rejected);
+        metrics.register(MetricRegistry.name(AdmissionController.class, "rejectedBytes"), rejectedBytes);
+    }
+
+    public synchronized int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    private synchronized void release(long bytes) {
+        reservedBytes -= bytes;
+        notifyAll();
+    }
+
+    private CapacityExceededException reject(long bytes, String msg, long retryAfterSecs) {
+        rejected.mark();
+        rejectedBytes.mark(bytes);
+        log.warn(msg);
+        return new CapacityExceededException(msg, retryAfterSecs);
+    }
+
+    /**
+     * A request which has already waited <code>maxWaitMillis</code> is told to wait as long again.
+     */
+    private long getRetryAfterSecs() {
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(maxWaitMillis));
+    }
+
+    /**
+     * The bytes reserved by a calculation, which are given back to the budget when it is closed.
+     */
+    public class Reservation implements AutoCloseable {
+
+        // Guarded by this
+        private long bytes;
+        private boolean closed;
+
+        private Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Gives back all but <code>retainedBytes</code> of the reservation, e.g. once a calculation is done but its
+         * result is kept for a while.  A reservation can only shrink, so the remaining bytes never need to wait.
+         */
+        public synchronized void shrinkTo(long retainedBytes) {
+            Preconditions.checkArgument(retainedBytes >= 0, "retainedBytes must not be negative");
+            if (!closed && retainedBytes < bytes) {
+                release(bytes - retainedBytes);
+                bytes = retainedBytes;
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release(bytes);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package com.villarsolutions.primordial;
+
+import com.google.common.base.Stopwatch;
+import com.villarsolutions.primordial.api.CalculationResult;
+import com.villarsolutions.primordial.api.JobStatus;
+import com.villarsolutions.primordial.api.JobStatus.State;
+import com.villarsolutions.primordial.calculator.PrimeCalculator;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+import java.util.concurrent.Future;
+
+import static com.villarsolutions.primordial.util.PrimordialUtil.getDecimalFormat;
+import static com.villarsolutions.primordial.util.PrimordialUtil.getElapsedSecs;
+
+/**
+ * A calculation of the primes up to a ceiling which runs in the background, see CalculationJobs.
+ * <p>
+ * The job goes from QUEUED to RUNNING, and then to one of COMPLETED, FAILED or CANCELLED.  Once it is
+ * in one of these, its state does not change anymore.
+ * <p>
+ * This class is thread-safe.
+ */
+public class CalculationJob {
+
+    private static final Logger log = LoggerFactory.getLogger(CalculationJob.class);
+
+    private final String id;
+    private final PrimeCalculator calculator;
+    private final long ceiling;
+    private final ProgressMonitor monitor = new ProgressMonitor();
+    private final Stopwatch stopwatch = Stopwatch.createUnstarted();
+
+    // Guarded by this
+    private State state = State.QUEUED;
+    private Future<?> future;
+    private PrimeSequence primes;
+    private AdmissionController.Reservation reservation;
+    private String error;
+
+    public CalculationJob(String id, PrimeCalculator calculator, long ceiling) {
+        this.id = id;
+        this.calculator = calculator;
+        this.ceiling = ceiling;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Runs the calculation on the calling thread, once its memory has been reserved from the AdmissionController.
+     * Once the job is COMPLETED, the reservation shrinks to the heap of its primes, which it keeps until the job
+     * is discarded.
+     */
+    void run(AdmissionController admissionController) {
+        synchronized (this) {
+            if (state != State.QUEUED) {
+                return;
+            }
+            state = State.RUNNING;
+            stopwatch.start();
+        }
+
+        AdmissionController.Reservation peakReservation = null;
+        boolean retained = false;
+        try {
+            peakReservation = admissionController.reserve(calculator.estimatePeakMemory(ceiling));
+            PrimeSequence result = calculator.calculatePrimes(ceiling, monitor);
+            peakReservation.shrinkTo((long) result.size() * Long.BYTES);
+            retained = finish(State.COMPLETED, result, peakReservation, null);
+        } catch (RuntimeException e) {
+            if (!isCancelled()) {
+                log.error(String.format("Job [%s] could not calculate the primes up to ceiling [%s]", id, getDecimalFormat().format(ceiling)), e);
+            }
+            finish(State.FAILED, null, null, e.getMessage());
+        } finally {
+            if (peakReservation != null && !retained) {
+                peakReservation.close();
+            }
+        }
+    }
+
+    synchronized void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * Cancels the job, and interrupts its thread if it is running.  A segmented calculation also stops its
+     * segments which are running on the shared thread-pool.  The primes found so far are discarded.
+     *
+     * @return false if the job had already finished.
+     */
+    public boolean cancel() {
+        Future<?> running;
+        synchronized (this) {
+            if (isFinished()) {
+                return false;
+            }
+            finish(State.CANCELLED, null, null, null);
+            running = future;
+        }
+        monitor.cancel();
+        if (running != null) {
+            running.cancel(true);
+        }
+        return true;
+    }
+
+    /**
+     * Cancels the job if it has not finished yet, and otherwise drops its primes and gives back their reservation.
+     * This is called once the job is forgotten by CalculationJobs.
+     */
+    void discard() {
+        if (cancel()) {
+            return;
+        }
+        AdmissionController.Reservation released;
+        synchronized (this) {
+            primes = null;
+            released = reservation;
+            reservation = null;
+        }
+        if (released != null) {
+            released.close();
+        }
+    }
+
+    /**
+     * Returns the result once the job is COMPLETED, unless it has been discarded since.
+     *
+     * @param keepLast if not null, only the last N primes are returned.
+     */
+    public synchronized Optional<CalculationResult> getResult(Integer keepLast) {
+        if (state != State.COMPLETED || primes == null) {
+            return Optional.empty();
+        }
+        PrimeSequence result = keepLast == null ? primes : primes.tail(keepLast);
+        return Optional.of(CalculationResult.create(calculator, ceiling, primes.size(), keepLast, result,
+            getElapsedSecs(stopwatch), stopwatch.toString()));
+    }
+
+    public synchronized JobStatus getStatus() {
+        return new JobStatus(id, calculator.getClass().getSimpleName(), ceiling, state, monitor.getCompletedSegments(),
+            monitor.getTotalSegments(), getElapsedSecs(stopwatch), error);
+    }
+
+    private synchronized boolean isCancelled() {
+        return state == State.CANCELLED;
+    }
+
+    synchronized boolean isFinished() {
+        return state == State.COMPLETED || state == State.FAILED || state == State.CANCELLED;
+    }
+
+    /**
+     * Only the first of the final states sticks, e.g. a job which is cancelled while it is running does not
+     * become FAILED (or COMPLETED) when its thread stops.
+     *
+     * @return false if the job had already finished, in which case the <code>resultReservation</code> is not kept
+     * and must be closed by the caller.
+     */
+    private synchronized boolean finish(State finalState, PrimeSequence result, AdmissionController.Reservation resultReservation,
+                                        String errorMessage) {
+        if (isFinished()) {
+            return false;
+        }
+        state = finalState;
+        primes = result;
+        reservation = resultReservation;
+        error = errorMessage;
+        if (stopwatch.isRunning()) {
+            stopwatch.stop();
+        }
+        return true;
+    }
+
+}
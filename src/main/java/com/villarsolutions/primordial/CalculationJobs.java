@@ -0,0 +1,81 @@
+package com.villarsolutions.primordial;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.villarsolutions.primordial.calculator.PrimeCalculator;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs calculations in the background, so that a long calculation does not hold up a request thread
+ * (or an HTTP connection) until it is done.  The caller submits a job, and then polls it for its status
+ * and finally its result.
+ * <p>
+ * The jobs run on their own thread-pool, and reserve their memory from the AdmissionController like any
+ * other calculation.  A COMPLETED job keeps the reservation of its primes for as long as it is retained, so the
+ * results waiting to be fetched count against the same budget as the calculations which are running.  A job is
+ * forgotten (and cancelled if it is still running, or its primes dropped otherwise) once nobody has polled it
+ * for <code>retentionMinutes</code>, or once it is deleted, so that the results which are never fetched do not
+ * hold on to the heap forever.  No more than <code>MAX_JOBS</code> jobs can be queued or running at once, and any
+ * further ones are rejected rather than displacing them.
+ * <p>
+ * This class is thread-safe.
+ */
+public class CalculationJobs {
+
+    @VisibleForTesting
+    static final int MAX_JOBS = 100;
+
+    private final ExecutorService executorService;
+    private final AdmissionController admissionController;
+    private final Cache<String, CalculationJob> jobs;
+
+    public CalculationJobs(ExecutorService executorService, AdmissionController admissionController, long retentionMinutes) {
+        this.executorService = executorService;
+        this.admissionController = admissionController;
+        this.jobs = CacheBuilder.newBuilder()
+            .expireAfterAccess(retentionMinutes, TimeUnit.MINUTES)
+            .<String, CalculationJob>removalListener(removal -> removal.getValue().discard())
+            .build();
+    }
+
+    /**
+     * @throws RejectedExecutionException if <code>MAX_JOBS</code> jobs are already queued or running, or the
+     * thread-pool of the jobs is saturated.
+     */
+    public synchronized CalculationJob submit(PrimeCalculator calculator, long ceiling) throws RejectedExecutionException {
+        jobs.cleanUp();
+        long unfinishedJobs = jobs.asMap().values().stream().filter(job -> !job.isFinished()).count();
+        if (unfinishedJobs >= MAX_JOBS) {
+            throw new RejectedExecutionException(String.format("There are already [%s] jobs queued or running", unfinishedJobs));
+        }
+
+        CalculationJob job = new CalculationJob(UUID.randomUUID().toString(), calculator, ceiling);
+        job.setFuture(executorService.submit(() -> job.run(admissionController)));
+        jobs.put(job.getId(), job);
+        return job;
+    }
+
+    public Optional<CalculationJob> get(String id) {
+        return Optional.ofNullable(jobs.getIfPresent(id));
+    }
+
+    /**
+     * Forgets the job, cancelling it if it is still running, or dropping its primes otherwise.
+     */
+    public Optional<CalculationJob> remove(String id) {
+        return Optional.ofNullable(jobs.asMap().remove(id));
+    }
+
+    public void registerMetrics(MetricRegistry metrics) {
+        metrics.register(MetricRegistry.name(CalculationJobs.class, "size"), (Gauge<Long>) jobs::size);
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.villarsolutions.primordial;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.metrics.graphite.GraphiteReporterFactory;
+import io.dropwizard.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports every metric of the server to Graphite, as configured in the <code>metrics</code> section of the yml file,
+ * from when the server starts until it stops.
+ */
+public class ManagedGraphiteReporter implements Managed {
+
+    private static final Logger log = LoggerFactory.getLogger(ManagedGraphiteReporter.class);
+
+    private static final Duration DEFAULT_FREQUENCY = Duration.minutes(1);
+
+    private final GraphiteReporterFactory reporterFactory;
+    private final MetricRegistry metrics;
+    private ScheduledReporter reporter;
+
+    public ManagedGraphiteReporter(GraphiteReporterFactory reporterFactory, MetricRegistry metrics) {
+        this.reporterFactory = reporterFactory;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void start() throws Exception {
+        Duration frequency = reporterFactory.getFrequency().orElse(DEFAULT_FREQUENCY);
+        reporter = reporterFactory.build(metrics);
+        reporter.start(frequency.toMilliseconds(), TimeUnit.MILLISECONDS);
+        log.info(String.format("Reporting the metrics to Graphite at [%s:%d] every [%s]", reporterFactory.getHost(), reporterFactory.getPort(), frequency));
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (reporter != null) {
+            reporter.stop();
+        }
+    }
+
+}
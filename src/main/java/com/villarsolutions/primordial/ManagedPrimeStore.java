@@ -0,0 +1,53 @@
+package com.villarsolutions.primordial;
+
+import com.villarsolutions.primordial.calculator.impl.PrimeBitmapStore;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the PrimeBitmapStore when the server starts, so that the sieve calculators are warm straight after a restart.
+ * <p>
+ * If there is no file yet, or it covers a smaller ceiling than the configured one, the file is (re-)built
+ * on a background thread, so that it does not hold up the start of the server.  In the meantime, requests
+ * are sieved as usual (or answered from the old file, if there is one).
+ */
+public class ManagedPrimeStore implements Managed {
+
+    private static final Logger log = LoggerFactory.getLogger(ManagedPrimeStore.class);
+
+    private final PrimeBitmapStore primeStore;
+    private final long ceiling;
+
+    public ManagedPrimeStore(PrimeBitmapStore primeStore, long ceiling) {
+        this.primeStore = primeStore;
+        this.ceiling = ceiling;
+    }
+
+    @Override
+    public void start() throws Exception {
+        primeStore.load();
+        if (!primeStore.covers(ceiling)) {
+            Thread builder = new Thread(this::build, "prime-store-builder");
+            builder.setDaemon(true);
+            builder.start();
+        }
+    }
+
+    private void build() {
+        try {
+            primeStore.build(ceiling);
+        } catch (RuntimeException e) {
+            log.error("Could not build the prime bitmap, requests will be sieved instead", e);
+        }
+    }
+
+    /**
+     * The mapped file is released when the store is garbage collected.  If it is still being built, the
+     * partially written file is simply replaced on the next start.
+     */
+    @Override
+    public void stop() throws Exception {
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.villarsolutions.primordial;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed-size thread-pool which is shared by every request to a calculator, and whose lifecycle
+ * is managed by DropWizard, i.e. it is shut down cleanly when the server stops.
+ * <p>
+ * Creating a thread-pool per request means that every request pays for creating its threads, and the number
+ * of threads grows with the number of concurrent requests.  With a shared pool, the number of threads is bounded
+ * and concurrent requests queue up for the same threads instead.
+ * <p>
+ * The queue is bounded as well.  Once it is full, new tasks are rejected with a RejectedExecutionException
+ * rather than piling up in memory.
+ * <p>
+ * The following metrics are published under <code>executors.&lt;name&gt;</code>:
+ * <ul>
+ *     <li><code>queueDepth</code> - the number of tasks waiting for a thread</li>
+ *     <li><code>activeCount</code> - the number of threads which are running a task</li>
+ *     <li><code>utilization</code> - the ratio of the threads which are running a task, from 0 to 1</li>
+ *     <li><code>poolSize</code> - the number of threads in the pool</li>
+ *     <li><code>completed</code> - the number of tasks completed so far</li>
+ *     <li><code>rejected</code> - the rate of tasks rejected because the queue was full</li>
+ * </ul>
+ */
+public class ManagedThreadPool implements Managed {
+
+    private static final Logger log = LoggerFactory.getLogger(ManagedThreadPool.class);
+
+    private static final long SHUTDOWN_TIMEOUT_SECS = 30;
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final Meter rejected = new Meter();
+
+    public ManagedThreadPool(String name, int numThreads, int queueCapacity) {
+        Preconditions.checkArgument(numThreads > 0, "numThreads must be greater than 0");
+        Preconditions.checkArgument(queueCapacity > 0, "queueCapacity must be greater than 0");
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build(),
+            (task, pool) -> {
+                rejected.mark();
+                throw new RejectedExecutionException(String.format("The [%s] thread-pool is saturated, its queue of [%d] tasks is full", name, queueCapacity));
+            });
+    }
+
+    public ExecutorService getExecutorService() {
+        return executor;
+    }
+
+    public int getNumThreads() {
+        return executor.getCorePoolSize();
+    }
+
+    public void registerMetrics(MetricRegistry metrics) {
+        metrics.register(MetricRegistry.name("executors", name, "queueDepth"), (Gauge<Integer>) () -> executor.getQueue().size());
+        metrics.register(MetricRegistry.name("executors", name, "activeCount"), (Gauge<Integer>) executor::getActiveCount);
+        metrics.register(MetricRegistry.name("executors", name, "utilization"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(executor.getActiveCount(), executor.getCorePoolSize());
+            }
+        });
+        metrics.register(MetricRegistry.name("executors", name, "poolSize"), (Gauge<Integer>) executor::getPoolSize);
+        metrics.register(MetricRegistry.name("executors", name, "completed"), (Gauge<Long>) executor::getCompletedTaskCount);
+        metrics.register(MetricRegistry.name("executors", name, "rejected"), rejected);
+    }
+
+    @Override
+    public void start() throws Exception {
+        executor.prestartAllCoreThreads();
+        log.info(String.format("Started the [%s] thread-pool with [%d] threads", name, getNumThreads()));
+    }
+
+    /**
+     * Lets the tasks that are already running or queued complete for a while, and then interrupts them.
+     */
+    @Override
+    public void stop() throws Exception {
+        executor.shutdown();
+        if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECS, TimeUnit.SECONDS)) {
+            log.warn(String.format("The [%s] thread-pool did not terminate within [%d] seconds, interrupting its threads", name, SHUTDOWN_TIMEOUT_SECS));
+            executor.shutdownNow();
+        }
+        log.info(String.format("Stopped the [%s] thread-pool", name));
+    }
+
+}
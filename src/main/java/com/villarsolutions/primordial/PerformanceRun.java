@@ -0,0 +1,156 @@
+package com.villarsolutions.primordial;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.villarsolutions.primordial.api.PerformanceResult;
+import com.villarsolutions.primordial.calculator.PrimeCalculator;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.exception.CalculationCancelledException;
+import com.villarsolutions.primordial.exception.CalculationException;
+import com.villarsolutions.primordial.exception.CapacityExceededException;
+import com.villarsolutions.primordial.util.JvmCounters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.villarsolutions.primordial.util.PrimordialUtil.getDecimalFormat;
+
+/**
+ * Times a calculator over a number of warmup iterations, which are discarded, and then a number of measured iterations,
+ * from which the mean, standard deviation, min, max and p50/p90/p99 times are worked out.  The percentiles are
+ * nearest-rank, so with few iterations p90 and p99 are simply the slowest ones.
+ * <p>
+ * Each calculator gets a time budget of <code>budgetMillis</code> for all its iterations:
+ * <ul>
+ *     <li>Each iteration is given the time left in the budget as its deadline, and is ABORTED if it runs out</li>
+ *     <li>An iteration is not started if the slowest one so far would not fit in the time left, and the calculator
+ *         is SKIPPED with the iterations measured until then.  It is also SKIPPED if its peak memory does not fit in
+ *         the budget of the AdmissionController</li>
+ * </ul>
+ * The bytes allocated and the garbage collections during the measured iterations are read from the JMX beans, see
+ * JvmCounters, so they also include any other request which runs at the same time.
+ * <p>
+ * The cache is always bypassed, and the heap is reserved once for all the iterations of a calculator.
+ */
+public class PerformanceRun {
+
+    private static final Logger log = LoggerFactory.getLogger(PerformanceRun.class);
+
+    private static final int SCALE = 6;
+
+    private final AdmissionController admissionController;
+    private final int warmupIterations;
+    private final int measuredIterations;
+    private final long budgetMillis;
+
+    public PerformanceRun(AdmissionController admissionController, int warmupIterations, int measuredIterations, long budgetMillis) {
+        Preconditions.checkArgument(warmupIterations >= 0, "warmupIterations must not be negative");
+        Preconditions.checkArgument(measuredIterations > 0, "measuredIterations must be greater than 0");
+        Preconditions.checkArgument(budgetMillis > 0, "budgetMillis must be greater than 0");
+        this.admissionController = admissionController;
+        this.warmupIterations = warmupIterations;
+        this.measuredIterations = measuredIterations;
+        this.budgetMillis = budgetMillis;
+    }
+
+    public PerformanceResult run(PrimeCalculator calculator, long ceiling) {
+        String calculatorType = calculator.getClass().getSimpleName();
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        List<Long> timesNanos = Lists.newArrayList();
+        int warmupsDone = 0;
+        long countOfPrimes = 0;
+        long slowestNanos = 0;
+        JvmCounters before = null;
+        PerformanceResult.State state = PerformanceResult.State.COMPLETED;
+        String error = null;
+
+        try (AdmissionController.Reservation ignored = admissionController.reserve(calculator.estimatePeakMemory(ceiling))) {
+            for (int i = 0; i < warmupIterations + measuredIterations; i++) {
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0 || slowestNanos > remainingNanos) {
+                    state = PerformanceResult.State.SKIPPED;
+                    error = String.format("Skipped the last [%d] iterations, which would not have completed within the budget of [%d] ms",
+                        warmupIterations + measuredIterations - i, budgetMillis);
+                    break;
+                }
+
+                boolean measured = i >= warmupIterations;
+                if (measured && before == null) {
+                    before = JvmCounters.read();
+                }
+                ProgressMonitor monitor = new ProgressMonitor(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos)));
+                long startNanos = System.nanoTime();
+                PrimeSequence primes = calculator.calculatePrimes(ceiling, monitor);
+                long elapsedNanos = System.nanoTime() - startNanos;
+                // The calculators which do not check the monitor only find out about the deadline here
+                monitor.checkCancelled();
+
+                countOfPrimes = primes.size();
+                slowestNanos = Math.max(slowestNanos, elapsedNanos);
+                if (measured) {
+                    timesNanos.add(elapsedNanos);
+                } else {
+                    warmupsDone++;
+                }
+            }
+        } catch (CalculationCancelledException e) {
+            state = PerformanceResult.State.ABORTED;
+            error = e.getMessage();
+        } catch (CalculationException e) {
+            log.error(String.format("Calculator [%s] threw an error in the performance run for ceiling [%s]", calculatorType, getDecimalFormat().format(ceiling)), e);
+            state = PerformanceResult.State.FAILED;
+            error = e.getMessage();
+        } catch (CapacityExceededException e) {
+            state = PerformanceResult.State.SKIPPED;
+            error = e.getMessage();
+        }
+
+        JvmCounters counters = before == null ? null : JvmCounters.read().since(before);
+        return createResult(calculatorType, state, warmupsDone, timesNanos, countOfPrimes, counters, error);
+    }
+
+    private static PerformanceResult createResult(String calculatorType, PerformanceResult.State state, int warmupsDone, List<Long> timesNanos,
+                                                  long countOfPrimes, JvmCounters counters, String error) {
+        int n = timesNanos.size();
+        if (n == 0) {
+            return new PerformanceResult(calculatorType, state, warmupsDone, 0, countOfPrimes, null, null, null, null, null, null, null, null,
+                JvmCounters.UNSUPPORTED, 0, 0, error);
+        }
+
+        List<Long> sorted = Lists.newArrayList(timesNanos);
+        Collections.sort(sorted);
+        double mean = sorted.stream().mapToLong(Long::longValue).average().getAsDouble();
+        double sumOfSquares = sorted.stream().mapToDouble(t -> (t - mean) * (t - mean)).sum();
+        double stdDev = n > 1 ? Math.sqrt(sumOfSquares / (n - 1)) : 0;
+
+        BigDecimal p50 = toSecs(percentile(sorted, 50));
+        BigDecimal stdDevSecs = toSecs(stdDev);
+        String timeElapsedDesc = String.format("%s s ± %s s over %d iterations", p50, stdDevSecs, n);
+        long allocatedBytesPerIteration = counters.getAllocatedBytes() == JvmCounters.UNSUPPORTED
+            ? JvmCounters.UNSUPPORTED
+            : counters.getAllocatedBytes() / n;
+
+        return new PerformanceResult(calculatorType, state, warmupsDone, n, countOfPrimes, timeElapsedDesc, toSecs(mean), stdDevSecs,
+            toSecs(sorted.get(0)), p50, toSecs(percentile(sorted, 90)), toSecs(percentile(sorted, 99)), toSecs(sorted.get(n - 1)),
+            allocatedBytesPerIteration, counters.getGcCount(), counters.getGcTimeMillis(), error);
+    }
+
+    /**
+     * The nearest-rank percentile, i.e. the smallest time which at least <code>percent</code>% of the times are no greater than.
+     */
+    static long percentile(List<Long> sortedNanos, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sortedNanos.size());
+        return sortedNanos.get(Math.max(0, rank - 1));
+    }
+
+    private static BigDecimal toSecs(double nanos) {
+        return BigDecimal.valueOf(nanos / TimeUnit.SECONDS.toNanos(1)).setScale(SCALE, RoundingMode.HALF_UP);
+    }
+
+}
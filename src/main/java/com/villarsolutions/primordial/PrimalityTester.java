@@ -0,0 +1,97 @@
+package com.villarsolutions.primordial;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.villarsolutions.primordial.calculator.impl.MillerRabin;
+import com.villarsolutions.primordial.exception.CalculationException;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Tests batches of numbers for primality with the MillerRabin test.
+ * <p>
+ * A batch of up to <code>MIN_CHUNK_SIZE</code> numbers is tested on the calling thread.  A larger batch is split into
+ * up to <code>levelOfParallelism</code> chunks, which are tested on the shared thread-pool of the local calculators,
+ * except for the last chunk which is tested on the calling thread while it waits for the others.
+ * <p>
+ * The following metrics are published:
+ * <ul>
+ *     <li><code>batches</code> - the time taken by each batch</li>
+ *     <li><code>numbers</code> - the rate of numbers tested</li>
+ * </ul>
+ * This class is thread-safe.
+ */
+public class PrimalityTester {
+
+    /**
+     * Below this, handing the numbers to another thread takes longer than testing them.
+     */
+    static final int MIN_CHUNK_SIZE = 1 << 14;
+
+    private final MillerRabin millerRabin;
+    private final ExecutorService executorService;
+    private final int levelOfParallelism;
+    private final Timer batches = new Timer();
+    private final Meter numbers = new Meter();
+
+    public PrimalityTester(MillerRabin millerRabin, ExecutorService executorService, int levelOfParallelism) {
+        Preconditions.checkArgument(levelOfParallelism > 0, "levelOfParallelism must be greater than 0");
+        this.millerRabin = millerRabin;
+        this.executorService = executorService;
+        this.levelOfParallelism = levelOfParallelism;
+    }
+
+    /**
+     * Returns whether each of the <code>candidates</code> is prime, in the same order.
+     *
+     * @throws RejectedExecutionException if the thread-pool is saturated.
+     */
+    public boolean[] test(long[] candidates) throws CalculationException, RejectedExecutionException {
+        boolean[] results = new boolean[candidates.length];
+        int chunks = Math.max(1, Math.min(levelOfParallelism, candidates.length / MIN_CHUNK_SIZE));
+        int chunkSize = (candidates.length + chunks - 1) / chunks;
+
+        try (Timer.Context ignored = batches.time()) {
+            List<Future<?>> futures = Lists.newArrayList();
+            try {
+                for (int from = 0; from + chunkSize < candidates.length; from += chunkSize) {
+                    int start = from;
+                    futures.add(executorService.submit(() -> test(candidates, results, start, start + chunkSize)));
+                }
+                test(candidates, results, futures.size() * chunkSize, candidates.length);
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CalculationException("Interrupted while testing the numbers for primality", e);
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            } finally {
+                futures.forEach(f -> f.cancel(true));
+            }
+        }
+        numbers.mark(candidates.length);
+        return results;
+    }
+
+    private void test(long[] candidates, boolean[] results, int from, int to) {
+        for (int i = from; i < to; i++) {
+            results[i] = millerRabin.isPrime(candidates[i]);
+        }
+    }
+
+    public void registerMetrics(MetricRegistry metrics) {
+        metrics.register(MetricRegistry.name(PrimalityTester.class, "batches"), batches);
+        metrics.register(MetricRegistry.name(PrimalityTester.class, "numbers"), numbers);
+    }
+
+}
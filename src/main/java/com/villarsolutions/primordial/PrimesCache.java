@@ -0,0 +1,310 @@
+package com.villarsolutions.primordial;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.villarsolutions.primordial.calculator.AbstractPrimeCalculator;
+import com.villarsolutions.primordial.calculator.PrimeCalculator;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.exception.CalculationCancelledException;
+import com.villarsolutions.primordial.exception.CalculationException;
+import com.villarsolutions.primordial.exception.CapacityExceededException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import static com.villarsolutions.primordial.util.PrimordialUtil.getDecimalFormat;
+
+/**
+ * Caches the primes found by each calculator, so that repeated (or nested) ceilings are not sieved again.
+ * <p>
+ * For each calculator, the cache holds a single "prefix": all the primes from 2 up to the largest ceiling that
+ * was calculated so far, in its primitive <code>long[]</code> form.
+ * <ul>
+ *     <li>A ceiling at or below the prefix is a <b>hit</b>, and is answered by slicing the prefix.</li>
+ *     <li>A ceiling above the prefix is a <b>partial hit</b> if the prefix covers at least half of it.  Only the primes
+ *         between the two ceilings are calculated, as one or more ranges, and the prefix is extended with them.</li>
+ *     <li>Otherwise it is a <b>miss</b>.  The whole ceiling is calculated (which is faster than a range for the
+ *         parallel calculators), and becomes the new prefix.</li>
+ * </ul>
+ * The prefixes are evicted on a least-recently-used basis once their total size exceeds <code>maxBytes</code>.
+ * A prefix which would not fit on its own is never cached, and does not replace a smaller one.
+ * <p>
+ * Every request is given its own read-only view of the primes (see <code>PrimeSequence.asReadOnly()</code>), rather than
+ * the cached sequence itself or a copy of it.  So a hit allocates nothing, however many primes it returns, and no
+ * request can modify the primes which are returned to the others.
+ * <p>
+ * Concurrent requests are coalesced: while the primes up to a ceiling are being calculated, any request
+ * for the same calculator with the same or a smaller ceiling waits for that calculation and slices its result,
+ * rather than calculating them again.  This holds even if the primes are too large to be cached.
+ * <p>
+ * Only the calculations which actually run reserve their estimated memory from the AdmissionController, so
+ * requests which are answered from the cache, or which wait for another calculation, are never rejected.
+ * <p>
+ * The rates of hits, partial hits, misses and coalesced requests, and the size of the cache, are published as metrics.
+ * This class is thread-safe.
+ */
+public class PrimesCache {
+
+    private static final Logger log = LoggerFactory.getLogger(PrimesCache.class);
+
+    /**
+     * The weight of each prefix is its size in KB, since the weight of a Guava cache entry is an int.
+     */
+    private static final int BYTES_PER_WEIGHT_UNIT = 1024;
+
+    private final long maxWeight;
+    private final AdmissionController admissionController;
+    private final Cache<String, Prefix> prefixes;
+    private final Meter hits = new Meter();
+    private final Meter partialHits = new Meter();
+    private final Meter misses = new Meter();
+    private final Meter coalesced = new Meter();
+
+    /**
+     * The calculations in flight for each calculator.  Guarded by itself.
+     */
+    private final ListMultimap<String, Calculation> calculations = ArrayListMultimap.create();
+
+    public PrimesCache(long maxBytes, AdmissionController admissionController) {
+        this.maxWeight = maxBytes / BYTES_PER_WEIGHT_UNIT;
+        this.admissionController = admissionController;
+        // A single segment, since Guava splits the maximum weight between the segments and evicts any prefix which
+        // is heavier than the share of its segment, even if the rest of the cache is empty.  There is at most one
+        // prefix per calculator, so there is little contention to spread anyway.
+        this.prefixes = CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(maxWeight)
+            .weigher((String calculatorType, Prefix prefix) -> getWeight(prefix.primes))
+            .build();
+    }
+
+    /**
+     * Returns the primes from 2 to <code>ceiling</code>, from the cache if possible, or by using the calculator otherwise.
+     *
+     * @throws CapacityExceededException if the primes need to be calculated, but there is not enough heap to do so.
+     */
+    public PrimeSequence calculatePrimes(PrimeCalculator calculator, long ceiling) throws CalculationException, CapacityExceededException {
+        return calculatePrimes(calculator, ceiling, new ProgressMonitor());
+    }
+
+    /**
+     * Same as {@link #calculatePrimes(PrimeCalculator, long)}, but gives up once the <code>monitor</code> is cancelled
+     * or its deadline passes, whether this request calculates the primes or waits for another request to do so.
+     * <p>
+     * If the calculation which this request waits for is cancelled by the request which started it, this request
+     * carries on (and most likely starts a calculation of its own).
+     *
+     * @throws CalculationCancelledException if the monitor is cancelled before the primes are found.
+     */
+    public PrimeSequence calculatePrimes(PrimeCalculator calculator, long ceiling, ProgressMonitor monitor)
+        throws CalculationException, CapacityExceededException {
+        List<AdmissionController.Reservation> reservations = Lists.newArrayList();
+        try {
+            return calculatePrimes(calculator, ceiling, monitor, reservations::add);
+        } finally {
+            reservations.forEach(AdmissionController.Reservation::close);
+        }
+    }
+
+    /**
+     * Same as {@link #calculatePrimes(PrimeCalculator, long, ProgressMonitor)}, but if this request calculates the primes,
+     * the reservation of the calculation is handed to <code>reservations</code> as soon as it is made, and the caller
+     * must close it.  This lets the caller hold the reservation for as long as it holds the primes, e.g. until they
+     * have been written to the response.  The primes which are read from the cache, or from the calculation of another
+     * request, come without a reservation.
+     */
+    public PrimeSequence calculatePrimes(PrimeCalculator calculator, long ceiling, ProgressMonitor monitor,
+                                         Consumer<AdmissionController.Reservation> reservations)
+        throws CalculationException, CapacityExceededException {
+        String calculatorType = calculator.getClass().getSimpleName();
+        Prefix prefix = prefixes.getIfPresent(calculatorType);
+
+        if (prefix != null && ceiling <= prefix.ceiling) {
+            hits.mark();
+            return prefix.primes.slice(2, ceiling);
+        }
+
+        while (true) {
+            // A calculation puts its primes in the cache before it stops being in flight, so the prefix is read
+            // again under the lock in case a calculation which covers this ceiling has just completed.
+            Optional<Calculation> inFlight;
+            Calculation calculation = new Calculation(ceiling);
+            synchronized (calculations) {
+                prefix = prefixes.getIfPresent(calculatorType);
+                if (prefix != null && ceiling <= prefix.ceiling) {
+                    hits.mark();
+                    return prefix.primes.slice(2, ceiling);
+                }
+                inFlight = calculations.get(calculatorType).stream()
+                    .filter(c -> c.ceiling >= ceiling)
+                    .min(Comparator.comparingLong(c -> c.ceiling));
+                if (!inFlight.isPresent()) {
+                    calculations.put(calculatorType, calculation);
+                }
+            }
+
+            if (inFlight.isPresent()) {
+                coalesced.mark();
+                try {
+                    PrimeSequence primes = inFlight.get().await(monitor);
+                    return primes.slice(2, ceiling);
+                } catch (CalculationCancelledException e) {
+                    monitor.checkCancelled();
+                    continue;
+                }
+            }
+
+            try {
+                PrimeSequence primes = calculate(calculator, calculatorType, prefix, ceiling, monitor, reservations);
+                calculation.result.complete(primes);
+                return primes;
+            } catch (RuntimeException e) {
+                calculation.result.completeExceptionally(e);
+                throw e;
+            } finally {
+                synchronized (calculations) {
+                    calculations.remove(calculatorType, calculation);
+                }
+            }
+        }
+    }
+
+    /**
+     * Extending a prefix holds about as many primes as calculating the whole ceiling (since the prefix is copied
+     * into the result), so the same amount of memory is reserved either way.
+     * <p>
+     * The result is read-only, since it is shared with the cache and with the requests which wait for it.
+     */
+    private PrimeSequence calculate(PrimeCalculator calculator, String calculatorType, Prefix prefix, long ceiling, ProgressMonitor monitor,
+                                    Consumer<AdmissionController.Reservation> reservations) {
+        reservations.accept(admissionController.reserve(calculator.estimatePeakMemory(ceiling)));
+        PrimeSequence primes;
+        if (prefix != null && prefix.ceiling >= ceiling / 2) {
+            partialHits.mark();
+            log.info(String.format("Extending the cached primes of [%s] from [%s] to [%s]", calculatorType,
+                getDecimalFormat().format(prefix.ceiling), getDecimalFormat().format(ceiling)));
+            primes = extend(calculator, prefix, ceiling, monitor);
+        } else {
+            misses.mark();
+            primes = calculator.calculatePrimes(ceiling, monitor);
+        }
+
+        put(calculatorType, new Prefix(ceiling, primes.asReadOnly()));
+        return primes.asReadOnly();
+    }
+
+    /**
+     * Returns the primes from <code>lowerBound</code> to <code>ceiling</code> if the cached prefix of the calculator covers
+     * them, without calculating anything otherwise.
+     */
+    public Optional<PrimeSequence> getIfCovered(PrimeCalculator calculator, long lowerBound, long ceiling) {
+        Prefix prefix = prefixes.getIfPresent(calculator.getClass().getSimpleName());
+        if (prefix == null || ceiling > prefix.ceiling) {
+            return Optional.empty();
+        }
+        hits.mark();
+        return Optional.of(prefix.primes.slice(lowerBound, ceiling));
+    }
+
+    public void registerMetrics(MetricRegistry metrics) {
+        metrics.register(MetricRegistry.name(PrimesCache.class, "hits"), hits);
+        metrics.register(MetricRegistry.name(PrimesCache.class, "partialHits"), partialHits);
+        metrics.register(MetricRegistry.name(PrimesCache.class, "misses"), misses);
+        metrics.register(MetricRegistry.name(PrimesCache.class, "coalesced"), coalesced);
+        metrics.register(MetricRegistry.name(PrimesCache.class, "bytes"), (Gauge<Long>) () ->
+            prefixes.asMap().values().stream().mapToLong(prefix -> (long) prefix.primes.size() * Long.BYTES).sum());
+    }
+
+    /**
+     * The ranges are calculated in pieces of at most <code>AbstractPrimeCalculator.MAX_RANGE_SIZE</code> numbers,
+     * each of which stops as soon as the <code>monitor</code> is cancelled.
+     */
+    private static PrimeSequence extend(PrimeCalculator calculator, Prefix prefix, long ceiling, ProgressMonitor monitor) {
+        List<PrimeSequence> sequences = Lists.newArrayList(prefix.primes);
+        for (long lowerBound = prefix.ceiling + 1; lowerBound <= ceiling; lowerBound += AbstractPrimeCalculator.MAX_RANGE_SIZE) {
+            long upperBound = Math.min(ceiling, lowerBound + (AbstractPrimeCalculator.MAX_RANGE_SIZE - 1));
+            sequences.add(calculator.calculatePrimes(lowerBound, upperBound, monitor));
+        }
+        return PrimeSequence.concat(sequences);
+    }
+
+    /**
+     * Concurrent requests may race to extend the same prefix, in which case the largest one is kept.
+     */
+    private void put(String calculatorType, Prefix prefix) {
+        if (getWeight(prefix.primes) > maxWeight) {
+            log.info(String.format("Not caching the [%s] primes up to [%s] since they would not fit",
+                getDecimalFormat().format(prefix.primes.size()), getDecimalFormat().format(prefix.ceiling)));
+            return;
+        }
+        prefixes.asMap().merge(calculatorType, prefix, (current, candidate) -> candidate.ceiling > current.ceiling ? candidate : current);
+    }
+
+    private static int getWeight(PrimeSequence primes) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) primes.size() * Long.BYTES / BYTES_PER_WEIGHT_UNIT + 1);
+    }
+
+    /**
+     * The primes from 2 to the ceiling which are being calculated for a request, for any concurrent request to wait on.
+     */
+    private static class Calculation {
+
+        private final long ceiling;
+        private final CompletableFuture<PrimeSequence> result = new CompletableFuture<>();
+
+        private Calculation(long ceiling) {
+            this.ceiling = ceiling;
+        }
+
+        /**
+         * If the calculation fails (or is rejected), every request which waits on it fails with the same error.
+         * The wait itself is bounded by the deadline of the <code>monitor</code> of the waiting request.
+         */
+        private PrimeSequence await(ProgressMonitor monitor) throws CalculationException, CapacityExceededException {
+            try {
+                return result.get(monitor.getRemainingNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                throw monitor.newCancelledException();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CalculationException("Interrupted while waiting for the primes to be calculated", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new CalculationException(e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    /**
+     * All the primes from 2 to the ceiling, as a read-only sequence which is never handed out itself.  Every request
+     * which reads the primes is given a view of its own.
+     */
+    private static class Prefix {
+
+        private final long ceiling;
+        private final PrimeSequence primes;
+
+        private Prefix(long ceiling, PrimeSequence primes) {
+            this.ceiling = ceiling;
+            this.primes = primes;
+        }
+    }
+
+}
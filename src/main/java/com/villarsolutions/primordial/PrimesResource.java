@@ -2,44 +2,86 @@ package com.villarsolutions.primordial;
 
 import com.codahale.metrics.annotation.Timed;
 import com.google.common.base.Stopwatch;
-import com.google.common.collect.Lists;
 import com.google.inject.*;
 import com.google.inject.name.Names;
 import com.villarsolutions.primordial.api.CalculationResult;
+import com.villarsolutions.primordial.api.NextPrimesResult;
 import com.villarsolutions.primordial.api.PerformanceResult;
 import com.villarsolutions.primordial.api.PerformanceResultSummary;
+import com.villarsolutions.primordial.api.PrimalityResult;
+import com.villarsolutions.primordial.calculator.AbstractPrimeCalculator;
 import com.villarsolutions.primordial.calculator.PrimeCalculator;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.calculator.impl.PrimeIterator;
+import com.villarsolutions.primordial.exception.CalculationCancelledException;
 import com.villarsolutions.primordial.exception.CalculationException;
+import com.villarsolutions.primordial.exception.CapacityExceededException;
+import org.glassfish.jersey.server.CloseableService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
 import java.math.BigDecimal;
+import java.net.URI;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 import static com.villarsolutions.primordial.util.PrimordialUtil.getDecimalFormat;
+import static com.villarsolutions.primordial.util.PrimordialUtil.getElapsedSecs;
 
 /**
  * This is the main DropWizard Resource class for the Primordial application.
  * <p>
  * DropWizard resources are similar to Spring controllers, in that they map URL paths to application code.
  * <p>
- * This class supports two paths:
+ * This class supports eight paths:
  * <ul>
  *     <li>/primes - used to calculate prime numbers</li>
+ *     <li>/primes/stream - used to calculate prime numbers, streaming them to the client as newline-delimited JSON
+ *         while they are being calculated</li>
+ *     <li>/primes/range - used to calculate the prime numbers between a <code>lower</code> and an <code>upper</code> bound (both inclusive)
+ *         without searching the number line below the lower bound</li>
+ *     <li>/primes/count - used to count the prime numbers up to a ceiling, without finding the prime numbers themselves</li>
+ *     <li>/primes/next and /primes/previous - used to find the first <code>count</code> prime numbers after (or before) a
+ *         <code>from</code> number, sieving forward (or backward) from it one window at a time</li>
+ *     <li>/primes/test - used to test whether one or many 64-bit numbers are prime, without sieving the numbers below them.
+ *         The numbers are given as <code>n</code> parameters, or POSTed as a JSON array</li>
  *     <li>/primes/performance - used to run all configured calculators sequentially and collate the run-times into a single response</li>
+ *     <li>/primes/jobs - used to calculate prime numbers in the background.  A POST submits a job and returns its id, which is then
+ *         used to poll the job's status and progress at /primes/jobs/{id}, fetch its result at /primes/jobs/{id}/result, or cancel it
+ *         (or discard its result) with a DELETE to /primes/jobs/{id}</li>
  * </ul>
- * Both paths accept a <code>ceiling</code> parameter, which can be used to specify the upper limit for the prime number search.
+ * The /primes, /primes/stream, /primes/count, /primes/performance and /primes/jobs paths accept a <code>ceiling</code> parameter, which can be used to specify the
+ * upper limit for the prime number search.
  * <p>
- * The /primes path also accepts a <code>calculatorType</code> parameter, which can be used to specify the calculator implementation to use.
+ * The /primes, /primes/stream, /primes/range, /primes/count and /primes/jobs paths also accept a <code>calculatorType</code> parameter, which can be used to specify the calculator
+ * implementation to use.
  * <p>
- * Finally, the /primes path can be given a <code>keepLast</code> parameter which can be used to limit the returned prime numbers to the
- * "last N prime numbers" found.
+ * Finally, the /primes, /primes/range and /primes/jobs/{id}/result paths can be given a <code>keepLast</code> parameter which can be used to limit the returned
+ * prime numbers to the "last N prime numbers" found.
+ * <p>
+ * The calculations which hold all the primes in memory (/primes, /primes/range, /primes/next, /primes/previous and /primes/performance) are admitted by
+ * an AdmissionController.  If there is not enough heap left for them, they are rejected with a
+ * <code>503 Service Unavailable</code> response, and a <code>Retry-After</code> header if they may succeed later.
+ * Their reservation is only released once the response has been written, since the primes are held until then
+ * (which, for hundreds of millions of primes, takes seconds).  The primes read from the PrimesCache are views of
+ * the cached ones, so they need no reservation of their own.
+ * <p>
+ * The /primes, /primes/stream, /primes/range, /primes/count, /primes/next and /primes/previous paths accept a <code>timeoutMillis</code> parameter.  The calculation is stopped once it
+ * has run for that long (or for <code>maxCalculationMillis</code>, whichever is shorter), and the request fails with a
+ * <code>503 Service Unavailable</code> response.
+ * <p>
+ * The /primes/performance path runs each calculator for <code>warmup</code> iterations and then <code>iterations</code> measured ones,
+ * within a time budget per calculator of <code>budgetMillis</code> (which is also capped by <code>maxCalculationMillis</code>).
+ * See PerformanceRun.
  */
 @Path(PrimesResource.URL_BASE_PATH)
 @Produces(MediaType.APPLICATION_JSON + ";charset=utf-8")
@@ -51,88 +93,393 @@ public class PrimesResource {
     public static final String CEILING_PARAMETER = "ceiling";
     public static final String CALCULATOR_TYPE_PARAMETER = "calculatorType";
     public static final String KEEP_LAST_PARAMETER = "keepLast";
+    public static final String LOWER_PARAMETER = "lower";
+    public static final String UPPER_PARAMETER = "upper";
+    public static final String JOB_ID_PARAMETER = "id";
+    public static final String TIMEOUT_MILLIS_PARAMETER = "timeoutMillis";
+    public static final String WARMUP_PARAMETER = "warmup";
+    public static final String ITERATIONS_PARAMETER = "iterations";
+    public static final String BUDGET_MILLIS_PARAMETER = "budgetMillis";
+    public static final String NUMBER_PARAMETER = "n";
+    public static final String FROM_PARAMETER = "from";
+    public static final String COUNT_PARAMETER = "count";
+
+    private static final int DEFAULT_WARMUP_ITERATIONS = 1;
+    private static final int DEFAULT_MEASURED_ITERATIONS = 5;
+    private static final int MAX_ITERATIONS = 100;
+    private static final int MAX_PRIMALITY_BATCH_SIZE = 1_000_000;
+    private static final int MAX_ADJACENT_PRIMES = 10_000_000;
 
     private final Injector injector;
+    private final PrimesCache cache;
+    private final AdmissionController admissionController;
+    private final CalculationJobs jobs;
+    private final PrimalityTester primalityTester;
     private final PrimeCalculator defaultCalculator;
+    private final long maxCalculationMillis;
+    private final long performanceBudgetMillis;
 
-    public PrimesResource(Injector injector, String defaultCalculator) {
+    /**
+     * @param maxCalculationMillis the deadline of the calculations which are not given a shorter <code>timeoutMillis</code>.
+     * @param performanceBudgetMillis the time budget of each calculator in a performance run which is not given a <code>budgetMillis</code>.
+     */
+    public PrimesResource(Injector injector, PrimesCache cache, AdmissionController admissionController, CalculationJobs jobs,
+                          PrimalityTester primalityTester, String defaultCalculator, long maxCalculationMillis, long performanceBudgetMillis) {
         this.injector = injector;
+        this.cache = cache;
+        this.admissionController = admissionController;
+        this.jobs = jobs;
+        this.primalityTester = primalityTester;
+        this.maxCalculationMillis = maxCalculationMillis;
+        this.performanceBudgetMillis = performanceBudgetMillis;
         this.defaultCalculator = getCalculatorBean(defaultCalculator).orElseThrow(() -> new IllegalArgumentException(noCalculatorMessage(defaultCalculator)));
         log.info(String.format("%s has been successfully initialized with default calculator [%s]", getClass().getSimpleName(), defaultCalculator));
     }
 
     @GET
     @Timed
-    public Response calculatePrime(@QueryParam(CALCULATOR_TYPE_PARAMETER) String calculatorType, @QueryParam(CEILING_PARAMETER) Long ceiling, @QueryParam(KEEP_LAST_PARAMETER) Integer keepLast) {
+    public Response calculatePrime(@QueryParam(CALCULATOR_TYPE_PARAMETER) String calculatorType, @QueryParam(CEILING_PARAMETER) Long ceiling,
+                                   @QueryParam(KEEP_LAST_PARAMETER) Integer keepLast, @QueryParam(TIMEOUT_MILLIS_PARAMETER) Long timeoutMillis,
+                                   @Context CloseableService closeables) {
         checkParameter(CEILING_PARAMETER, ceiling);
-        PrimeCalculator calculator = calculatorType == null ? defaultCalculator : getCalculatorBean(calculatorType).orElseThrow(() -> new BadRequestException(noCalculatorMessage(calculatorType)));
-        return calculatePrime(calculator, ceiling, keepLast);
+        return calculatePrime(getCalculator(calculatorType), ceiling, keepLast, createMonitor(timeoutMillis), closeables);
     }
 
     @GET
-    @Path("/performance")
+    @Path("/stream")
+    @Produces(PrimesStreamingOutput.NDJSON_MEDIA_TYPE)
     @Timed
-    public Response performanceRun(@QueryParam(CEILING_PARAMETER) Long ceiling) {
+    public Response streamPrimes(@QueryParam(CALCULATOR_TYPE_PARAMETER) String calculatorType, @QueryParam(CEILING_PARAMETER) Long ceiling,
+                                 @QueryParam(TIMEOUT_MILLIS_PARAMETER) Long timeoutMillis) {
         checkParameter(CEILING_PARAMETER, ceiling);
+        PrimeCalculator calculator = getCalculator(calculatorType);
         validateCeiling(ceiling);
+        return Response.ok(new PrimesStreamingOutput(calculator, ceiling, createMonitor(timeoutMillis))).build();
+    }
+
+    @GET
+    @Path("/range")
+    @Timed
+    public Response calculatePrimesInRange(@QueryParam(CALCULATOR_TYPE_PARAMETER) String calculatorType, @QueryParam(LOWER_PARAMETER) Long lower,
+                                           @QueryParam(UPPER_PARAMETER) Long upper, @QueryParam(KEEP_LAST_PARAMETER) Integer keepLast,
+                                           @QueryParam(TIMEOUT_MILLIS_PARAMETER) Long timeoutMillis, @Context CloseableService closeables) {
+        checkParameter(LOWER_PARAMETER, lower);
+        checkParameter(UPPER_PARAMETER, upper);
+        PrimeCalculator calculator = getCalculator(calculatorType);
+        validateRange(lower, upper);
+        validateKeepLast(keepLast);
+        ProgressMonitor monitor = createMonitor(timeoutMillis);
 
-        List<Binding<PrimeCalculator>> calculatorBindings = injector.findBindingsByType(TypeLiteral.get(PrimeCalculator.class));
         try {
-            List<CalculationResult> calculationResults = calculatorBindings.stream()
-                    .map(c -> getCalculationResult(c.getProvider().get(), ceiling, null))
-                    .collect(Collectors.toList());
-
-            int countOfPrimes = 0;
-            List<PerformanceResult> results = Lists.newArrayList();
-            if (!calculationResults.isEmpty()) {
-                countOfPrimes = calculationResults.get(0).getCountOfPrimes();
-                calculationResults.stream()
-                        .map(result -> new PerformanceResult(result.getCalculatorType(), result.getTimeElapsedSecs(), result.getTimeElapsedDesc()))
-                        .sorted()
-                        .forEach(results::add);
-            }
+            CalculationResult result = getCalculationResult(calculator, lower, upper, keepLast, monitor, closeables);
+            return Response.ok(result).build();
+        } catch (CalculationCancelledException e) {
+            return serviceUnavailable(e);
+        } catch (CalculationException e) {
+            String msg = String.format("Calculator [%s] threw an error when computing primes from [%s] to [%s]", calculator.getClass().getSimpleName(),
+                getDecimalFormat().format(lower), getDecimalFormat().format(upper));
+            log.error(msg, e);
+            return  Response.serverError().entity(e.getMessage()).build();
+        } catch (CapacityExceededException e) {
+            return serviceUnavailable(e);
+        }
+    }
+
+    @GET
+    @Path("/count")
+    @Timed
+    public Response countPrimes(@QueryParam(CALCULATOR_TYPE_PARAMETER) String calculatorType, @QueryParam(CEILING_PARAMETER) Long ceiling,
+                                @QueryParam(TIMEOUT_MILLIS_PARAMETER) Long timeoutMillis) {
+        checkParameter(CEILING_PARAMETER, ceiling);
+        PrimeCalculator calculator = getCalculator(calculatorType);
+        validateCeiling(ceiling);
+        ProgressMonitor monitor = createMonitor(timeoutMillis);
+
+        try {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            long countOfPrimes = calculator.countPrimes(ceiling, monitor);
+            stopwatch.stop();
 
-            PerformanceResultSummary summary = new PerformanceResultSummary(ceiling, countOfPrimes, results);
-            return Response.ok(summary).build();
+            CalculationResult result = CalculationResult.createForCount(calculator, ceiling, countOfPrimes, getElapsedSecs(stopwatch), stopwatch.toString());
+            return Response.ok(result).build();
+        } catch (CalculationCancelledException e) {
+            return serviceUnavailable(e);
         } catch (CalculationException e) {
-            String msg = String.format("Could not complete performance run for ceiling [%s] run due to CalculationException", getDecimalFormat().format(ceiling));
+            String msg = String.format("Calculator [%s] threw an error when counting primes up to ceiling [%s]", calculator.getClass().getSimpleName(), getDecimalFormat().format(ceiling));
             log.error(msg, e);
             return  Response.serverError().entity(e.getMessage()).build();
         }
     }
 
-    private Response calculatePrime(PrimeCalculator calculator, long ceiling, Integer keepLast) {
+    @GET
+    @Path("/next")
+    @Timed
+    public Response nextPrimes(@QueryParam(FROM_PARAMETER) Long from, @QueryParam(COUNT_PARAMETER) Integer count,
+                               @QueryParam(TIMEOUT_MILLIS_PARAMETER) Long timeoutMillis, @Context CloseableService closeables) {
+        return findAdjacentPrimes(from, count, timeoutMillis, true, closeables);
+    }
+
+    @GET
+    @Path("/previous")
+    @Timed
+    public Response previousPrimes(@QueryParam(FROM_PARAMETER) Long from, @QueryParam(COUNT_PARAMETER) Integer count,
+                                   @QueryParam(TIMEOUT_MILLIS_PARAMETER) Long timeoutMillis, @Context CloseableService closeables) {
+        return findAdjacentPrimes(from, count, timeoutMillis, false, closeables);
+    }
+
+    @GET
+    @Path("/test")
+    @Timed
+    public Response testPrimality(@QueryParam(NUMBER_PARAMETER) List<Long> numbers) {
+        return testPrimality(numbers.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    /**
+     * Same as the GET, for batches which are too large for a URL.  The body is a JSON array of numbers.
+     */
+    @POST
+    @Path("/test")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Timed
+    public Response testPrimality(long[] numbers) {
+        if (numbers == null || numbers.length == 0) {
+            throw new BadRequestException(String.format("At least one number must be given to test, e.g. with the [%s] parameter", NUMBER_PARAMETER));
+        }
+        if (numbers.length > MAX_PRIMALITY_BATCH_SIZE) {
+            throw new BadRequestException(String.format("At most [%s] numbers can be tested at once",
+                getDecimalFormat().format(MAX_PRIMALITY_BATCH_SIZE)));
+        }
+
+        try {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            boolean[] prime = primalityTester.test(numbers);
+            stopwatch.stop();
+            return Response.ok(new PrimalityResult(numbers, prime, getElapsedSecs(stopwatch), stopwatch.toString())).build();
+        } catch (RejectedExecutionException e) {
+            log.warn(e.getMessage());
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(e.getMessage()).build();
+        } catch (CalculationException e) {
+            log.error(String.format("Could not test [%s] numbers for primality", getDecimalFormat().format(numbers.length)), e);
+            return  Response.serverError().entity(e.getMessage()).build();
+        }
+    }
+
+    @GET
+    @Path("/performance")
+    @Timed
+    public Response performanceRun(@QueryParam(CEILING_PARAMETER) Long ceiling, @QueryParam(WARMUP_PARAMETER) Integer warmup,
+                                   @QueryParam(ITERATIONS_PARAMETER) Integer iterations, @QueryParam(BUDGET_MILLIS_PARAMETER) Long budgetMillis) {
+        checkParameter(CEILING_PARAMETER, ceiling);
+        validateCeiling(ceiling);
+        int warmupIterations = validateIterations(WARMUP_PARAMETER, warmup, DEFAULT_WARMUP_ITERATIONS, 0);
+        int measuredIterations = validateIterations(ITERATIONS_PARAMETER, iterations, DEFAULT_MEASURED_ITERATIONS, 1);
+        if (budgetMillis != null && budgetMillis <= 0) {
+            throw new BadRequestException(String.format("The '%s' parameter must be greater than 0", BUDGET_MILLIS_PARAMETER));
+        }
+
+        PerformanceRun run = new PerformanceRun(admissionController, warmupIterations, measuredIterations,
+            Math.min(budgetMillis == null ? performanceBudgetMillis : budgetMillis, maxCalculationMillis));
+        List<PerformanceResult> results = injector.findBindingsByType(TypeLiteral.get(PrimeCalculator.class)).stream()
+                .map(c -> run.run(c.getProvider().get(), ceiling))
+                .sorted()
+                .collect(Collectors.toList());
+
+        long countOfPrimes = results.stream()
+                .filter(r -> r.getState() == PerformanceResult.State.COMPLETED)
+                .findFirst()
+                .map(PerformanceResult::getCountOfPrimes)
+                .orElse(0L);
+
+        PerformanceResultSummary summary = new PerformanceResultSummary(ceiling, countOfPrimes, results);
+        return Response.ok(summary).build();
+    }
+
+    @POST
+    @Path("/jobs")
+    @Timed
+    public Response submitJob(@QueryParam(CALCULATOR_TYPE_PARAMETER) String calculatorType, @QueryParam(CEILING_PARAMETER) Long ceiling) {
+        checkParameter(CEILING_PARAMETER, ceiling);
+        PrimeCalculator calculator = getCalculator(calculatorType);
+        validateCeiling(ceiling);
+
+        try {
+            CalculationJob job = jobs.submit(calculator, ceiling);
+            URI location = UriBuilder.fromResource(PrimesResource.class).path("/jobs/{id}").build(job.getId());
+            return Response.accepted(job.getStatus()).location(location).build();
+        } catch (RejectedExecutionException e) {
+            log.warn(e.getMessage());
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(e.getMessage()).build();
+        }
+    }
+
+    @GET
+    @Path("/jobs/{id}")
+    public Response getJobStatus(@PathParam(JOB_ID_PARAMETER) String id) {
+        return Response.ok(getJob(id).getStatus()).build();
+    }
+
+    /**
+     * Until the job is COMPLETED, its status is returned instead, with a <code>409 Conflict</code>.
+     */
+    @GET
+    @Path("/jobs/{id}/result")
+    public Response getJobResult(@PathParam(JOB_ID_PARAMETER) String id, @QueryParam(KEEP_LAST_PARAMETER) Integer keepLast) {
+        validateKeepLast(keepLast);
+        CalculationJob job = getJob(id);
+        return job.getResult(keepLast)
+            .map(result -> Response.ok(result).build())
+            .orElseGet(() -> Response.status(Response.Status.CONFLICT).entity(job.getStatus()).build());
+    }
+
+    @DELETE
+    @Path("/jobs/{id}")
+    public Response cancelJob(@PathParam(JOB_ID_PARAMETER) String id) {
+        CalculationJob job = jobs.remove(id).orElseThrow(() -> new NotFoundException(String.format("There is no job with id [%s]", id)));
+        return Response.ok(job.getStatus()).build();
+    }
+
+    private Response calculatePrime(PrimeCalculator calculator, long ceiling, Integer keepLast, ProgressMonitor monitor,
+                                    CloseableService closeables) {
         validateCeiling(ceiling);
         validateKeepLast(keepLast);
 
         try {
-            CalculationResult result = getCalculationResult(calculator, ceiling, keepLast);
+            CalculationResult result = getCalculationResult(calculator, null, ceiling, keepLast, monitor, closeables);
             return Response.ok(result).build();
+        } catch (CalculationCancelledException e) {
+            return serviceUnavailable(e);
         } catch (CalculationException e) {
             String msg = String.format("Calculator [%s] threw an error when computing primes up to ceiling [%s]", calculator.getClass().getSimpleName(), getDecimalFormat().format(ceiling));
             log.error(msg, e);
             return  Response.serverError().entity(e.getMessage()).build();
+        } catch (CapacityExceededException e) {
+            return serviceUnavailable(e);
         }
     }
 
-    private CalculationResult getCalculationResult(PrimeCalculator calculator, long ceiling, Integer keepLast) throws CalculationException {
-        Stopwatch stopwatch = Stopwatch.createStarted();
-        List<Long> primes = calculator.calculatePrimes(ceiling);
+    /**
+     * Only the heap of the primes which are returned is reserved, and not that of the window being sieved or of
+     * its sieving primes, which take a few tens of MB at most.
+     *
+     * @param ascending if true, the primes after <code>from</code> are found, otherwise the primes before it.
+     */
+    private Response findAdjacentPrimes(Long from, Integer count, Long timeoutMillis, boolean ascending, CloseableService closeables) {
+        checkParameter(FROM_PARAMETER, from);
+        checkParameter(COUNT_PARAMETER, count);
+        if (count <= 0 || count > MAX_ADJACENT_PRIMES) {
+            throw new BadRequestException(String.format("The '%s' parameter must be between 1 and %s", COUNT_PARAMETER,
+                getDecimalFormat().format(MAX_ADJACENT_PRIMES)));
+        }
+        ProgressMonitor monitor = createMonitor(timeoutMillis);
+
+        try {
+            releaseOnceWritten(admissionController.reserve((long) count * Long.BYTES), closeables);
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            PrimeIterator iterator = ascending ? PrimeIterator.after(from, monitor) : PrimeIterator.before(from, monitor);
+            long[] primes = iterator.stream().limit(count).toArray();
+            if (!ascending) {
+                for (int i = 0, j = primes.length - 1; i < j; i++, j--) {
+                    long prime = primes[i];
+                    primes[i] = primes[j];
+                    primes[j] = prime;
+                }
+            }
+            stopwatch.stop();
+            return Response.ok(new NextPrimesResult(from, count, PrimeSequence.wrap(primes), getElapsedSecs(stopwatch), stopwatch.toString())).build();
+        } catch (CalculationCancelledException e) {
+            return serviceUnavailable(e);
+        } catch (CapacityExceededException e) {
+            return serviceUnavailable(e);
+        }
+    }
 
-        int countOfPrimes = primes.size();
+    /**
+     * @param lowerBound if null, the primes are searched from 2 to the ceiling.
+     * @param monitor stops any calculation which the result needs, but not the slicing of the cached primes.
+     * @param closeables the reservation of any calculation which the result needs is released by these, once the
+     *                   result has been written to the response.
+     */
+    private CalculationResult getCalculationResult(PrimeCalculator calculator, Long lowerBound, long ceiling, Integer keepLast,
+                                                   ProgressMonitor monitor, CloseableService closeables)
+        throws CalculationException, CapacityExceededException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        Optional<PrimeSequence> cachedPrimes = cache.getIfCovered(calculator, lowerBound == null ? 2 : lowerBound, ceiling);
+        PrimeSequence primes;
+        long countOfPrimes;
+        if (cachedPrimes.isPresent()) {
+            primes = cachedPrimes.get();
+            countOfPrimes = primes.size();
+            if (keepLast != null) {
+                primes = primes.tail(keepLast);
+            }
+        } else if (lowerBound == null && keepLast != null) {
+            // Only the end of the number line is sieved to find the last N primes, and the primes up to the
+            // ceiling are counted without being materialized, so the heap needed grows with N rather than the ceiling.
+            releaseOnceWritten(admissionController.reserve(calculator.estimateLastPrimesPeakMemory(ceiling, keepLast)), closeables);
+            countOfPrimes = calculator.countPrimes(ceiling, monitor);
+            primes = calculator.calculateLastPrimes(ceiling, keepLast, monitor);
+        } else {
+            if (lowerBound != null) {
+                releaseOnceWritten(admissionController.reserve(calculator.estimatePeakMemory(lowerBound, ceiling)), closeables);
+                primes = calculator.calculatePrimes(lowerBound, ceiling, monitor);
+            } else {
+                // The cache only reserves heap for the calculations which it actually runs
+                primes = cache.calculatePrimes(calculator, ceiling, monitor, reservation -> releaseOnceWritten(reservation, closeables));
+            }
+            countOfPrimes = primes.size();
 
-        // If the keepLast parameter is specified, only keep the last N primes from the result.
-        if (keepLast != null) {
-            primes = primes.stream()
-                    .skip(Math.max(primes.size() - keepLast, 0))
-                    .collect(Collectors.toList());
+            // If the keepLast parameter is specified, only keep the last N primes from the result.
+            if (keepLast != null) {
+                primes = primes.tail(keepLast);
+            }
         }
 
         stopwatch.stop();
-        double elapsedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
-        BigDecimal elapsedSecs = BigDecimal.valueOf(elapsedMillis / 1000).setScale(3, BigDecimal.ROUND_DOWN);
+        BigDecimal elapsedSecs = getElapsedSecs(stopwatch);
 
-        return CalculationResult.create(calculator, ceiling, countOfPrimes, keepLast, primes, elapsedSecs, stopwatch.toString());
+        return lowerBound == null
+            ? CalculationResult.create(calculator, ceiling, countOfPrimes, keepLast, primes, elapsedSecs, stopwatch.toString())
+            : CalculationResult.createForRange(calculator, lowerBound, ceiling, countOfPrimes, keepLast, primes, elapsedSecs, stopwatch.toString());
+    }
+
+    /**
+     * The reservation is released at the end of the request, once the response (or the error which replaced it)
+     * has been written to the client.
+     */
+    private static void releaseOnceWritten(AdmissionController.Reservation reservation, CloseableService closeables) {
+        closeables.add(reservation::close);
+    }
+
+    private static Response serviceUnavailable(CapacityExceededException e) {
+        Response.ResponseBuilder response = Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(e.getMessage());
+        if (e.getRetryAfterSecs() > 0) {
+            response.header(HttpHeaders.RETRY_AFTER, e.getRetryAfterSecs());
+        }
+        return response.build();
+    }
+
+    private static Response serviceUnavailable(CalculationCancelledException e) {
+        log.warn(e.getMessage());
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(e.getMessage()).build();
+    }
+
+    /**
+     * <code>timeoutMillis</code> is an optional parameter, but if specified it must be a number greater than 0.
+     * The deadline is never later than <code>maxCalculationMillis</code>.
+     */
+    private ProgressMonitor createMonitor(Long timeoutMillis) {
+        if (timeoutMillis != null && timeoutMillis <= 0) {
+            throw new BadRequestException("The 'timeoutMillis' parameter must be greater than 0");
+        }
+        return new ProgressMonitor(timeoutMillis == null ? maxCalculationMillis : Math.min(timeoutMillis, maxCalculationMillis));
+    }
+
+    private CalculationJob getJob(String id) {
+        return jobs.get(id).orElseThrow(() -> new NotFoundException(String.format("There is no job with id [%s]", id)));
+    }
+
+    private PrimeCalculator getCalculator(String calculatorType) {
+        return calculatorType == null ? defaultCalculator : getCalculatorBean(calculatorType).orElseThrow(() -> new BadRequestException(noCalculatorMessage(calculatorType)));
     }
 
     private Optional<PrimeCalculator> getCalculatorBean(String calculatorType) {
@@ -154,6 +501,26 @@ public class PrimesResource {
         }
     }
 
+    /**
+     * The range is sieved as a single segment, so it cannot contain more than
+     * <code>AbstractPrimeCalculator.MAX_RANGE_SIZE</code> numbers.
+     */
+    private static void validateRange(long lower, long upper) {
+        if (upper <= 1) {
+            throw new BadRequestException("The 'upper' bound must be greater than 1");
+        }
+        if (lower < 0) {
+            throw new BadRequestException("The 'lower' bound must not be negative");
+        }
+        if (lower > upper) {
+            throw new BadRequestException("The 'lower' bound must not be greater than the 'upper' bound");
+        }
+        if (upper - lower >= AbstractPrimeCalculator.MAX_RANGE_SIZE) {
+            throw new BadRequestException(String.format("The range from 'lower' to 'upper' must not contain more than [%s] numbers",
+                getDecimalFormat().format(AbstractPrimeCalculator.MAX_RANGE_SIZE)));
+        }
+    }
+
     /**
      * <code>keepLast</code> is an optional parameter, but if specified it must be a number
      * greater than 0
@@ -166,6 +533,19 @@ public class PrimesResource {
         }
     }
 
+    /**
+     * Returns the number of iterations, or <code>defaultIterations</code> if the parameter was not specified.
+     */
+    private static int validateIterations(String name, Integer iterations, int defaultIterations, int min) {
+        if (iterations == null) {
+            return defaultIterations;
+        }
+        if (iterations < min || iterations > MAX_ITERATIONS) {
+            throw new BadRequestException(String.format("The '%s' parameter must be between %d and %d", name, min, MAX_ITERATIONS));
+        }
+        return iterations;
+    }
+
     private static <T> void checkParameter(String name, T value) {
         if (value == null) {
             String msg = String.format("The required parameter [%s] was not specified.", name);
@@ -0,0 +1,109 @@
+package com.villarsolutions.primordial;
+
+import com.villarsolutions.primordial.calculator.PrimeCalculator;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.exception.CalculationException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes the primes up to a ceiling to the response as newline-delimited JSON (NDJSON), i.e. one
+ * prime number per line, while they are being calculated.
+ * <p>
+ * The calculator hands over its results one chunk (or segment) at a time, in order.  Each chunk is written to
+ * the socket and flushed as soon as it is received, so the client can start consuming the primes long
+ * before the calculation is complete, and the server never holds the whole result in memory.  Every
+ * calculator sieves (or tests) the number line a chunk at a time when streaming, see
+ * <code>AbstractPrimeCalculator.STREAMING_CHUNK_SIZE</code>.
+ * <p>
+ * The digits are written straight into a byte buffer, so no Strings or boxed Longs are created per prime.
+ * <p>
+ * Instances are single-use and not thread-safe.
+ *
+ * @see PrimeCalculator#streamPrimes(long, java.util.function.Consumer, ProgressMonitor)
+ */
+public class PrimesStreamingOutput implements StreamingOutput {
+
+    public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A positive long has at most 19 digits, plus the newline.
+     */
+    private static final int MAX_LINE_LENGTH = 20;
+
+    private final PrimeCalculator calculator;
+    private final long ceiling;
+    private final ProgressMonitor monitor;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * @param monitor the calculation stops once it is cancelled or its deadline passes.  It is also cancelled
+     *                if writing to the client fails, so that the segments still in flight stop straight away.
+     */
+    public PrimesStreamingOutput(PrimeCalculator calculator, long ceiling, ProgressMonitor monitor) {
+        this.calculator = calculator;
+        this.ceiling = ceiling;
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        try {
+            calculator.streamPrimes(ceiling, primes -> writeSegment(primes, output), monitor);
+        } catch (CalculationException e) {
+            // If writing to the client failed (e.g. the client went away), report the original IOException
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void writeSegment(PrimeSequence primes, OutputStream output) {
+        try {
+            int position = 0;
+            for (int i = 0; i < primes.size(); i++) {
+                if (position > buffer.length - MAX_LINE_LENGTH) {
+                    output.write(buffer, 0, position);
+                    position = 0;
+                }
+                position = writeLine(primes.get(i), position);
+            }
+            output.write(buffer, 0, position);
+
+            // Flushing at the end of each segment sends it to the client straight away
+            output.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the decimal digits of <code>n</code> and a newline into the buffer, and returns the next position.
+     */
+    private int writeLine(long n, int position) {
+        int end = position + numberOfDigits(n);
+        buffer[end] = '\n';
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + (n % 10));
+            n /= 10;
+        }
+        return end + 1;
+    }
+
+    private static int numberOfDigits(long n) {
+        int digits = 1;
+        for (long powerOfTen = 10; digits < 19 && n >= powerOfTen; powerOfTen *= 10) {
+            digits++;
+        }
+        return digits;
+    }
+
+}
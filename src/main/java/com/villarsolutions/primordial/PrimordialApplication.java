@@ -1,15 +1,19 @@
 package com.villarsolutions.primordial;
 
-import com.codahale.metrics.JmxReporter;
-import com.codahale.metrics.MetricRegistry;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.TypeLiteral;
+import com.villarsolutions.primordial.calculator.PrimeCalculator;
+import com.villarsolutions.primordial.calculator.impl.MillerRabin;
+import com.villarsolutions.primordial.calculator.impl.PrimeBitmapStore;
 import com.villarsolutions.primordial.health.DefaultHealthCheck;
 import io.dropwizard.Application;
 import io.dropwizard.assets.AssetsBundle;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 
+import java.nio.file.Paths;
+
 /**
  * Main entry point for a DropWizard Application.
  * <p>
@@ -32,16 +36,67 @@ public class PrimordialApplication extends Application<PrimordialConfiguration>
     @Override
     public void initialize(Bootstrap<PrimordialConfiguration> bootstrap) {
         bootstrap.addBundle(new AssetsBundle());
-
-        final MetricRegistry metrics = new MetricRegistry();
-        final JmxReporter reporter = JmxReporter.forRegistry(metrics).build();
-        reporter.start();
     }
 
+    /**
+     * All the metrics are registered with the MetricRegistry of the environment, which DropWizard publishes as
+     * MBeans, and which is also reported to Graphite.
+     */
     @Override
     public void run(PrimordialConfiguration configuration, Environment environment) {
-        Injector injector = Guice.createInjector(new PrimordialModule(configuration));
+        ManagedThreadPool localThreadPool = createThreadPool(environment, "local-sieve",
+            configuration.getLocalLevelOfParallelism(), configuration.getExecutorQueueCapacity());
+        ManagedThreadPool awsThreadPool = createThreadPool(environment, "aws-lambda",
+            configuration.getAwsLevelOfParallelism(), configuration.getExecutorQueueCapacity());
+
+        PrimeBitmapStore primeStore = createPrimeStore(environment, configuration);
+
+        AdmissionController admissionController = new AdmissionController(configuration.getCalculationMaxBytes(),
+            configuration.getCalculationMaxWaitMillis());
+        admissionController.registerMetrics(environment.metrics());
+
+        PrimesCache cache = new PrimesCache(configuration.getResultCacheMaxBytes(), admissionController);
+        cache.registerMetrics(environment.metrics());
+
+        ManagedThreadPool jobThreadPool = createThreadPool(environment, "jobs",
+            configuration.getJobThreads(), configuration.getExecutorQueueCapacity());
+        CalculationJobs jobs = new CalculationJobs(jobThreadPool.getExecutorService(), admissionController,
+            configuration.getJobRetentionMinutes());
+        jobs.registerMetrics(environment.metrics());
+
+        PrimalityTester primalityTester = new PrimalityTester(new MillerRabin(), localThreadPool.getExecutorService(),
+            configuration.getLocalLevelOfParallelism());
+        primalityTester.registerMetrics(environment.metrics());
+
+        Injector injector = Guice.createInjector(new PrimordialModule(configuration, localThreadPool, awsThreadPool, primeStore));
+        injector.findBindingsByType(TypeLiteral.get(PrimeCalculator.class))
+            .forEach(binding -> binding.getProvider().get().registerMetrics(environment.metrics()));
+        environment.lifecycle().manage(new ManagedGraphiteReporter(configuration.getGraphiteReporterFactory(), environment.metrics()));
+
         environment.healthChecks().register("default", new DefaultHealthCheck());
-        environment.jersey().register(new PrimesResource(injector, configuration.getDefaultCalculator()));
+        environment.jersey().register(new PrimesResource(injector, cache, admissionController, jobs, primalityTester, configuration.getDefaultCalculator(),
+            configuration.getCalculationMaxMillis(), configuration.getPerformanceBudgetMillis()));
+    }
+
+    /**
+     * The store is only created if a path is configured for it.
+     */
+    private static PrimeBitmapStore createPrimeStore(Environment environment, PrimordialConfiguration configuration) {
+        if (configuration.getPrimeStorePath() == null) {
+            return null;
+        }
+        PrimeBitmapStore primeStore = new PrimeBitmapStore(Paths.get(configuration.getPrimeStorePath()));
+        environment.lifecycle().manage(new ManagedPrimeStore(primeStore, configuration.getPrimeStoreCeiling()));
+        return primeStore;
+    }
+
+    /**
+     * The thread-pools are shared by all requests, and are shut down by DropWizard when the server stops.
+     */
+    private static ManagedThreadPool createThreadPool(Environment environment, String name, int numThreads, int queueCapacity) {
+        ManagedThreadPool threadPool = new ManagedThreadPool(name, numThreads, queueCapacity);
+        threadPool.registerMetrics(environment.metrics());
+        environment.lifecycle().manage(threadPool);
+        return threadPool;
     }
 }
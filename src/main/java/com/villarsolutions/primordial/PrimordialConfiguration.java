@@ -2,6 +2,7 @@ package com.villarsolutions.primordial;
 
 import com.amazonaws.regions.Regions;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.villarsolutions.primordial.calculator.impl.CacheBlockedSieve;
 import io.dropwizard.Configuration;
 import io.dropwizard.metrics.graphite.GraphiteReporterFactory;
 import org.hibernate.validator.constraints.NotEmpty;
@@ -46,6 +47,45 @@ public class PrimordialConfiguration extends Configuration {
     @Max(Integer.MAX_VALUE)
     private int localMaxSegmentSize;
 
+    @Min(1024)
+    @Max(Integer.MAX_VALUE)
+    private int localSieveBlockSize = CacheBlockedSieve.DEFAULT_BLOCK_SIZE;
+
+    @Min(1)
+    @Max(Integer.MAX_VALUE)
+    private int localLevelOfParallelism = Runtime.getRuntime().availableProcessors();
+
+    @Min(1)
+    @Max(Integer.MAX_VALUE)
+    private int executorQueueCapacity = 4096;
+
+    private String primeStorePath;
+
+    @Min(0)
+    private long primeStoreCeiling;
+
+    @Min(0)
+    private long resultCacheMaxBytes = 256L * 1024 * 1024;
+
+    @Min(1)
+    private long calculationMaxBytes = Runtime.getRuntime().maxMemory() / 2;
+
+    @Min(0)
+    private long calculationMaxWaitMillis = 10_000;
+
+    @Min(1)
+    private long calculationMaxMillis = 300_000;
+
+    @Min(1)
+    private long performanceBudgetMillis = 60_000;
+
+    @Min(1)
+    @Max(Integer.MAX_VALUE)
+    private int jobThreads = 2;
+
+    @Min(1)
+    private long jobRetentionMinutes = 10;
+
 
     @Valid
     private GraphiteReporterFactory graphiteReporterFactory = new GraphiteReporterFactory();
@@ -82,6 +122,57 @@ public class PrimordialConfiguration extends Configuration {
         return localMaxSegmentSize;
     }
 
+    public int getLocalSieveBlockSize() {
+        return localSieveBlockSize;
+    }
+
+    public int getLocalLevelOfParallelism() {
+        return localLevelOfParallelism;
+    }
+
+    public int getExecutorQueueCapacity() {
+        return executorQueueCapacity;
+    }
+
+    /**
+     * If not set, the sieve calculators do not use a PrimeBitmapStore.
+     */
+    public String getPrimeStorePath() {
+        return primeStorePath;
+    }
+
+    public long getPrimeStoreCeiling() {
+        return primeStoreCeiling;
+    }
+
+    public long getResultCacheMaxBytes() {
+        return resultCacheMaxBytes;
+    }
+
+    public long getCalculationMaxBytes() {
+        return calculationMaxBytes;
+    }
+
+    public long getCalculationMaxWaitMillis() {
+        return calculationMaxWaitMillis;
+    }
+
+    public long getCalculationMaxMillis() {
+        return calculationMaxMillis;
+    }
+
+    public long getPerformanceBudgetMillis() {
+        return performanceBudgetMillis;
+    }
+
+    public int getJobThreads() {
+        return jobThreads;
+    }
+
+    public long getJobRetentionMinutes() {
+        return jobRetentionMinutes;
+    }
+
     @JsonProperty("metrics")
     public GraphiteReporterFactory getGraphiteReporterFactory() {
         return graphiteReporterFactory;
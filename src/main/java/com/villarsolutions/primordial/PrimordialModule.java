@@ -6,7 +6,11 @@ import com.villarsolutions.primordial.calculator.PrimeCalculator;
 import com.villarsolutions.primordial.calculator.impl.BasicTrialDivision;
 import com.villarsolutions.primordial.calculator.impl.EratosthenesSieve;
 import com.villarsolutions.primordial.calculator.impl.ParallelEratosthenesSieve;
+import com.villarsolutions.primordial.calculator.impl.PrimeBitmapStore;
 import com.villarsolutions.primordial.calculator.impl.aws.AWSLambdaCalculator;
+import com.villarsolutions.primordial.calculator.impl.aws.AWSLambdaInvoker;
+import com.villarsolutions.primordial.calculator.impl.aws.HybridSieveCalculator;
+import com.villarsolutions.primordial.calculator.impl.aws.LambdaInvoker;
 
 /**
  * Dependency Injection class (google/guice) used to bind beans.
@@ -14,35 +18,57 @@ import com.villarsolutions.primordial.calculator.impl.aws.AWSLambdaCalculator;
 class PrimordialModule extends AbstractModule {
 
     private final PrimordialConfiguration config;
+    private final ManagedThreadPool localThreadPool;
+    private final ManagedThreadPool awsThreadPool;
+    private final PrimeBitmapStore primeStore;
 
-    public PrimordialModule(PrimordialConfiguration config) {
+    /**
+     * @param primeStore if null, the sieve calculators do not use a PrimeBitmapStore.
+     */
+    public PrimordialModule(PrimordialConfiguration config, ManagedThreadPool localThreadPool, ManagedThreadPool awsThreadPool,
+                            PrimeBitmapStore primeStore) {
         this.config = config;
+        this.localThreadPool = localThreadPool;
+        this.awsThreadPool = awsThreadPool;
+        this.primeStore = primeStore;
     }
 
     @Override
     protected void configure() {
-        bindCalculatorBean(BasicTrialDivision.class);
-        bindCalculatorBean(EratosthenesSieve.class);
+        bindCalculatorBeanInstance(new BasicTrialDivision());
+        bindCalculatorBeanInstance(new EratosthenesSieve(primeStore));
         bindCalculatorBeanInstance(new ParallelEratosthenesSieve(
+            localThreadPool.getExecutorService(),
+            localThreadPool.getNumThreads(),
             config.getLocalMinSegmentSize(),
             config.getLocalMaxSegmentSize(),
-            config.getParallelismLowerBound()
+            config.getParallelismLowerBound(),
+            config.getLocalSieveBlockSize(),
+            primeStore
         ));
+        LambdaInvoker lambdaInvoker = new AWSLambdaInvoker(config.getAwsRegion(), awsThreadPool.getNumThreads(), awsThreadPool.getExecutorService());
         bindCalculatorBeanInstance(new AWSLambdaCalculator(
-            config.getAwsRegion(),
+            lambdaInvoker,
             config.getAwsMinSegmentSize(),
             config.getAwsMaxSegmentSize(),
-            config.getAwsLevelOfParallelism(),
+            awsThreadPool.getNumThreads(),
+            config.getParallelismLowerBound()
+        ));
+        bindCalculatorBeanInstance(new HybridSieveCalculator(
+            localThreadPool.getExecutorService(),
+            localThreadPool.getNumThreads(),
+            config.getLocalSieveBlockSize(),
+            lambdaInvoker,
+            awsThreadPool.getNumThreads(),
+            config.getLocalMinSegmentSize(),
+            config.getAwsMaxSegmentSize(),
             config.getParallelismLowerBound()
         ));
     }
 
-    private <T extends PrimeCalculator> void bindCalculatorBean(Class<T> clazz) {
-        bind(PrimeCalculator.class)
-                .annotatedWith(Names.named(clazz.getSimpleName()))
-                .to(clazz);
-    }
-
+    /**
+     * Each calculator is a single instance, so that its metrics cover all the requests to it.
+     */
     private void bindCalculatorBeanInstance(PrimeCalculator instance) {
         bind(PrimeCalculator.class)
             .annotatedWith(Names.named(instance.getClass().getSimpleName()))
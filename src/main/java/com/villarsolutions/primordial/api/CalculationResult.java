@@ -4,31 +4,33 @@ package com.villarsolutions.primordial.api;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.annotations.VisibleForTesting;
 import com.villarsolutions.primordial.calculator.PrimeCalculator;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
 import java.math.BigDecimal;
-import java.util.List;
 
 public class CalculationResult {
 
     private String calculatorType;
+    private Long lowerBound;
     private long ceiling;
-    private int countOfPrimes;
+    private long countOfPrimes;
     private Integer keepLast;
     private BigDecimal timeElapsedSecs;
     private String timeElapsedDesc;
-    private List<Long> primes;
+    private PrimeSequence primes;
 
     public CalculationResult() {
         // Jackson deserialization
     }
 
-    private CalculationResult(String calculatorType, long ceiling, int countOfPrimes, Integer keepLast,
-                              List<Long> primes, BigDecimal timeElapsedSecs, String timeElapsedDesc) {
+    private CalculationResult(String calculatorType, Long lowerBound, long ceiling, long countOfPrimes, Integer keepLast,
+                              PrimeSequence primes, BigDecimal timeElapsedSecs, String timeElapsedDesc) {
         this.calculatorType = calculatorType;
+        this.lowerBound = lowerBound;
         this.ceiling = ceiling;
         this.countOfPrimes = countOfPrimes;
         this.keepLast = keepLast;
@@ -37,17 +39,44 @@ public class CalculationResult {
         this.timeElapsedDesc = timeElapsedDesc;
     }
 
-    public static CalculationResult create(PrimeCalculator calculator, long ceiling, int countOfPrimes, Integer keepLast,
-                                           List<Long> primes, BigDecimal timeElapsedSecs, String timeElapsedDesc) {
-        return new CalculationResult(calculator.getClass().getSimpleName(), ceiling, countOfPrimes, keepLast,
+    public static CalculationResult create(PrimeCalculator calculator, long ceiling, long countOfPrimes, Integer keepLast,
+                                           PrimeSequence primes, BigDecimal timeElapsedSecs, String timeElapsedDesc) {
+        return new CalculationResult(calculator.getClass().getSimpleName(), null, ceiling, countOfPrimes, keepLast,
                 primes, timeElapsedSecs, timeElapsedDesc);
     }
 
+    /**
+     * Creates the result of a range calculation, i.e. the primes from <code>lowerBound</code> to <code>ceiling</code>.
+     */
+    public static CalculationResult createForRange(PrimeCalculator calculator, long lowerBound, long ceiling, long countOfPrimes,
+                                                   Integer keepLast, PrimeSequence primes, BigDecimal timeElapsedSecs,
+                                                   String timeElapsedDesc) {
+        return new CalculationResult(calculator.getClass().getSimpleName(), lowerBound, ceiling, countOfPrimes, keepLast,
+                primes, timeElapsedSecs, timeElapsedDesc);
+    }
+
+    /**
+     * Creates the result of a count, which only holds the number of primes up to <code>ceiling</code> and not the primes themselves.
+     */
+    public static CalculationResult createForCount(PrimeCalculator calculator, long ceiling, long countOfPrimes,
+                                                   BigDecimal timeElapsedSecs, String timeElapsedDesc) {
+        return new CalculationResult(calculator.getClass().getSimpleName(), null, ceiling, countOfPrimes, null,
+                null, timeElapsedSecs, timeElapsedDesc);
+    }
+
     @JsonProperty
     public String getCalculatorType() {
         return calculatorType;
     }
 
+    /**
+     * Only set for range calculations, otherwise the search started from 2.
+     */
+    @JsonProperty
+    public Long getLowerBound() {
+        return lowerBound;
+    }
+
     @JsonProperty
     public long getCeiling() {
         return ceiling;
@@ -59,7 +88,7 @@ public class CalculationResult {
     }
 
     @JsonProperty
-    public int getCountOfPrimes() {
+    public long getCountOfPrimes() {
         return countOfPrimes;
     }
 
@@ -84,7 +113,7 @@ public class CalculationResult {
     }
 
     @JsonProperty
-    public List<Long> getPrimes() {
+    public PrimeSequence getPrimes() {
         return primes;
     }
 
@@ -99,6 +128,7 @@ public class CalculationResult {
         return new EqualsBuilder()
                 .append(countOfPrimes, that.countOfPrimes)
                 .append(calculatorType, that.calculatorType)
+                .append(lowerBound, that.lowerBound)
                 .append(ceiling, that.ceiling)
                 .append(timeElapsedDesc, that.timeElapsedDesc)
                 .append(primes, that.primes)
@@ -109,6 +139,7 @@ public class CalculationResult {
     public int hashCode() {
         return new HashCodeBuilder()
                 .append(calculatorType)
+                .append(lowerBound)
                 .append(ceiling)
                 .append(countOfPrimes)
                 .append(timeElapsedDesc)
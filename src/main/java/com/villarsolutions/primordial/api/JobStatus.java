@@ -0,0 +1,106 @@
+package com.villarsolutions.primordial.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import java.math.BigDecimal;
+
+/**
+ * The status of an asynchronous calculation job, as returned by the /primes/jobs paths.
+ */
+public class JobStatus {
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    private String id;
+    private String calculatorType;
+    private long ceiling;
+    private State state;
+    private int segmentsCompleted;
+    private int segmentsTotal;
+    private BigDecimal timeElapsedSecs;
+    private String error;
+
+    public JobStatus() {
+        // Jackson deserialization
+    }
+
+    public JobStatus(String id, String calculatorType, long ceiling, State state, int segmentsCompleted, int segmentsTotal,
+                     BigDecimal timeElapsedSecs, String error) {
+        this.id = id;
+        this.calculatorType = calculatorType;
+        this.ceiling = ceiling;
+        this.state = state;
+        this.segmentsCompleted = segmentsCompleted;
+        this.segmentsTotal = segmentsTotal;
+        this.timeElapsedSecs = timeElapsedSecs;
+        this.error = error;
+    }
+
+    @JsonProperty
+    public String getId() {
+        return id;
+    }
+
+    @JsonProperty
+    public String getCalculatorType() {
+        return calculatorType;
+    }
+
+    @JsonProperty
+    public long getCeiling() {
+        return ceiling;
+    }
+
+    @JsonProperty
+    public State getState() {
+        return state;
+    }
+
+    @JsonProperty
+    public int getSegmentsCompleted() {
+        return segmentsCompleted;
+    }
+
+    /**
+     * 0 if the calculator does not report its progress, or has not split the number line into segments yet.
+     */
+    @JsonProperty
+    public int getSegmentsTotal() {
+        return segmentsTotal;
+    }
+
+    @JsonProperty
+    public BigDecimal getTimeElapsedSecs() {
+        return timeElapsedSecs;
+    }
+
+    /**
+     * Only set if the job failed.
+     */
+    @JsonProperty
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return EqualsBuilder.reflectionEquals(this, o);
+    }
+
+    @Override
+    public int hashCode() {
+        return HashCodeBuilder.reflectionHashCode(this);
+    }
+
+    @Override
+    public String toString() {
+        return ReflectionToStringBuilder.toString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+    }
+
+}
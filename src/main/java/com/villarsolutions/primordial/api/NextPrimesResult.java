@@ -0,0 +1,87 @@
+package com.villarsolutions.primordial.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import java.math.BigDecimal;
+
+/**
+ * The primes found by /primes/next and /primes/previous, i.e. the first <code>count</code> primes after
+ * (or before) <code>from</code>.  The primes are always in ascending order.  There are fewer than
+ * <code>count</code> of them if the search reached 2 or Long.MAX_VALUE.
+ */
+public class NextPrimesResult {
+
+    private long from;
+    private int count;
+    private long countOfPrimes;
+    private BigDecimal timeElapsedSecs;
+    private String timeElapsedDesc;
+    private PrimeSequence primes;
+
+    public NextPrimesResult() {
+        // Jackson deserialization
+    }
+
+    public NextPrimesResult(long from, int count, PrimeSequence primes, BigDecimal timeElapsedSecs, String timeElapsedDesc) {
+        this.from = from;
+        this.count = count;
+        this.countOfPrimes = primes.size();
+        this.primes = primes;
+        this.timeElapsedSecs = timeElapsedSecs;
+        this.timeElapsedDesc = timeElapsedDesc;
+    }
+
+    /**
+     * Not included in the primes, even if it is prime.
+     */
+    @JsonProperty
+    public long getFrom() {
+        return from;
+    }
+
+    @JsonProperty
+    public int getCount() {
+        return count;
+    }
+
+    @JsonProperty
+    public long getCountOfPrimes() {
+        return countOfPrimes;
+    }
+
+    @JsonProperty
+    public BigDecimal getTimeElapsedSecs() {
+        return timeElapsedSecs;
+    }
+
+    @JsonProperty
+    public String getTimeElapsedDesc() {
+        return timeElapsedDesc;
+    }
+
+    @JsonProperty
+    public PrimeSequence getPrimes() {
+        return primes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return EqualsBuilder.reflectionEquals(this, o);
+    }
+
+    @Override
+    public int hashCode() {
+        return HashCodeBuilder.reflectionHashCode(this);
+    }
+
+    @Override
+    public String toString() {
+        return ReflectionToStringBuilder.toString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+    }
+
+}
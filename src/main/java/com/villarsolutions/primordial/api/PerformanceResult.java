@@ -7,26 +7,80 @@ import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
 import java.math.BigDecimal;
+import java.util.Comparator;
 
+/**
+ * The timings of a calculator over the measured iterations of a performance run.  The times are in seconds.
+ * <p>
+ * The results are ordered by state (the COMPLETED ones first) and then by median time, so that a calculator
+ * which was skipped or aborted after a few fast iterations is never ranked above one which completed.
+ */
 public class PerformanceResult implements Comparable<PerformanceResult> {
 
+    public enum State {
+        /** Every warmup and measured iteration ran. */
+        COMPLETED,
+        /** The remaining iterations were skipped, since they would not have completed within the time budget. */
+        SKIPPED,
+        /** An iteration was stopped when the time budget ran out. */
+        ABORTED,
+        /** An iteration failed, see the error. */
+        FAILED
+    }
+
+    private static final Comparator<PerformanceResult> ORDER = Comparator.comparing(PerformanceResult::getState)
+        .thenComparing(PerformanceResult::getTimeElapsedSecs, Comparator.nullsLast(Comparator.naturalOrder()));
+
     private String calculatorType;
+    private State state;
+    private int warmupIterations;
+    private int measuredIterations;
+    private long countOfPrimes;
     private BigDecimal timeElapsedSecs;
     private String timeElapsedDesc;
+    private BigDecimal meanSecs;
+    private BigDecimal stdDevSecs;
+    private BigDecimal minSecs;
+    private BigDecimal p50Secs;
+    private BigDecimal p90Secs;
+    private BigDecimal p99Secs;
+    private BigDecimal maxSecs;
+    private long allocatedBytesPerIteration;
+    private long gcCount;
+    private long gcTimeMillis;
+    private String error;
 
     public PerformanceResult() {
         // Jackson deserialization
     }
 
-    public PerformanceResult(String calculatorType, BigDecimal timeElapsedSecs, String timeElapsedDesc) {
+    public PerformanceResult(String calculatorType, State state, int warmupIterations, int measuredIterations, long countOfPrimes,
+                             String timeElapsedDesc, BigDecimal meanSecs, BigDecimal stdDevSecs, BigDecimal minSecs, BigDecimal p50Secs,
+                             BigDecimal p90Secs, BigDecimal p99Secs, BigDecimal maxSecs, long allocatedBytesPerIteration, long gcCount,
+                             long gcTimeMillis, String error) {
         this.calculatorType = calculatorType;
-        this.timeElapsedSecs = timeElapsedSecs;
+        this.state = state;
+        this.warmupIterations = warmupIterations;
+        this.measuredIterations = measuredIterations;
+        this.countOfPrimes = countOfPrimes;
+        this.timeElapsedSecs = p50Secs;
         this.timeElapsedDesc = timeElapsedDesc;
+        this.meanSecs = meanSecs;
+        this.stdDevSecs = stdDevSecs;
+        this.minSecs = minSecs;
+        this.p50Secs = p50Secs;
+        this.p90Secs = p90Secs;
+        this.p99Secs = p99Secs;
+        this.maxSecs = maxSecs;
+        this.allocatedBytesPerIteration = allocatedBytesPerIteration;
+        this.gcCount = gcCount;
+        this.gcTimeMillis = gcTimeMillis;
+        this.error = error;
     }
 
     @Override
     public int compareTo(PerformanceResult o) {
-        return getTimeElapsedSecs().compareTo(o.getTimeElapsedSecs());
+        return ORDER.compare(this, o);
     }
 
     @JsonProperty
@@ -34,6 +88,35 @@ public class PerformanceResult implements Comparable<PerformanceResult> {
         return calculatorType;
     }
 
+    @JsonProperty
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * The number of warmup iterations which ran, which are not part of the statistics.
+     */
+    @JsonProperty
+    public int getWarmupIterations() {
+        return warmupIterations;
+    }
+
+    /**
+     * The number of iterations which the statistics are based on.
+     */
+    @JsonProperty
+    public int getMeasuredIterations() {
+        return measuredIterations;
+    }
+
+    @JsonProperty
+    public long getCountOfPrimes() {
+        return countOfPrimes;
+    }
+
+    /**
+     * The median time, or null if no iteration was measured.
+     */
     @JsonProperty
     public BigDecimal getTimeElapsedSecs() {
         return timeElapsedSecs;
@@ -44,6 +127,74 @@ public class PerformanceResult implements Comparable<PerformanceResult> {
         return timeElapsedDesc;
     }
 
+    @JsonProperty
+    public BigDecimal getMeanSecs() {
+        return meanSecs;
+    }
+
+    @JsonProperty
+    public BigDecimal getStdDevSecs() {
+        return stdDevSecs;
+    }
+
+    @JsonProperty
+    public BigDecimal getMinSecs() {
+        return minSecs;
+    }
+
+    @JsonProperty
+    public BigDecimal getP50Secs() {
+        return p50Secs;
+    }
+
+    @JsonProperty
+    public BigDecimal getP90Secs() {
+        return p90Secs;
+    }
+
+    @JsonProperty
+    public BigDecimal getP99Secs() {
+        return p99Secs;
+    }
+
+    @JsonProperty
+    public BigDecimal getMaxSecs() {
+        return maxSecs;
+    }
+
+    /**
+     * The bytes allocated by every thread of the server, on average per measured iteration,
+     * or -1 if the JVM does not count them.
+     */
+    @JsonProperty
+    public long getAllocatedBytesPerIteration() {
+        return allocatedBytesPerIteration;
+    }
+
+    /**
+     * The number of garbage collections during the measured iterations.
+     */
+    @JsonProperty
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    /**
+     * The time spent in garbage collections during the measured iterations.
+     */
+    @JsonProperty
+    public long getGcTimeMillis() {
+        return gcTimeMillis;
+    }
+
+    /**
+     * Only set if the calculator failed, or was stopped.
+     */
+    @JsonProperty
+    public String getError() {
+        return error;
+    }
+
     @Override
     public boolean equals(Object o) {
         return EqualsBuilder.reflectionEquals(this, o);
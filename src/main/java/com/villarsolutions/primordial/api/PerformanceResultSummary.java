@@ -12,7 +12,7 @@ import java.util.List;
 public class PerformanceResultSummary {
 
     private long ceiling;
-    private int countOfPrimes;
+    private long countOfPrimes;
 
     private List<PerformanceResult> results = Lists.newArrayList();
 
@@ -20,7 +20,7 @@ public class PerformanceResultSummary {
         // Jackson deserialization
     }
 
-    public PerformanceResultSummary(long ceiling, int countOfPrimes, List<PerformanceResult> results) {
+    public PerformanceResultSummary(long ceiling, long countOfPrimes, List<PerformanceResult> results) {
         this.ceiling = ceiling;
         this.countOfPrimes = countOfPrimes;
         this.results = results;
@@ -32,7 +32,7 @@ public class PerformanceResultSummary {
     }
 
     @JsonProperty
-    public int getCountOfPrimes() {
+    public long getCountOfPrimes() {
         return countOfPrimes;
     }
 
@@ -0,0 +1,78 @@
+package com.villarsolutions.primordial.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import java.math.BigDecimal;
+
+/**
+ * Whether each of the numbers given to /primes/test is prime.  <code>prime[i]</code> is the answer for <code>numbers[i]</code>.
+ */
+public class PrimalityResult {
+
+    private long[] numbers;
+    private boolean[] prime;
+    private long countOfPrimes;
+    private BigDecimal timeElapsedSecs;
+    private String timeElapsedDesc;
+
+    public PrimalityResult() {
+        // Jackson deserialization
+    }
+
+    public PrimalityResult(long[] numbers, boolean[] prime, BigDecimal timeElapsedSecs, String timeElapsedDesc) {
+        this.numbers = numbers;
+        this.prime = prime;
+        this.timeElapsedSecs = timeElapsedSecs;
+        this.timeElapsedDesc = timeElapsedDesc;
+        for (boolean isPrime : prime) {
+            if (isPrime) {
+                countOfPrimes++;
+            }
+        }
+    }
+
+    @JsonProperty
+    public long[] getNumbers() {
+        return numbers;
+    }
+
+    @JsonProperty
+    public boolean[] getPrime() {
+        return prime;
+    }
+
+    @JsonProperty
+    public long getCountOfPrimes() {
+        return countOfPrimes;
+    }
+
+    @JsonProperty
+    public BigDecimal getTimeElapsedSecs() {
+        return timeElapsedSecs;
+    }
+
+    @JsonProperty
+    public String getTimeElapsedDesc() {
+        return timeElapsedDesc;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return EqualsBuilder.reflectionEquals(this, o);
+    }
+
+    @Override
+    public int hashCode() {
+        return HashCodeBuilder.reflectionHashCode(this);
+    }
+
+    @Override
+    public String toString() {
+        return ReflectionToStringBuilder.toString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+    }
+
+}
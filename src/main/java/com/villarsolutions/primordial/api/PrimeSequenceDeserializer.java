@@ -0,0 +1,36 @@
+package com.villarsolutions.primordial.api;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+
+import java.io.IOException;
+
+/**
+ * Reads a JSON array of numbers into a PrimeSequence without boxing each element.
+ *
+ * @see PrimeSequenceSerializer
+ */
+public class PrimeSequenceDeserializer extends StdDeserializer<PrimeSequence> {
+
+    public PrimeSequenceDeserializer() {
+        super(PrimeSequence.class);
+    }
+
+    @Override
+    public PrimeSequence deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (!p.isExpectedStartArrayToken()) {
+            throw JsonMappingException.from(p, "Expected a JSON array of prime numbers");
+        }
+
+        PrimeSequence primes = new PrimeSequence();
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            primes.add(p.getLongValue());
+        }
+        return primes;
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.villarsolutions.primordial.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+
+import java.io.IOException;
+
+/**
+ * Writes a PrimeSequence as a plain JSON array of numbers, reading the primes straight
+ * out of the backing <code>long[]</code> so that nothing is boxed on the way to the response.
+ *
+ * @see PrimeSequenceDeserializer
+ */
+public class PrimeSequenceSerializer extends StdSerializer<PrimeSequence> {
+
+    public PrimeSequenceSerializer() {
+        super(PrimeSequence.class);
+    }
+
+    @Override
+    public void serialize(PrimeSequence primes, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        int size = primes.size();
+        gen.writeStartArray(size);
+        for (int i = 0; i < size; i++) {
+            gen.writeNumber(primes.get(i));
+        }
+        gen.writeEndArray();
+    }
+
+}
@@ -1,22 +1,35 @@
 package com.villarsolutions.primordial.calculator;
 
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.villarsolutions.primordial.exception.CalculationCancelledException;
 import com.villarsolutions.primordial.exception.CalculationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
 import static com.villarsolutions.primordial.util.PrimordialUtil.getDecimalFormat;
 
 /**
  * Abstract calculator that:
  * <ul>
- *     <li>Validates parameters and verifies that the ceiling is below the limit set by each calculator.</li>
+ *     <li>Validates parameters and verifies that the ceiling is below the limit set by each calculator.
+ *         Range calculations (and searches for the last N primes) are not subject to this limit, only to the size of the range.</li>
  *     <li>Uses a Stopwatch to log the computation time.</li>
  *     <li>Wraps RuntimeExceptions into CalculationExceptions so that they can be handled gracefully by client code.</li>
+ *     <li>Times every calculation, and keeps a histogram of the ceilings, as metrics named after the calculator.</li>
  * </ul>
  */
 public abstract class AbstractPrimeCalculator implements PrimeCalculator {
@@ -24,26 +37,262 @@ public abstract class AbstractPrimeCalculator implements PrimeCalculator {
     private static final Logger log = LoggerFactory.getLogger(AbstractPrimeCalculator.class);
 
     public static final String CEILING_MUST_BE_GREATER_THAN_1 = "ceiling must be greater than 1";
+    public static final String LOWER_BOUND_MUST_NOT_BE_NEGATIVE = "lowerBound must not be negative";
+    public static final String LOWER_BOUND_MUST_NOT_EXCEED_CEILING = "lowerBound must not be greater than the ceiling";
+    public static final String COUNT_MUST_BE_GREATER_THAN_0 = "count must be greater than 0";
+    public static final String RANGE_IS_TOO_LARGE = "The range from lowerBound to ceiling must not contain more than " + Integer.MAX_VALUE + " numbers";
+
+    /**
+     * Ranges are sieved as a single Segment, whose size is an int.
+     */
+    public static final long MAX_RANGE_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * When streaming, the number line is calculated in chunks of this size (about a million primes, or 8MB,
+     * per chunk), so that the first primes are sent early and only one chunk is held at a time.
+     */
+    protected static final int STREAMING_CHUNK_SIZE = 1 << 24;
+
+    private final Timer calculations = new Timer();
+    private final Histogram ceilings = new Histogram(new ExponentiallyDecayingReservoir());
+    private final Meter failures = new Meter();
+    private final Meter cancellations = new Meter();
+
+    @Override
+    public PrimeSequence calculatePrimes(long ceiling) throws CalculationException {
+        return calculatePrimes(ceiling, new ProgressMonitor());
+    }
+
+    @Override
+    public PrimeSequence calculatePrimes(long ceiling, ProgressMonitor monitor) throws CalculationException {
+        Preconditions.checkArgument(ceiling > 1, CEILING_MUST_BE_GREATER_THAN_1);
+        validateCeiling(ceiling);
+
+        String description = String.format("up to ceiling [%s]", getDecimalFormat().format(ceiling));
+        return calculateAndLog(description, ceiling, () -> {
+            monitor.checkCancelled();
+            return calculate(ceiling, monitor);
+        }, PrimeSequence::size);
+    }
 
     @Override
-    public List<Long> calculatePrimes(long ceiling) throws CalculationException {
+    public void streamPrimes(long ceiling, Consumer<PrimeSequence> consumer) throws CalculationException {
+        streamPrimes(ceiling, consumer, new ProgressMonitor());
+    }
+
+    @Override
+    public void streamPrimes(long ceiling, Consumer<PrimeSequence> consumer, ProgressMonitor monitor) throws CalculationException {
         Preconditions.checkArgument(ceiling > 1, CEILING_MUST_BE_GREATER_THAN_1);
         validateCeiling(ceiling);
 
-        try {
-            log.info(String.format("Calculating prime numbers using calculator [%s] up to ceiling [%s]", getClass().getSimpleName(), getDecimalFormat().format(ceiling)));
+        String description = String.format("up to ceiling [%s] as a stream", getDecimalFormat().format(ceiling));
+        calculateAndLog(description, ceiling, () -> {
+            AtomicLong count = new AtomicLong();
+            stream(ceiling, primes -> {
+                count.addAndGet(primes.size());
+                consumer.accept(primes);
+            }, monitor);
+            return count.get();
+        }, Long::longValue);
+    }
+
+    @Override
+    public PrimeSequence calculatePrimes(long lowerBound, long ceiling) throws CalculationException {
+        return calculatePrimes(lowerBound, ceiling, new ProgressMonitor());
+    }
+
+    @Override
+    public PrimeSequence calculatePrimes(long lowerBound, long ceiling, ProgressMonitor monitor) throws CalculationException {
+        Preconditions.checkArgument(ceiling > 1, CEILING_MUST_BE_GREATER_THAN_1);
+        Preconditions.checkArgument(lowerBound >= 0, LOWER_BOUND_MUST_NOT_BE_NEGATIVE);
+        Preconditions.checkArgument(lowerBound <= ceiling, LOWER_BOUND_MUST_NOT_EXCEED_CEILING);
+        Preconditions.checkArgument(ceiling - lowerBound < MAX_RANGE_SIZE, RANGE_IS_TOO_LARGE);
+
+        String description = String.format("from [%s] to ceiling [%s]", getDecimalFormat().format(lowerBound), getDecimalFormat().format(ceiling));
+        return calculateAndLog(description, ceiling, () -> {
+            monitor.checkCancelled();
+            return calculate(Math.max(lowerBound, 2), ceiling, monitor);
+        }, PrimeSequence::size);
+    }
+
+    @Override
+    public PrimeSequence calculateLastPrimes(long ceiling, int count) throws CalculationException {
+        return calculateLastPrimes(ceiling, count, new ProgressMonitor());
+    }
+
+    @Override
+    public PrimeSequence calculateLastPrimes(long ceiling, int count, ProgressMonitor monitor) throws CalculationException {
+        Preconditions.checkArgument(ceiling > 1, CEILING_MUST_BE_GREATER_THAN_1);
+        Preconditions.checkArgument(count > 0, COUNT_MUST_BE_GREATER_THAN_0);
+
+        String description = String.format("(the last [%s]) up to ceiling [%s]", getDecimalFormat().format(count), getDecimalFormat().format(ceiling));
+        return calculateAndLog(description, ceiling, () -> calculateLast(ceiling, count, monitor), PrimeSequence::size);
+    }
+
+    @Override
+    public long countPrimes(long ceiling) throws CalculationException {
+        return countPrimes(ceiling, new ProgressMonitor());
+    }
+
+    @Override
+    public long countPrimes(long ceiling, ProgressMonitor monitor) throws CalculationException {
+        Preconditions.checkArgument(ceiling > 1, CEILING_MUST_BE_GREATER_THAN_1);
+        validateCeiling(ceiling, getMaxCountCeilingSupported());
+
+        String description = String.format("(counting only) up to ceiling [%s]", getDecimalFormat().format(ceiling));
+        return calculateAndLog(description, ceiling, () -> {
+            monitor.checkCancelled();
+            return count(ceiling, monitor);
+        }, Long::longValue);
+    }
+
+    /**
+     * By default, the primes are held twice at most: once in the result, and once while the result grows
+     * (or while the primes of each segment are concatenated into it).
+     */
+    @Override
+    public long estimatePeakMemory(long ceiling) {
+        return estimatePeakMemory(2, ceiling);
+    }
+
+    @Override
+    public long estimatePeakMemory(long lowerBound, long ceiling) {
+        return 2 * estimatePrimeCount(lowerBound, ceiling) * Long.BYTES;
+    }
+
+    /**
+     * The first range searched by <code>calculateLast</code> most likely holds all the primes, and the second one
+     * (twice as large) all but certainly does, so the estimate covers a range of 4 times the first one.  It is never
+     * more than the estimate for all the primes up to the ceiling, which is what a huge <code>count</code> comes to.
+     */
+    @Override
+    public long estimateLastPrimesPeakMemory(long ceiling, int count) {
+        long lowerBound = Math.max(2, ceiling - 4 * getFirstLastPrimesRangeSize(ceiling, count) + 1);
+        return Math.min(estimatePeakMemory(lowerBound, ceiling) + (long) count * Long.BYTES, estimatePeakMemory(ceiling));
+    }
+
+    /**
+     * An over-estimate of the number of primes from <code>lowerBound</code> to <code>ceiling</code> (both inclusive),
+     * based on the bounds x / ln(x) &lt; pi(x) &lt; 1.26 x / ln(x), which hold for x &gt;= 17.
+     */
+    protected static long estimatePrimeCount(long lowerBound, long ceiling) {
+        long rangeSize = ceiling - Math.max(lowerBound, 2) + 1;
+        if (rangeSize <= 0) {
+            return 0;
+        }
+        double upper = ceiling < 17 ? 7 : 1.26 * ceiling / Math.log(ceiling);
+        double lower = lowerBound <= 17 ? 0 : (lowerBound - 1) / Math.log(lowerBound - 1);
+        return Math.min(rangeSize, (long) (upper - lower) + 16);
+    }
+
+    /**
+     * Publishes the metrics of this calculator under its class name:
+     * <ul>
+     *     <li><code>calculations</code> - the duration of every calculation (of any kind), including the failed ones</li>
+     *     <li><code>ceilings</code> - the ceilings which were calculated</li>
+     *     <li><code>failures</code> and <code>cancellations</code> - the rates of the calculations which failed or were cancelled</li>
+     * </ul>
+     */
+    @Override
+    public void registerMetrics(MetricRegistry metrics) {
+        metrics.register(MetricRegistry.name(getClass(), "calculations"), calculations);
+        metrics.register(MetricRegistry.name(getClass(), "ceilings"), ceilings);
+        metrics.register(MetricRegistry.name(getClass(), "failures"), failures);
+        metrics.register(MetricRegistry.name(getClass(), "cancellations"), cancellations);
+    }
+
+    private <T> T calculateAndLog(String description, long ceiling, Supplier<T> calculation, ToLongFunction<T> primeCount) throws CalculationException {
+        ceilings.update(ceiling);
+        try (Timer.Context ignored = calculations.time()) {
+            log.info(String.format("Calculating prime numbers using calculator [%s] %s", getClass().getSimpleName(), description));
             Stopwatch stopwatch = Stopwatch.createStarted();
-            List<Long> result = calculate(ceiling);
-            log.info(String.format("[%s] completed the calculation in [%s].  Found [%s] prime numbers up to ceiling [%s]", getClass().getSimpleName(), stopwatch, result.size(), getDecimalFormat().format(ceiling)));
+            T result = calculation.get();
+            log.info(String.format("[%s] completed the calculation in [%s].  Found [%s] prime numbers %s", getClass().getSimpleName(), stopwatch, primeCount.applyAsLong(result), description));
             return result;
+        } catch (CalculationCancelledException e) {
+            cancellations.mark();
+            log.warn(String.format("[%s] stopped calculating the prime numbers %s: %s", getClass().getSimpleName(), description, e.getMessage()));
+            throw e;
         } catch (RuntimeException e) {
+            failures.mark();
             String msg = String.format("Calculator [%s] could not complete due to a RuntimeException: [%s] %s", getClass().getSimpleName(), e.getClass().getSimpleName(), e.getMessage());
             log.error(msg, e);
             throw new CalculationException(msg, e);
         }
     }
 
-    protected abstract List<Long> calculate(long ceiling) throws CalculationException;
+    /**
+     * Calculates the primes from 2 to <code>ceiling</code>, reporting the progress to the <code>monitor</code> if the
+     * calculator is able to.
+     */
+    protected abstract PrimeSequence calculate(long ceiling, ProgressMonitor monitor) throws CalculationException;
+
+    /**
+     * Searches backwards from the ceiling, one range at a time, until <code>count</code> primes are found.
+     * <p>
+     * The first range is sized so that it most likely holds enough primes on its own (by the prime number
+     * theorem, the average gap between primes around n is ln(n)), and each subsequent range doubles in size.
+     * Since ranges only need the primes up to sqrt(ceiling) to be sieved, the rest of the number line is never searched.
+     * <p>
+     * The <code>monitor</code> is checked before each range, and passed on to the calculation of the range.
+     */
+    protected PrimeSequence calculateLast(long ceiling, int count, ProgressMonitor monitor) throws CalculationException {
+        List<PrimeSequence> ranges = Lists.newArrayList();
+        long found = 0;
+        long rangeSize = getFirstLastPrimesRangeSize(ceiling, count);
+        long upperBound = ceiling;
+        while (found < count && upperBound >= 2) {
+            long lowerBound = Math.max(2, upperBound - rangeSize + 1);
+            monitor.checkCancelled();
+            PrimeSequence primes = calculate(lowerBound, upperBound, monitor);
+            ranges.add(primes);
+            found += primes.size();
+
+            upperBound = lowerBound - 1;
+            rangeSize = Math.min(rangeSize * 2, MAX_RANGE_SIZE);
+        }
+        return PrimeSequence.concat(Lists.reverse(ranges)).tail(count);
+    }
+
+    private static long getFirstLastPrimesRangeSize(long ceiling, int count) {
+        return Math.min((long) (count * Math.log(ceiling) * 1.25) + 100, MAX_RANGE_SIZE);
+    }
+
+    /**
+     * Counts the primes up to <code>ceiling</code>.  By default this calculates the primes and discards them,
+     * calculators should override it to count without materializing the primes.
+     */
+    protected long count(long ceiling, ProgressMonitor monitor) throws CalculationException {
+        return calculate(ceiling, monitor).size();
+    }
+
+    /**
+     * Passes the primes up to <code>ceiling</code> to the consumer, one chunk at a time and in ascending order.
+     * <p>
+     * By default each chunk of <code>STREAMING_CHUNK_SIZE</code> numbers is calculated as a range, and the
+     * <code>monitor</code> is checked before each chunk.  Segmented calculators override this to sieve several
+     * segments at once, and hand over each one as soon as it (and all the earlier segments) are done.
+     */
+    protected void stream(long ceiling, Consumer<PrimeSequence> consumer, ProgressMonitor monitor) throws CalculationException {
+        long lowerBound = 2;
+        while (true) {
+            // Written so that a ceiling close to Long.MAX_VALUE does not overflow
+            long upperBound = ceiling - lowerBound < STREAMING_CHUNK_SIZE ? ceiling : lowerBound + STREAMING_CHUNK_SIZE - 1;
+            monitor.checkCancelled();
+            consumer.accept(calculate(lowerBound, upperBound, monitor));
+            if (upperBound == ceiling) {
+                return;
+            }
+            lowerBound = upperBound + 1;
+        }
+    }
+
+    /**
+     * Calculates the primes from <code>lowerBound</code> to <code>ceiling</code> (both inclusive), and stops as soon
+     * as the <code>monitor</code> is cancelled if the calculator is able to.
+     * The bounds have already been validated, and <code>lowerBound</code> is at least 2.
+     */
+    protected abstract PrimeSequence calculate(long lowerBound, long ceiling, ProgressMonitor monitor) throws CalculationException;
 
     /**
      * The maximum ceiling number supported by the calculator's algorithm.
@@ -53,8 +302,21 @@ public abstract class AbstractPrimeCalculator implements PrimeCalculator {
      */
     protected abstract Optional<Long> getMaxCeilingSupported();
 
+    /**
+     * The maximum ceiling up to which the calculator can count the primes.
+     * <p>
+     * By default the primes are calculated in order to count them, so this is the same as <code>getMaxCeilingSupported()</code>.
+     * Calculators which override <code>count</code> to count without finding the primes should override this too.
+     */
+    protected Optional<Long> getMaxCountCeilingSupported() {
+        return getMaxCeilingSupported();
+    }
+
     private void validateCeiling(long ceiling) throws CalculationException {
-        Optional<Long> ceilingBound = getMaxCeilingSupported();
+        validateCeiling(ceiling, getMaxCeilingSupported());
+    }
+
+    private void validateCeiling(long ceiling, Optional<Long> ceilingBound) throws CalculationException {
         ceilingBound.ifPresent(maxCeiling -> {
             if (ceiling > maxCeiling) {
                 throw new CalculationException(String.format("This calculator only supports prime numbers up to [%s]", getDecimalFormat().format(maxCeiling)));
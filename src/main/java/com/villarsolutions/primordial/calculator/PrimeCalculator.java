@@ -1,18 +1,106 @@
 package com.villarsolutions.primordial.calculator;
 
 
+import com.codahale.metrics.MetricRegistry;
 import com.villarsolutions.primordial.exception.CalculationException;
 
-import java.util.List;
+import java.util.function.Consumer;
 
 public interface PrimeCalculator {
 
     /**
-     * Returns a list of all the prime numbers up to <code>ceiling</code>.
+     * Returns a sequence of all the prime numbers up to <code>ceiling</code>, in ascending order.
      * <p>
-     * Note that <code>ceiling</code> is inclusive, i.e. the returned list will
+     * Note that <code>ceiling</code> is inclusive, i.e. the returned sequence will
      * include the ceiling if it is a prime number.
      */
-    List<Long> calculatePrimes(long ceiling) throws CalculationException;
+    PrimeSequence calculatePrimes(long ceiling) throws CalculationException;
+
+    /**
+     * Same as {@link #calculatePrimes(long)}, but reports its progress to the <code>monitor</code> while it runs,
+     * and stops as soon as the <code>monitor</code> is cancelled (or its deadline passes), with a
+     * CalculationCancelledException.  Calculators which are not segmented check the monitor while they run, but
+     * do not report their progress.
+     */
+    PrimeSequence calculatePrimes(long ceiling, ProgressMonitor monitor) throws CalculationException;
+
+    /**
+     * Returns a sequence of the prime numbers from <code>lowerBound</code> to <code>ceiling</code>, in ascending order.
+     * <p>
+     * Both bounds are inclusive.  Unlike {@link #calculatePrimes(long)}, implementations are expected
+     * to only do work proportional to the size of the range (plus the primes up to sqrt(ceiling)),
+     * rather than to search the whole number line from 2.
+     */
+    PrimeSequence calculatePrimes(long lowerBound, long ceiling) throws CalculationException;
+
+    /**
+     * Same as {@link #calculatePrimes(long, long)}, but stops as soon as the <code>monitor</code> is cancelled
+     * (or its deadline passes), with a CalculationCancelledException.
+     */
+    PrimeSequence calculatePrimes(long lowerBound, long ceiling, ProgressMonitor monitor) throws CalculationException;
+
+    /**
+     * Finds the same primes as {@link #calculatePrimes(long)}, but hands them to the <code>consumer</code>
+     * in consecutive chunks, in ascending order, as soon as each chunk is ready.  The consumer is
+     * always called from the calling thread.
+     * <p>
+     * The calculator does not keep a reference to a chunk once it has been consumed, so the
+     * whole result never needs to be held in memory at once.
+     */
+    void streamPrimes(long ceiling, Consumer<PrimeSequence> consumer) throws CalculationException;
+
+    /**
+     * Same as {@link #streamPrimes(long, Consumer)}, but stops as soon as the <code>monitor</code> is cancelled
+     * (or its deadline passes), with a CalculationCancelledException.
+     */
+    void streamPrimes(long ceiling, Consumer<PrimeSequence> consumer, ProgressMonitor monitor) throws CalculationException;
+
+    /**
+     * Returns the last <code>count</code> prime numbers up to <code>ceiling</code> (inclusive), in ascending order,
+     * or all of them if there are fewer than <code>count</code>.
+     * <p>
+     * Implementations are expected to only search the end of the number line, close to the ceiling.
+     */
+    PrimeSequence calculateLastPrimes(long ceiling, int count) throws CalculationException;
+
+    /**
+     * Same as {@link #calculateLastPrimes(long, int)}, but stops as soon as the <code>monitor</code> is cancelled
+     * (or its deadline passes), with a CalculationCancelledException.
+     */
+    PrimeSequence calculateLastPrimes(long ceiling, int count, ProgressMonitor monitor) throws CalculationException;
+
+    /**
+     * Returns the number of primes up to <code>ceiling</code> (inclusive), without materializing them.
+     */
+    long countPrimes(long ceiling) throws CalculationException;
+
+    /**
+     * Same as {@link #countPrimes(long)}, but stops as soon as the <code>monitor</code> is cancelled
+     * (or its deadline passes), with a CalculationCancelledException.
+     */
+    long countPrimes(long ceiling, ProgressMonitor monitor) throws CalculationException;
+
+    /**
+     * Returns an estimate of the most heap, in bytes, which {@link #calculatePrimes(long)} holds at any one time
+     * for this <code>ceiling</code>, including the returned primes.
+     * <p>
+     * The estimate errs on the high side.  It is used to keep concurrent requests from running out of heap.
+     */
+    long estimatePeakMemory(long ceiling);
+
+    /**
+     * Same as {@link #estimatePeakMemory(long)}, for {@link #calculatePrimes(long, long)}.
+     */
+    long estimatePeakMemory(long lowerBound, long ceiling);
+
+    /**
+     * Same as {@link #estimatePeakMemory(long)}, for {@link #calculateLastPrimes(long, int)}.
+     */
+    long estimateLastPrimesPeakMemory(long ceiling, int count);
+
+    /**
+     * Publishes the metrics of this calculator, e.g. how long its calculations take.
+     */
+    void registerMetrics(MetricRegistry metrics);
 
 }
@@ -0,0 +1,252 @@
+package com.villarsolutions.primordial.calculator;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.base.Preconditions;
+import com.villarsolutions.primordial.api.PrimeSequenceDeserializer;
+import com.villarsolutions.primordial.api.PrimeSequenceSerializer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+
+/**
+ * Growable sequence of prime numbers, backed by a primitive <code>long[]</code>.
+ * <p>
+ * This is the result type of every PrimeCalculator.  Compared to a <code>List&lt;Long&gt;</code>,
+ * each prime costs 8 bytes instead of a reference plus a boxed <code>Long</code> object
+ * (roughly 24 bytes), and no boxing takes place between the sieve and the JSON response.
+ * <p>
+ * Primes are expected to be appended in ascending order, which allows {@link #contains(long)}
+ * to use a binary search.
+ * <p>
+ * A sequence can also be a read-only view (see {@link #asReadOnly()}) over a range of the array of another
+ * sequence, which is never copied.  Slicing a read-only sequence returns another view, so that a large sequence
+ * can be shared by many readers (such as the PrimesCache and the requests it answers) without being copied or modified.
+ * <p>
+ * This class is not thread-safe.  Each sequence is filled by a single thread and then
+ * handed over (e.g. through a <code>Future</code>) to the thread that consumes it.  Read-only sequences
+ * can be read by any number of threads.
+ *
+ * @see PrimeSequenceSerializer
+ */
+@JsonSerialize(using = PrimeSequenceSerializer.class)
+@JsonDeserialize(using = PrimeSequenceDeserializer.class)
+public class PrimeSequence {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Arrays cannot be much longer than this on most JVMs.
+     */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private long[] primes;
+    private final int offset;
+    private int size;
+    private final boolean readOnly;
+
+    public PrimeSequence() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PrimeSequence(int initialCapacity) {
+        Preconditions.checkArgument(initialCapacity >= 0, "initialCapacity must not be negative");
+        this.primes = new long[initialCapacity];
+        this.offset = 0;
+        this.readOnly = false;
+    }
+
+    private PrimeSequence(long[] primes, int size) {
+        this(primes, 0, size, false);
+    }
+
+    private PrimeSequence(long[] primes, int offset, int size, boolean readOnly) {
+        this.primes = primes;
+        this.offset = offset;
+        this.size = size;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Creates a sequence holding a copy of the given primes.
+     */
+    public static PrimeSequence of(long... primes) {
+        return new PrimeSequence(primes.clone(), primes.length);
+    }
+
+    /**
+     * Creates a sequence backed by the given array, without copying it.  The caller
+     * must not modify the array afterwards.
+     */
+    public static PrimeSequence wrap(long[] primes) {
+        return new PrimeSequence(primes, primes.length);
+    }
+
+    /**
+     * Concatenates the given sequences, in order, into a single sequence that is allocated
+     * with the exact size needed.
+     */
+    public static PrimeSequence concat(List<PrimeSequence> sequences) {
+        long totalSize = 0;
+        for (PrimeSequence sequence : sequences) {
+            totalSize += sequence.size;
+        }
+        Preconditions.checkState(totalSize <= MAX_CAPACITY, "Too many primes to hold in a single sequence: [%s]", totalSize);
+
+        PrimeSequence result = new PrimeSequence((int) totalSize);
+        sequences.forEach(result::addAll);
+        return result;
+    }
+
+    /**
+     * @throws UnsupportedOperationException if this sequence is read-only.
+     */
+    public void add(long prime) {
+        ensureCapacity(size + 1);
+        primes[size++] = prime;
+    }
+
+    /**
+     * @throws UnsupportedOperationException if this sequence is read-only.
+     */
+    public void addAll(PrimeSequence other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.primes, other.offset, primes, size, other.size);
+        size += other.size;
+    }
+
+    public long get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index [%d] is out of bounds for sequence of size [%d]", index, size));
+        }
+        return primes[offset + index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Returns a read-only view of the primes of this sequence, without copying them.  The view stays valid as
+     * long as this sequence is not modified, so the caller must not modify it afterwards.
+     */
+    public PrimeSequence asReadOnly() {
+        return new PrimeSequence(primes, offset, size, true);
+    }
+
+    /**
+     * Returns true if the given number is in this sequence.  Relies on the primes being
+     * held in ascending order.
+     */
+    public boolean contains(long n) {
+        return Arrays.binarySearch(primes, offset, offset + size, n) >= 0;
+    }
+
+    /**
+     * Returns a new sequence with the last <code>n</code> primes of this sequence, or
+     * with all of them if there are fewer than <code>n</code> primes.  If this sequence is
+     * read-only, the result is a read-only view instead of a copy.
+     */
+    public PrimeSequence tail(int n) {
+        return subSequence(Math.max(size - n, 0), size);
+    }
+
+    /**
+     * Returns a new sequence with the primes of this sequence from <code>lowerBound</code> to <code>upperBound</code>
+     * (both inclusive).  Relies on the primes being held in ascending order.  If this sequence is read-only,
+     * the result is a read-only view instead of a copy.
+     */
+    public PrimeSequence slice(long lowerBound, long upperBound) {
+        int from = insertionPoint(lowerBound);
+        int to = Math.max(from, upperBound == Long.MAX_VALUE ? size : insertionPoint(upperBound + 1));
+        return subSequence(from, to);
+    }
+
+    /**
+     * The primes from index <code>from</code> (inclusive) to <code>to</code> (exclusive).
+     */
+    private PrimeSequence subSequence(int from, int to) {
+        return readOnly
+            ? new PrimeSequence(primes, offset + from, to - from, true)
+            : new PrimeSequence(Arrays.copyOfRange(primes, offset + from, offset + to), to - from);
+    }
+
+    /**
+     * The index of the first prime which is greater than or equal to <code>n</code>.
+     */
+    private int insertionPoint(long n) {
+        int index = Arrays.binarySearch(primes, offset, offset + size, n);
+        return (index >= 0 ? index : -(index + 1)) - offset;
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOfRange(primes, offset, offset + size);
+    }
+
+    public LongStream stream() {
+        return Arrays.stream(primes, offset, offset + size);
+    }
+
+    /**
+     * Only sequences which are not read-only can grow, and these always start at offset 0.
+     */
+    private void ensureCapacity(int minCapacity) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("This sequence of primes is read-only");
+        }
+        if (minCapacity < 0 || minCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException(String.format("Too many primes to hold in a single sequence: [%d]", minCapacity));
+        }
+        if (minCapacity > primes.length) {
+            // Grow by 50%, the same policy as java.util.ArrayList
+            int newCapacity = (int) Math.min((long) primes.length + (primes.length >> 1), MAX_CAPACITY);
+            primes = Arrays.copyOf(primes, Math.max(newCapacity, minCapacity));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PrimeSequence that = (PrimeSequence) o;
+
+        if (size != that.size) return false;
+        for (int i = 0; i < size; i++) {
+            if (primes[offset + i] != that.primes[that.offset + i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = 0; i < size; i++) {
+            result = 31 * result + Long.hashCode(primes[offset + i]);
+        }
+        return result;
+    }
+
+    /**
+     * Only the first few primes are printed, since a sequence can hold hundreds of millions of them.
+     */
+    @Override
+    public String toString() {
+        int shown = Math.min(size, 20);
+        String head = Arrays.toString(Arrays.copyOfRange(primes, offset, offset + shown));
+        return size > shown
+            ? String.format("PrimeSequence[size=%d, primes=%s...]", size, head.substring(0, head.length() - 1))
+            : String.format("PrimeSequence[size=%d, primes=%s]", size, head);
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.villarsolutions.primordial.calculator;
+
+import com.google.common.base.Preconditions;
+import com.villarsolutions.primordial.exception.CalculationCancelledException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks how far a calculation has got, so that it can be reported while the calculation is still running,
+ * and tells the calculation when to give up.
+ * <p>
+ * Segmented calculators report the number of segments which have been sieved out of the total number
+ * of segments.  Other calculators do not report any progress, and their total stays at 0.
+ * <p>
+ * A calculation is cancelled either explicitly, with {@link #cancel()}, or once its deadline has passed.
+ * Cancellation is cooperative: segmented calculators check it before each segment and between the blocks
+ * of a segment, and stop with a CalculationCancelledException, so that the threads they share with the
+ * other requests are freed up promptly.
+ * <p>
+ * A monitor is written to by the threads of a single calculation, and can be read from any thread.
+ */
+public class ProgressMonitor {
+
+    private final long timeoutMillis;
+    private final long deadlineNanos;
+
+    private volatile int totalSegments;
+    private final AtomicInteger completedSegments = new AtomicInteger();
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a monitor without a deadline.
+     */
+    public ProgressMonitor() {
+        this.timeoutMillis = 0;
+        this.deadlineNanos = 0;
+    }
+
+    /**
+     * @param timeoutMillis the calculation is cancelled once this many milliseconds have passed from now.
+     */
+    public ProgressMonitor(long timeoutMillis) {
+        Preconditions.checkArgument(timeoutMillis > 0, "timeoutMillis must be greater than 0");
+        this.timeoutMillis = timeoutMillis;
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * Called once the number line has been split into <code>totalSegments</code> segments, before any is sieved.
+     */
+    public void begin(int totalSegments) {
+        this.totalSegments = totalSegments;
+    }
+
+    public void segmentCompleted() {
+        completedSegments.incrementAndGet();
+    }
+
+    public int getTotalSegments() {
+        return totalSegments;
+    }
+
+    public int getCompletedSegments() {
+        return completedSegments.get();
+    }
+
+    /**
+     * Asks the calculation to stop at its next check.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || isDeadlineExceeded();
+    }
+
+    /**
+     * @throws CalculationCancelledException if the calculation has been cancelled, or its deadline has passed.
+     */
+    public void checkCancelled() throws CalculationCancelledException {
+        if (isCancelled()) {
+            throw newCancelledException();
+        }
+    }
+
+    /**
+     * Returns the exception which describes why the calculation was cancelled, for callers which find out
+     * about it by other means than {@link #checkCancelled()}, e.g. when waiting for a result times out.
+     */
+    public CalculationCancelledException newCancelledException() {
+        if (isDeadlineExceeded()) {
+            return new CalculationCancelledException(String.format("The calculation did not complete within its deadline of [%d] ms", timeoutMillis));
+        }
+        return new CalculationCancelledException("The calculation was cancelled");
+    }
+
+    /**
+     * The time left until the deadline, or Long.MAX_VALUE if there is no deadline.
+     */
+    public long getRemainingNanos() {
+        if (timeoutMillis == 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, deadlineNanos - System.nanoTime());
+    }
+
+    private boolean isDeadlineExceeded() {
+        return timeoutMillis > 0 && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+}
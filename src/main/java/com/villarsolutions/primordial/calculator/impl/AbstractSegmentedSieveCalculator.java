@@ -1,20 +1,40 @@
 package com.villarsolutions.primordial.calculator.impl;
 
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.exception.CalculationCancelledException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static com.villarsolutions.primordial.util.PrimordialUtil.getDecimalFormat;
+import static com.villarsolutions.primordial.util.PrimordialUtil.propagateCancellation;
 
 /**
  * Abstract class used by calculators with a parallel segmented "sieve of Eratosthenes" algorithm.
@@ -24,18 +44,58 @@ public abstract class AbstractSegmentedSieveCalculator extends AbstractSieveCalc
 
     private static final Logger log = LoggerFactory.getLogger(AbstractSegmentedSieveCalculator.class);
 
+    /**
+     * When streaming, segments are capped at this size (about a million primes, or 8MB, per segment)
+     * so that the first results are sent early and only a few segments are held in memory at a time.
+     */
+    private static final int MAX_STREAMING_SEGMENT_SIZE = 1 << 24;
+
+    /**
+     * When streaming, at most this many segments per thread are submitted ahead of the
+     * segment that is currently being consumed.
+     */
+    private static final int STREAMING_SEGMENTS_AHEAD_PER_THREAD = 2;
+
+    private final ExecutorService executorService;
     private final int minSegmentSize;
     private final int maxSegmentSize;
     private final int levelOfParallelism;
     private final int parallelismLowerBound;
 
-    public AbstractSegmentedSieveCalculator(int minSegmentSize, int maxSegmentSize, int levelOfParallelism, int parallelismLowerBound) {
+    private final Timer segmentTimes = new Timer();
+    private final Histogram primesPerSegment = new Histogram(new ExponentiallyDecayingReservoir());
+    private final Timer smallPrimesPhase = new Timer();
+    private final Timer segmentPhase = new Timer();
+    private final Timer mergePhase = new Timer();
+
+    /**
+     * @param executorService the thread-pool on which the segments are processed.  It is shared by all the
+     *                        requests to this calculator, and is owned (and shut down) by the caller.  It may be
+     *                        null for a calculator which only sieves its segments asynchronously.
+     * @param levelOfParallelism the number of threads of the <code>executorService</code>
+     */
+    public AbstractSegmentedSieveCalculator(ExecutorService executorService, int minSegmentSize, int maxSegmentSize,
+                                            int levelOfParallelism, int parallelismLowerBound) {
+        this(executorService, null, minSegmentSize, maxSegmentSize, levelOfParallelism, parallelismLowerBound);
+    }
+
+    /**
+     * @param primeStore if null, every request is sieved.
+     */
+    public AbstractSegmentedSieveCalculator(ExecutorService executorService, PrimeBitmapStore primeStore, int minSegmentSize,
+                                            int maxSegmentSize, int levelOfParallelism, int parallelismLowerBound) {
+        super(primeStore);
+        this.executorService = executorService;
         this.minSegmentSize = minSegmentSize;
         this.maxSegmentSize = maxSegmentSize;
         this.levelOfParallelism = levelOfParallelism;
         this.parallelismLowerBound = parallelismLowerBound;
     }
 
+    protected ExecutorService getExecutorService() {
+        return executorService;
+    }
+
     protected int getLevelOfParallelism() {
         return levelOfParallelism;
     }
@@ -44,8 +104,53 @@ public abstract class AbstractSegmentedSieveCalculator extends AbstractSieveCalc
         return parallelismLowerBound;
     }
 
+    /**
+     * The number of segments which are created per thread when calculating primes, see
+     * {@link #calculateSegments(PrimeSequence, List, Function, ProgressMonitor)}.  By default there is one segment per thread.
+     */
+    protected int getSegmentsPerThread() {
+        return 1;
+    }
+
+    /**
+     * The primes of every segment are held until they are concatenated into the result, and each thread
+     * holds its own working memory on top of that, see {@link #estimateSegmentWorkingMemory(Segment)}.
+     */
+    @Override
+    public long estimatePeakMemory(long ceiling) {
+        if (isStored(ceiling)) {
+            return super.estimatePeakMemory(ceiling);
+        }
+        List<Segment> segments = getSegments(ceiling);
+        long workingMemory = segments.stream().skip(1).mapToLong(this::estimateSegmentWorkingMemory).max().orElse(0);
+        return 2 * estimatePrimeCount(2, ceiling) * Long.BYTES + getLevelOfParallelism() * workingMemory;
+    }
+
+    /**
+     * The memory which a thread needs to process a segment, on top of the primes found in it.
+     * By default, the segment is sieved in blocks of <code>getBlockSize()</code> bytes.
+     */
+    protected long estimateSegmentWorkingMemory(Segment segment) {
+        return getBlockSize();
+    }
+
     protected List<Segment> getSegments(long ceiling) {
-        return divideIntoSegments(ceiling, minSegmentSize, maxSegmentSize, getLevelOfParallelism(), getParallelismLowerBound());
+        return divideIntoSegments(ceiling, minSegmentSize, maxSegmentSize, getLevelOfParallelism() * getSegmentsPerThread(), getParallelismLowerBound());
+    }
+
+    /**
+     * Same as {@link #getSegments(long)}, for the numbers from <code>lowerBound</code> to <code>ceiling</code>.
+     */
+    protected List<Segment> getRangeSegments(long lowerBound, long ceiling) {
+        return divideRangeIntoSegments(lowerBound, ceiling, minSegmentSize, maxSegmentSize, getLevelOfParallelism() * getSegmentsPerThread(),
+            getParallelismLowerBound());
+    }
+
+    /**
+     * Same as {@link #getSegments(long)} but with smaller segments, see MAX_STREAMING_SEGMENT_SIZE.
+     */
+    protected List<Segment> getStreamingSegments(long ceiling) {
+        return divideIntoSegments(ceiling, minSegmentSize, Math.min(maxSegmentSize, MAX_STREAMING_SEGMENT_SIZE), getLevelOfParallelism(), getParallelismLowerBound());
     }
 
     /**
@@ -98,6 +203,34 @@ public abstract class AbstractSegmentedSieveCalculator extends AbstractSieveCalc
         return segments;
     }
 
+    /**
+     * Split the range from <code>lowerBound</code> to <code>ceiling</code> (both inclusive) into segments, following
+     * the same rules as {@link #divideIntoSegments(long, int, int, int, int)}, except that there is no first segment
+     * for the small primes: every segment has the same size, apart from the final one.
+     * <p>
+     * A range which holds no more than <code>parallelismLowerBound</code> numbers is a single segment.  The range
+     * must not hold more than <code>Integer.MAX_VALUE</code> numbers.
+     */
+    @VisibleForTesting
+    protected static List<Segment> divideRangeIntoSegments(long lowerBound,
+                                                           long ceiling,
+                                                           int minSegmentSize,
+                                                           int maxSegmentSize,
+                                                           int levelOfParallelism,
+                                                           int parallelismLowerBound) {
+        long rangeSize = ceiling - lowerBound + 1;
+        if (rangeSize <= parallelismLowerBound) {
+            return ImmutableList.of(Segment.create(lowerBound, (int) rangeSize));
+        }
+
+        int segmentSize = getSegmentSize(minSegmentSize, maxSegmentSize, levelOfParallelism, rangeSize);
+        ImmutableList.Builder<Segment> builder = ImmutableList.builder();
+        for (long segmentLowerBound = lowerBound; segmentLowerBound <= ceiling; segmentLowerBound += segmentSize) {
+            builder.add(Segment.create(segmentLowerBound, (int) Math.min(segmentSize, ceiling - segmentLowerBound + 1)));
+        }
+        return builder.build();
+    }
+
     /**
      * Returns the segment size to use depending on the given parameters.  The segment size will be
      * set by splitting the numberRange evenly according to the <code>levelOfParallelism</code>.
@@ -162,33 +295,316 @@ public abstract class AbstractSegmentedSieveCalculator extends AbstractSieveCalc
     }
 
 
-    protected List<Integer> findPrimesInFirstSegment(Stopwatch stopwatch, List<Segment> segments) {
+    /**
+     * On top of the metrics of every calculator, the segmented calculators publish:
+     * <ul>
+     *     <li><code>segments</code> - the time it takes to sieve each segment, on one thread (or lambda)</li>
+     *     <li><code>primesPerSegment</code> - the number of primes found in each segment</li>
+     *     <li><code>smallPrimesPhase</code>, <code>segmentPhase</code> and <code>mergePhase</code> - the time spent in each phase
+     *         of a calculation: finding the small primes in the first segment, sieving all the other segments in parallel,
+     *         and concatenating the primes of every segment into the result</li>
+     * </ul>
+     */
+    @Override
+    public void registerMetrics(MetricRegistry metrics) {
+        super.registerMetrics(metrics);
+        metrics.register(MetricRegistry.name(getClass(), "segments"), segmentTimes);
+        metrics.register(MetricRegistry.name(getClass(), "primesPerSegment"), primesPerSegment);
+        metrics.register(MetricRegistry.name(getClass(), "smallPrimesPhase"), smallPrimesPhase);
+        metrics.register(MetricRegistry.name(getClass(), "segmentPhase"), segmentPhase);
+        metrics.register(MetricRegistry.name(getClass(), "mergePhase"), mergePhase);
+    }
+
+    protected PrimeSequence findPrimesInFirstSegment(Stopwatch stopwatch, List<Segment> segments, ProgressMonitor monitor) {
         int upperBound = (int) segments.get(0).getUpperBound();
-        List<Integer> smallPrimes = findPrimes(upperBound);
+        PrimeSequence smallPrimes;
+        try (Timer.Context ignored = smallPrimesPhase.time()) {
+            smallPrimes = findPrimes(upperBound, monitor);
+        }
         log.info(String.format("Found [%d] small primes from 2 to [%d]. Time elapsed = %s", smallPrimes.size(), upperBound, stopwatch));
         return smallPrimes;
     }
 
-    private List<Long> getPrimesFromFuture(Future<List<Long>> f) {
+    private PrimeSequence sieveSegment(Function<Segment, PrimeSequence> sieve, Segment segment) {
+        try (Timer.Context ignored = segmentTimes.time()) {
+            PrimeSequence primes = sieve.apply(segment);
+            primesPerSegment.update(primes.size());
+            return primes;
+        }
+    }
+
+    private CompletableFuture<PrimeSequence> sieveSegmentAsync(Function<Segment, CompletableFuture<PrimeSequence>> sieve, Segment segment) {
+        Timer.Context segmentTime = segmentTimes.time();
+        CompletableFuture<PrimeSequence> primesInSegment = sieve.apply(segment);
+        return propagateCancellation(primesInSegment, primesInSegment.whenComplete((primes, e) -> {
+            segmentTime.stop();
+            if (primes != null) {
+                primesPerSegment.update(primes.size());
+            }
+        }));
+    }
+
+    /**
+     * Waits for the result of a segment, but no later than the deadline of the <code>monitor</code>.  If the
+     * deadline passes (or the waiting thread is interrupted), the monitor is cancelled so that every segment
+     * of the calculation stops at its next check, and a CalculationCancelledException is thrown.
+     */
+    private static <T> T getResultFromFuture(Future<T> f, ProgressMonitor monitor) {
         try {
-            return f.get();
-        } catch (Exception e) {
+            return f.get(monitor.getRemainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            monitor.cancel();
+            throw monitor.newCancelledException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CalculationCancelledException) {
+                throw (CalculationCancelledException) e.getCause();
+            }
             log.error("Error retrieving result of computation from segment.", e);
             throw Throwables.propagate(e);
         }
     }
 
     /**
-     * Concatenate the smaller primes with the rest of the primes in the number line.
-     * The flatMap operation combines the results of the work that was computed in parallel into
-     * a single stream, so that it can then be concatenated with the stream of small primes.
+     * Sieves each segment on the shared executor, and hands the primes of each segment to the consumer
+     * in segment order, as soon as that segment and all the earlier ones are done.
+     * <p>
+     * Segments are submitted lazily, a few per thread ahead of the consumer, so that a slow consumer
+     * (such as a slow HTTP client) does not cause every segment to pile up in memory.  If the consumer
+     * throws (e.g. because the client went away), or the <code>monitor</code> is cancelled, the segments that
+     * are still in flight are cancelled too.
+     */
+    protected void streamSegments(List<Segment> segments, Function<Segment, PrimeSequence> sieve, Consumer<PrimeSequence> consumer,
+                                  ProgressMonitor monitor) {
+        streamSegmentFutures(segments, segment -> submitSegment(sieve, segment, monitor), consumer, monitor);
+    }
+
+    /**
+     * Same as {@link #streamSegments(List, Function, Consumer, ProgressMonitor)}, but for a <code>sieve</code> which
+     * works on each segment without a thread of its own (such as a remote call), so the executor is not used.
+     */
+    protected void streamSegmentsAsync(List<Segment> segments, Function<Segment, CompletableFuture<PrimeSequence>> sieve,
+                                       Consumer<PrimeSequence> consumer, ProgressMonitor monitor) {
+        streamSegmentFutures(segments, segment -> {
+            monitor.checkCancelled();
+            return sieveSegmentAsync(sieve, segment);
+        }, consumer, monitor);
+    }
+
+    /**
+     * Same as {@link #streamSegments(List, Function, Consumer, ProgressMonitor)}, but each segment goes to the
+     * <code>asyncSieve</code> as long as it has fewer than <code>maxAsyncInFlight</code> segments in flight, and
+     * is otherwise sieved on the executor.
+     */
+    protected void streamSegments(List<Segment> segments, Function<Segment, PrimeSequence> sieve,
+                                  Function<Segment, CompletableFuture<PrimeSequence>> asyncSieve, int maxAsyncInFlight,
+                                  Consumer<PrimeSequence> consumer, ProgressMonitor monitor) {
+        AtomicInteger asyncInFlight = new AtomicInteger();
+        streamSegmentFutures(segments, segment -> {
+            if (asyncInFlight.get() >= maxAsyncInFlight) {
+                return submitSegment(sieve, segment, monitor);
+            }
+            monitor.checkCancelled();
+            asyncInFlight.incrementAndGet();
+            CompletableFuture<PrimeSequence> primesInSegment = sieveSegmentAsync(asyncSieve, segment);
+            return propagateCancellation(primesInSegment, primesInSegment.whenComplete((primes, e) -> asyncInFlight.decrementAndGet()));
+        }, consumer, monitor);
+    }
+
+    private Future<PrimeSequence> submitSegment(Function<Segment, PrimeSequence> sieve, Segment segment, ProgressMonitor monitor) {
+        return executorService.submit(() -> {
+            monitor.checkCancelled();
+            return sieveSegment(sieve, segment);
+        });
+    }
+
+    private void streamSegmentFutures(List<Segment> segments, Function<Segment, Future<PrimeSequence>> submit, Consumer<PrimeSequence> consumer,
+                                      ProgressMonitor monitor) {
+        int maxSegmentsInFlight = STREAMING_SEGMENTS_AHEAD_PER_THREAD * getLevelOfParallelism();
+        Deque<Future<PrimeSequence>> inFlight = new ArrayDeque<>();
+        Iterator<Segment> pending = segments.iterator();
+        boolean completed = false;
+        try {
+            while (pending.hasNext() || !inFlight.isEmpty()) {
+                while (pending.hasNext() && inFlight.size() < maxSegmentsInFlight) {
+                    inFlight.add(submit.apply(pending.next()));
+                }
+                consumer.accept(getResultFromFuture(inFlight.poll(), monitor));
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                monitor.cancel();
+            }
+            inFlight.forEach(f -> f.cancel(true));
+        }
+    }
+
+    /**
+     * Sieves every segment on the shared executor, and concatenates the smaller primes with the rest of the
+     * primes in the number line, in segment order.
+     * <p>
+     * Rather than submitting one task per segment, one worker per thread is submitted, and each worker claims
+     * the next segment from a shared cursor as soon as it is done with the previous one.  A thread that is slowed
+     * down (for example, because its core is busy with other processes) simply claims fewer segments, while the
+     * other threads pick up the rest.  Each result is stored at the index of its segment, so the order of the
+     * overall result does not depend on which thread sieved which segment.
+     * <p>
+     * Each worker sieves a single segment per turn, and then resubmits itself to the back of the executor's queue
+     * as long as there are segments left, rather than holding on to its thread until the cursor is exhausted.  Since
+     * a request only ever has <code>levelOfParallelism</code> tasks in the executor's queue, concurrent requests
+     * (and the other tasks on the same executor) take turns on the shared threads, one segment at a time, instead
+     * of waiting for a long calculation to finish.  If a worker cannot resubmit itself because the queue is full,
+     * it carries on with the rest of the segments on its thread, rather than failing the calculation halfway.
+     * <p>
+     * If any segment fails (or the workers cannot be submitted because the executor is saturated), the cursor
+     * is moved to the end, the workers which are still queued are cancelled, and the monitor is cancelled so that
+     * the running ones stop too, so that they do not hold up the other requests.  The same happens once the
+     * <code>monitor</code> is cancelled or its deadline passes: each worker checks it before claiming the next
+     * segment, and the <code>sieve</code> is expected to check it while it works on a segment.  The segments which
+     * are in flight with the <code>asyncSieve</code> are cancelled as well.
+     * <p>
+     * The <code>monitor</code> is told about each segment as soon as it is sieved.
+     */
+    protected PrimeSequence calculateSegments(PrimeSequence smallPrimes, List<Segment> segments, Function<Segment, PrimeSequence> sieve,
+                                              ProgressMonitor monitor) {
+        return calculateSegments(smallPrimes, segments, sieve, levelOfParallelism, null, 0, monitor);
+    }
+
+    /**
+     * Same as {@link #calculateSegments(PrimeSequence, List, Function, ProgressMonitor)}, but for a <code>sieve</code>
+     * which works on each segment without a thread of its own (such as a remote call), so the executor is not used.
+     * <p>
+     * Instead of the workers, there are <code>levelOfParallelism</code> chains of segments: as soon as the segment of
+     * a chain is done, the chain claims the next one from the shared cursor, on whichever thread completed it.  So
+     * there are never more than <code>levelOfParallelism</code> segments in flight, and the calling thread is the only
+     * one waiting for them.
+     */
+    protected PrimeSequence calculateSegmentsAsync(PrimeSequence smallPrimes, List<Segment> segments,
+                                                   Function<Segment, CompletableFuture<PrimeSequence>> sieve, ProgressMonitor monitor) {
+        return calculateSegments(smallPrimes, segments, null, 0, sieve, levelOfParallelism, monitor);
+    }
+
+    /**
+     * Sieves the segments with <code>numWorkers</code> workers on the executor, which use the <code>sieve</code>, and
+     * <code>numChains</code> chains, which use the <code>asyncSieve</code>, at the same time.  The workers and the chains
+     * all claim their segments from the same cursor, each one as soon as it is done with the previous segment, so each
+     * kind of sieve ends up with a share of the segments in proportion to its throughput, and both keep going until
+     * the last segment is claimed.
+     * <p>
+     * As soon as a worker or a chain fails, the failure is thrown without waiting for the segments in flight, and
+     * the rest of the segments are abandoned in the same way as above.
+     */
+    protected PrimeSequence calculateSegments(PrimeSequence smallPrimes, List<Segment> segments,
+                                              Function<Segment, PrimeSequence> sieve, int numWorkers,
+                                              Function<Segment, CompletableFuture<PrimeSequence>> asyncSieve, int numChains,
+                                              ProgressMonitor monitor) {
+        monitor.begin(segments.size());
+        PrimeSequence[] results = new PrimeSequence[segments.size()];
+        AtomicInteger cursor = new AtomicInteger();
+        List<CompletableFuture<?>> tasks = Lists.newArrayList();
+        Set<CompletableFuture<PrimeSequence>> inFlight = ConcurrentHashMap.newKeySet();
+        boolean completed = false;
+        Timer.Context segmentPhaseTime = segmentPhase.time();
+        try {
+            // The chains are started first, since they only send off their first segment, whereas the workers may
+            // claim all the segments of a small calculation before the chains get any
+            for (int c = 0; c < Math.min(numChains, segments.size()); c++) {
+                tasks.add(sieveNextSegmentAsync(segments, results, cursor, asyncSieve, inFlight, monitor));
+            }
+            for (int w = 0; w < Math.min(numWorkers, segments.size()); w++) {
+                tasks.add(submitWorker(segments, results, cursor, sieve, monitor));
+            }
+            getResultFromFuture(allOrFirstFailure(tasks), monitor);
+            completed = true;
+        } finally {
+            if (!completed) {
+                monitor.cancel();
+            }
+            cursor.set(results.length);
+            tasks.forEach(f -> f.cancel(true));
+            inFlight.forEach(f -> f.cancel(true));
+            segmentPhaseTime.stop();
+        }
+
+        return concatenate(smallPrimes, results);
+    }
+
+    private CompletableFuture<Void> submitWorker(List<Segment> segments, PrimeSequence[] results, AtomicInteger cursor,
+                                                 Function<Segment, PrimeSequence> sieve, ProgressMonitor monitor) {
+        return CompletableFuture.runAsync(() -> sieveNextSegment(segments, results, cursor, sieve, monitor), executorService)
+            .thenCompose(ignored -> cursor.get() < results.length
+                ? resubmitWorker(segments, results, cursor, sieve, monitor)
+                : CompletableFuture.completedFuture(null));
+    }
+
+    private CompletableFuture<Void> resubmitWorker(List<Segment> segments, PrimeSequence[] results, AtomicInteger cursor,
+                                                   Function<Segment, PrimeSequence> sieve, ProgressMonitor monitor) {
+        try {
+            return submitWorker(segments, results, cursor, sieve, monitor);
+        } catch (RejectedExecutionException e) {
+            while (sieveNextSegment(segments, results, cursor, sieve, monitor)) {
+                // Keep going on this thread until the cursor is exhausted
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Returns false if there are no segments left to claim.
+     */
+    private boolean sieveNextSegment(List<Segment> segments, PrimeSequence[] results, AtomicInteger cursor,
+                                     Function<Segment, PrimeSequence> sieve, ProgressMonitor monitor) {
+        int i = cursor.getAndIncrement();
+        if (i >= results.length) {
+            return false;
+        }
+        monitor.checkCancelled();
+        results[i] = sieveSegment(sieve, segments.get(i));
+        monitor.segmentCompleted();
+        return true;
+    }
+
+    private CompletableFuture<Void> sieveNextSegmentAsync(List<Segment> segments, PrimeSequence[] results, AtomicInteger cursor,
+                                                          Function<Segment, CompletableFuture<PrimeSequence>> sieve,
+                                                          Set<CompletableFuture<PrimeSequence>> inFlight, ProgressMonitor monitor) {
+        int i = cursor.getAndIncrement();
+        if (i >= results.length) {
+            return CompletableFuture.completedFuture(null);
+        }
+        monitor.checkCancelled();
+        CompletableFuture<PrimeSequence> primesInSegment = sieveSegmentAsync(sieve, segments.get(i));
+        inFlight.add(primesInSegment);
+        primesInSegment.whenComplete((primes, e) -> inFlight.remove(primesInSegment));
+        return primesInSegment.thenCompose(primes -> {
+            results[i] = primes;
+            monitor.segmentCompleted();
+            return sieveNextSegmentAsync(segments, results, cursor, sieve, inFlight, monitor);
+        });
+    }
+
+    /**
+     * Completes once all the <code>tasks</code> are done, or as soon as one of them fails.
      */
-    protected List<Long> concatenate(List<Integer> smallPrimes, List<Future<List<Long>>> futures) {
-        return Stream.concat(
-            smallPrimes.stream().mapToLong(i -> (long) i).boxed(),
-            futures.stream()
-                .map(this::getPrimesFromFuture)
-                .flatMap(Collection::stream))
-            .collect(Collectors.toList());
+    private static CompletableFuture<Void> allOrFirstFailure(List<CompletableFuture<?>> tasks) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        tasks.forEach(task -> task.whenComplete((ignored, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            }
+        }));
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[tasks.size()])).thenRun(() -> result.complete(null));
+        return result;
+    }
+
+    private PrimeSequence concatenate(PrimeSequence smallPrimes, PrimeSequence[] results) {
+        try (Timer.Context ignored = mergePhase.time()) {
+            List<PrimeSequence> sequences = Lists.newArrayListWithCapacity(results.length + 1);
+            sequences.add(smallPrimes);
+            sequences.addAll(Arrays.asList(results));
+            return PrimeSequence.concat(sequences);
+        }
     }
 }
@@ -1,58 +1,275 @@
 package com.villarsolutions.primordial.calculator.impl;
 
-import com.google.common.collect.Lists;
 import com.villarsolutions.primordial.calculator.AbstractPrimeCalculator;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.exception.CalculationException;
 
-import java.util.BitSet;
-import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static com.villarsolutions.primordial.util.PrimordialUtil.isqrt;
 
 /**
  * Shared functionality across all sieve calculators.
+ * <p>
+ * A sieve calculator can be given a PrimeBitmapStore, in which case any request up to the ceiling covered
+ * by the store is answered from the store, instead of being sieved again.
  */
 public abstract class AbstractSieveCalculator extends AbstractPrimeCalculator {
 
+    /**
+     * When counting primes, the number line is sieved in chunks of this size, one after the other.
+     */
+    private static final int COUNTING_CHUNK_SIZE = 1 << 30;
+
+    /**
+     * From this ceiling onwards, the primes are counted with the Lagarias-Miller-Odlyzko algorithm
+     * instead of being sieved.  Below it, sieving takes a few milliseconds at most.
+     */
+    static final long MIN_COMBINATORIAL_COUNT_CEILING = 10_000_000L;
+
+    /**
+     * While the primes are collected from the sieve, the monitor is checked every this many words
+     * (about 4 million odd numbers).
+     */
+    private static final int MONITOR_CHECK_INTERVAL = 1 << 16;
+
+    private final PrimeBitmapStore primeStore;
+
+    public AbstractSieveCalculator() {
+        this(null);
+    }
+
+    /**
+     * @param primeStore if null, every request is sieved.
+     */
+    public AbstractSieveCalculator(PrimeBitmapStore primeStore) {
+        this.primeStore = primeStore;
+    }
+
+    /**
+     * Returns true if the primes up to <code>ceiling</code> can be read from the PrimeBitmapStore.
+     */
+    protected boolean isStored(long ceiling) {
+        return primeStore != null && primeStore.covers(ceiling);
+    }
+
+    protected PrimeBitmapStore getPrimeStore() {
+        return primeStore;
+    }
+
+    /**
+     * Ranges are sieved locally by every sieve calculator, in a single segment.  Only the primes up to
+     * sqrt(ceiling) are needed, and these are in turn sieved with the primes up to the fourth root of the
+     * ceiling, which are few enough to be found with <code>findPrimes</code>.
+     *
+     * @see SegmentedSieveUtil#calculatePrimesInRange(PrimeSequence, Segment, int)
+     */
+    @Override
+    protected PrimeSequence calculate(long lowerBound, long ceiling, ProgressMonitor monitor) throws CalculationException {
+        if (isStored(ceiling)) {
+            return primeStore.primesInRange(lowerBound, ceiling);
+        }
+
+        PrimeSequence tinyPrimes = findPrimes((int) isqrt(isqrt(ceiling)), monitor);
+        Segment range = Segment.create(lowerBound, (int) (ceiling - lowerBound + 1));
+        return SegmentedSieveUtil.calculatePrimesInRange(tinyPrimes, range, getBlockSize(), monitor);
+    }
+
+    /**
+     * Ceilings covered by the PrimeBitmapStore are counted from the store.
+     * <p>
+     * Large ceilings are counted in roughly O(ceiling^(2/3)) time with the Lagarias-Miller-Odlyzko algorithm,
+     * which only needs the primes up to about the cube root of the ceiling.
+     * <p>
+     * Smaller ceilings are sieved in chunks, and only the primes in each block are counted, so
+     * nothing but the primes up to sqrt(ceiling) is ever held in memory.
+     *
+     * @see LagariasMillerOdlyzko
+     */
+    @Override
+    protected long count(long ceiling, ProgressMonitor monitor) throws CalculationException {
+        if (isStored(ceiling)) {
+            return primeStore.countPrimes(ceiling);
+        }
+        if (ceiling >= MIN_COMBINATORIAL_COUNT_CEILING) {
+            PrimeSequence primesUpToY = findPrimes((int) LagariasMillerOdlyzko.getY(ceiling), monitor);
+            return new LagariasMillerOdlyzko(ceiling, primesUpToY).countPrimes(monitor);
+        }
+
+        PrimeSequence sievingPrimes = findPrimes((int) isqrt(ceiling), monitor);
+        long count = 0;
+        for (long lowerBound = 2; lowerBound <= ceiling; lowerBound += COUNTING_CHUNK_SIZE) {
+            int chunkSize = (int) Math.min(COUNTING_CHUNK_SIZE, ceiling - lowerBound + 1);
+            count += SegmentedSieveUtil.countPrimesInSegment(sievingPrimes, Segment.create(lowerBound, chunkSize), getBlockSize(), monitor);
+        }
+        return count;
+    }
+
+    /**
+     * Ceilings covered by the PrimeBitmapStore are read from the store, one chunk at a time.
+     * <p>
+     * Otherwise the number line is sieved in chunks of <code>STREAMING_CHUNK_SIZE</code>, in the same way as it is
+     * counted, so only the primes up to sqrt(ceiling) and those of the current chunk are ever held in memory.
+     */
+    @Override
+    protected void stream(long ceiling, Consumer<PrimeSequence> consumer, ProgressMonitor monitor) throws CalculationException {
+        if (isStored(ceiling)) {
+            primeStore.streamPrimes(ceiling, consumer);
+            return;
+        }
+
+        PrimeSequence sievingPrimes = findPrimes((int) isqrt(ceiling), monitor);
+        for (long lowerBound = 2; lowerBound <= ceiling; lowerBound += STREAMING_CHUNK_SIZE) {
+            int chunkSize = (int) Math.min(STREAMING_CHUNK_SIZE, ceiling - lowerBound + 1);
+            consumer.accept(SegmentedSieveUtil.calculatePrimesInSegment(sievingPrimes, Segment.create(lowerBound, chunkSize), getBlockSize(), monitor));
+        }
+    }
+
+    /**
+     * The ceilings beyond the range of the sieve are counted with the Lagarias-Miller-Odlyzko algorithm, which only
+     * needs the primes up to about the cube root of the ceiling, so any ceiling can be counted.
+     */
+    @Override
+    protected Optional<Long> getMaxCountCeilingSupported() {
+        return Optional.empty();
+    }
+
+    /**
+     * The primes read from the store are held exactly once.  Otherwise, the primes are found with
+     * <code>findPrimes</code>, which holds a bit for each odd number, and sizes the result exactly.
+     */
+    @Override
+    public long estimatePeakMemory(long ceiling) {
+        long primesBytes = estimatePrimeCount(2, ceiling) * Long.BYTES;
+        return isStored(ceiling) ? primesBytes : primesBytes + ceiling / 16;
+    }
+
+    /**
+     * A range is sieved in blocks of <code>getBlockSize()</code> bytes, see CacheBlockedSieve.  If the range is wider
+     * than sqrt(ceiling), the sieving primes up to sqrt(ceiling) are held for the whole range too, along with their
+     * entries in the buckets of the CacheBlockedSieve, which far up the number line can take more than the primes found.
+     *
+     * @see SegmentedSieveUtil#calculatePrimesInRange(PrimeSequence, Segment, int)
+     */
+    @Override
+    public long estimatePeakMemory(long lowerBound, long ceiling) {
+        if (isStored(ceiling)) {
+            return estimatePrimeCount(lowerBound, ceiling) * Long.BYTES;
+        }
+        long root = isqrt(ceiling);
+        long sievingPrimesBytes = 0;
+        if (root <= SegmentedSieveUtil.MAX_STORED_SIEVING_PRIME && ceiling - lowerBound + 1 > root) {
+            sievingPrimesBytes = estimatePrimeCount(2, root) * (Long.BYTES + CacheBlockedSieve.BYTES_PER_LARGE_PRIME);
+        }
+        return super.estimatePeakMemory(lowerBound, ceiling) + getBlockSize() + sievingPrimesBytes;
+    }
+
+    /**
+     * The size in bytes of the blocks in which segments are sieved.
+     *
+     * @see CacheBlockedSieve
+     */
+    protected int getBlockSize() {
+        return CacheBlockedSieve.DEFAULT_BLOCK_SIZE;
+    }
+
     /**
      * This method is able to find primes up to Integer.MAX_VALUE using a single-threaded sieve.
      *
      * @param  ceiling (inclusive) maximum number for which to find primes.
-     * @return an ImmutableList with the prime numbers from 2 to ceiling.
+     * @return a PrimeSequence with the prime numbers from 2 to ceiling.
      */
-    protected List<Integer> findPrimes(int ceiling) {
+    protected PrimeSequence findPrimes(int ceiling) {
+        return findPrimes(ceiling, new ProgressMonitor());
+    }
+
+    /**
+     * Same as {@link #findPrimes(int)}, but stops as soon as the <code>monitor</code> is cancelled (or its deadline
+     * passes).  It is checked before each sieving prime, and every <code>MONITOR_CHECK_INTERVAL</code> words while
+     * the primes are collected.
+     */
+    protected PrimeSequence findPrimes(int ceiling, ProgressMonitor monitor) {
         if (ceiling < 2) {
-            return Lists.newArrayList();
+            return new PrimeSequence();
         }
 
-        // The BitSet sieve contains a bit for each number
-        // from 2 to ceiling. If set, it means the number is *not* prime.
-        // We use this negated definition instead of saying "a set bit means prime" to avoid
-        // having to initialize the whole BitSet with true values.
-        int sieveLength = ceiling - 1;
-        BitSet sieve = new BitSet(sieveLength);
+        long[] sieve = sieveOddNumbers(ceiling, monitor);
 
-        // We use 'long' in these for loops to guard against integer overflow.
-        // However, because ceiling is a positive int, it is safe to cast back
-        // to an int inside the loop.
-        for (long n = 2; n * n <= ceiling; n++) {
-            if (isPrime((int) n, sieve)) {
-                for (long j = n * n; j <= ceiling; j += n) {
-                    sieve.set((int) j - 2);
-                }
+        // 2 is the only even prime, and is not represented in the sieve.
+        PrimeSequence results = new PrimeSequence(1 + countClearBits(sieve));
+        results.add(2);
+
+        // Rather than testing each bit, we jump straight to the next clear bit of each word.
+        for (int w = 0; w < sieve.length; w++) {
+            if ((w & (MONITOR_CHECK_INTERVAL - 1)) == 0) {
+                monitor.checkCancelled();
+            }
+            long primeBits = ~sieve[w];
+            while (primeBits != 0) {
+                long index = ((long) w << 6) + Long.numberOfTrailingZeros(primeBits);
+                results.add(2 * index + 1);
+                primeBits &= primeBits - 1;
             }
         }
 
-        List<Integer> results = Lists.newArrayList();
-        for (long n = 2; n <= ceiling; n++) {
-            int intN = (int) n;
-            if (isPrime(intN, sieve)) {
-                results.add(intN);
+        return results;
+    }
+
+    /**
+     * Sieves the odd numbers from 1 to <code>ceiling</code> into a bit array, where bit <code>i</code>
+     * represents the odd number <code>2i + 1</code>.  If set, it means the number is *not* prime.
+     * We use this negated definition instead of saying "a set bit means prime" to avoid having
+     * to initialize the whole array with ones.
+     * <p>
+     * Compared to a sieve with a bit for every number, this halves the memory footprint and
+     * skips the even multiples of each prime, which are never stored.
+     * <p>
+     * The number 1 and the unused bits at the end of the last word are marked as not prime,
+     * so callers can simply look for clear bits.
+     */
+    static long[] sieveOddNumbers(int ceiling) {
+        return sieveOddNumbers(ceiling, new ProgressMonitor());
+    }
+
+    /**
+     * Same as {@link #sieveOddNumbers(int)}, but checks the <code>monitor</code> before crossing off the multiples
+     * of each sieving prime.  The smallest primes take the longest, e.g. 3 crosses off over 350 million bits
+     * at the largest ceiling.
+     */
+    static long[] sieveOddNumbers(int ceiling, ProgressMonitor monitor) {
+        // Number of odd numbers from 1 to ceiling, written to avoid overflow when ceiling is Integer.MAX_VALUE
+        int numBits = (ceiling - 1) / 2 + 1;
+        long[] sieve = new long[(numBits + 63) >>> 6];
+
+        // 1 is not prime
+        sieve[0] |= 1L;
+        if ((numBits & 63) != 0) {
+            sieve[sieve.length - 1] |= -1L << numBits;
+        }
+
+        // We use 'long' in these for loops to guard against integer overflow.
+        // Stepping the index by p steps the represented number by 2p, which skips the even multiples.
+        for (long i = 1; (2 * i + 1) * (2 * i + 1) <= ceiling; i++) {
+            if ((sieve[(int) (i >>> 6)] & (1L << i)) == 0) {
+                monitor.checkCancelled();
+                long p = 2 * i + 1;
+                for (long j = (p * p) >>> 1; j < numBits; j += p) {
+                    sieve[(int) (j >>> 6)] |= 1L << j;
+                }
             }
         }
 
-        return results;
+        return sieve;
     }
 
-    private static boolean isPrime(int n, BitSet sieve) {
-        return !sieve.get(n - 2);
+    private static int countClearBits(long[] sieve) {
+        int count = 0;
+        for (long word : sieve) {
+            count += Long.bitCount(~word);
+        }
+        return count;
     }
 
 }
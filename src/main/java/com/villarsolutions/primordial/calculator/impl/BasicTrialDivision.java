@@ -1,10 +1,10 @@
 package com.villarsolutions.primordial.calculator.impl;
 
-import com.google.common.collect.Lists;
 import com.villarsolutions.primordial.calculator.AbstractPrimeCalculator;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
 import com.villarsolutions.primordial.exception.CalculationException;
 
-import java.util.List;
 import java.util.Optional;
 
 import static com.villarsolutions.primordial.util.PrimordialUtil.isEven;
@@ -19,22 +19,42 @@ import static com.villarsolutions.primordial.util.PrimordialUtil.isEven;
  */
 public class BasicTrialDivision extends AbstractPrimeCalculator {
 
+    private static final long MONITOR_CHECK_INTERVAL = 1 << 16;
+
     @Override
-    protected List<Long> calculate(long ceiling) throws CalculationException {
+    protected PrimeSequence calculate(long ceiling, ProgressMonitor monitor) throws CalculationException {
         if (ceiling < 2) {
-            return Lists.newArrayList();
+            return new PrimeSequence();
         }
+        return calculate(2, ceiling, monitor);
+    }
 
-        List<Long> primes = Lists.newArrayList();
-        for (long n = 2; n <= ceiling; n++) {
-            if (isPrime(n)) {
+    /**
+     * Trial division tests each number independently, so a range is simply a shorter loop.  The <code>monitor</code>
+     * is checked every <code>MONITOR_CHECK_INTERVAL</code> numbers, and every <code>MONITOR_CHECK_INTERVAL</code>
+     * divisors while a number is tested, since far up the number line a single prime takes a billion divisions.
+     */
+    @Override
+    protected PrimeSequence calculate(long lowerBound, long ceiling, ProgressMonitor monitor) throws CalculationException {
+        PrimeSequence primes = new PrimeSequence();
+        long n = lowerBound;
+        while (true) {
+            if ((n & (MONITOR_CHECK_INTERVAL - 1)) == 0) {
+                monitor.checkCancelled();
+            }
+            if (isPrime(n, monitor)) {
                 primes.add(n);
             }
+            // Checked before incrementing, so that a ceiling of Long.MAX_VALUE does not overflow
+            if (n == ceiling) {
+                break;
+            }
+            n++;
         }
         return primes;
     }
 
-    private static boolean isPrime(long n) {
+    private static boolean isPrime(long n, ProgressMonitor monitor) {
         // Assume n is prime until proven otherwise.
         boolean prime = true;
 
@@ -48,7 +68,11 @@ public class BasicTrialDivision extends AbstractPrimeCalculator {
             } else {
                 // for p in (2 to sqrt(n)) by increments of 1
                 // if p divides n with no remainder, then n is not prime
-                for (long p = 2; p * p <= n; p++) {
+                // (p <= n / p is the same test as p * p <= n, but cannot overflow for large n)
+                for (long p = 2; p <= n / p; p++) {
+                    if ((p & (MONITOR_CHECK_INTERVAL - 1)) == 0) {
+                        monitor.checkCancelled();
+                    }
                     if (n % p == 0) {
                         // p divides n perfectly, therefore n is not prime
                         prime = false;
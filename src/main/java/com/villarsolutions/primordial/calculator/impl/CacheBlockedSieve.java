@@ -0,0 +1,309 @@
+package com.villarsolutions.primordial.calculator.impl;
+
+import com.google.common.base.Preconditions;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static com.villarsolutions.primordial.calculator.impl.WheelSegment.BIT_INDEX;
+import static com.villarsolutions.primordial.calculator.impl.WheelSegment.GAPS;
+import static com.villarsolutions.primordial.calculator.impl.WheelSegment.RESIDUES;
+import static com.villarsolutions.primordial.calculator.impl.WheelSegment.WHEEL_SIZE;
+import static com.villarsolutions.primordial.util.PrimordialUtil.isqrt;
+
+/**
+ * Sieves a (potentially very large) segment in small blocks that fit in the CPU's L1 or L2 cache,
+ * re-using a single mod-30 WheelSegment as the buffer for each block.
+ * <p>
+ * Sieving a whole segment at once means that every sieving prime sweeps over the entire array,
+ * and once the array is larger than the cache, every pass runs at the speed of main memory.
+ * Instead, all the sieving primes are applied to one block before moving on to the next block,
+ * so the block stays in cache while it is being sieved.
+ * <p>
+ * The sieving primes are split in two groups:
+ * <ul>
+ *     <li><b>Small primes</b> (smaller than the block size in bytes) hit every block many times.
+ *         For each of them we keep the next byte index of each of its 8 wheel residues, and
+ *         carry these over from one block to the next.</li>
+ *     <li><b>Large primes</b> hit a given block a handful of times at most, and most blocks not at all.
+ *         These are kept in "buckets" (one per block), as described by Tomas Oliveira e Silva.
+ *         A large prime sits in the bucket of the next block that contains one of its multiples,
+ *         so each block only touches the primes that actually cross off something in it.</li>
+ * </ul>
+ * <p>
+ * Instances are single-use and not thread-safe.  Each worker thread creates its own.
+ *
+ * @see WheelSegment
+ * @see <a href="http://sweet.ua.pt/tos/software/prime_sieve.html">Segmented sieve with buckets</a>
+ */
+public class CacheBlockedSieve {
+
+    /**
+     * 32KB, the size of the L1 data cache on most x86 cores.  Each block then spans 983,040 numbers.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 32 * 1024;
+
+    /**
+     * The memory taken by each large sieving prime in the buckets: its value, its next offset, its wheel position
+     * and the link to the next entry in its bucket.  The small primes are few enough to be ignored.
+     */
+    static final int BYTES_PER_LARGE_PRIME = Long.BYTES + Long.BYTES + 1 + Integer.BYTES;
+
+    private static final int NO_ENTRY = -1;
+
+    private final Segment segment;
+    private final int blockSize;
+
+    /**
+     * The multiple of 30 where the first block starts.  All byte indexes and offsets are relative to it.
+     */
+    private final long segmentBase;
+    private final long segmentLength;
+    private final int numBlocks;
+
+    // Small primes: 8 "streams" per prime, one per wheel residue, each crossing off a single bit every p bytes.
+    private int numSmallPrimes;
+    private long[] smallPrimes;
+    private long[] nextIndex;
+    private byte[] streamMask;
+
+    // Large primes: one entry per prime, in a singly-linked list per block (the buckets).
+    private long[] largePrimes;
+    private long[] nextOffset;
+    private byte[] wheelPosition;
+    private int[] nextInBucket;
+    private int[] bucketHead;
+
+    public CacheBlockedSieve(PrimeSequence sievingPrimes, Segment segment, int blockSize) {
+        Preconditions.checkArgument(blockSize > 0, "blockSize must be greater than 0");
+        this.segment = segment;
+        this.blockSize = blockSize;
+        this.segmentBase = segment.getLowerBound() - (segment.getLowerBound() % WHEEL_SIZE);
+        this.segmentLength = WheelSegment.getLengthInBytes(segment.getLowerBound(), segment.getUpperBound());
+        this.numBlocks = (int) ((segmentLength + blockSize - 1) / blockSize);
+        initSievingPrimes(sievingPrimes);
+    }
+
+    /**
+     * Returns all the primes in the segment.  The result is sized from an estimate of the number of
+     * primes in the segment, so it rarely needs to grow.
+     */
+    public PrimeSequence calculatePrimes() {
+        return calculatePrimes(new ProgressMonitor());
+    }
+
+    /**
+     * Same as {@link #calculatePrimes()}, but checks the <code>monitor</code> after each block, and stops with a
+     * CalculationCancelledException as soon as the calculation is cancelled.
+     */
+    public PrimeSequence calculatePrimes(ProgressMonitor monitor) {
+        PrimeSequence primes = new PrimeSequence(estimatePrimeCount(segment));
+        sieve(block -> {
+            monitor.checkCancelled();
+            block.collectPrimes(primes);
+        });
+        return primes;
+    }
+
+    /**
+     * Returns the number of primes in the segment, without materializing them.
+     */
+    public int countPrimes() {
+        return countPrimes(new ProgressMonitor());
+    }
+
+    /**
+     * Same as {@link #countPrimes()}, but checks the <code>monitor</code> after each block.
+     */
+    public int countPrimes(ProgressMonitor monitor) {
+        AtomicInteger count = new AtomicInteger();
+        sieve(block -> {
+            monitor.checkCancelled();
+            count.addAndGet(block.countPrimes());
+        });
+        return count.get();
+    }
+
+    /**
+     * Sieves each block in order, and hands it to the given consumer before moving on to the next one.
+     * The consumer must not keep a reference to the block, since its buffer is re-used.
+     */
+    public void sieve(Consumer<WheelSegment> blockConsumer) {
+        WheelSegment block = new WheelSegment((int) Math.min(blockSize, segmentLength));
+        long numbersPerBlock = (long) blockSize * WHEEL_SIZE;
+
+        for (int b = 0; b < numBlocks; b++) {
+            long blockBase = segmentBase + b * numbersPerBlock;
+            long lowerBound = Math.max(blockBase, segment.getLowerBound());
+            long upperBound = Math.min(blockBase + (numbersPerBlock - 1), segment.getUpperBound());
+            block.reset(lowerBound, upperBound);
+
+            long blockStart = (long) b * blockSize;
+            crossOffSmallPrimes(block, blockStart);
+            crossOffLargePrimes(block, b, blockStart);
+            blockConsumer.accept(block);
+        }
+    }
+
+    private void crossOffSmallPrimes(WheelSegment block, long blockStart) {
+        byte[] sieve = block.getSieve();
+        int length = block.getLength();
+        for (int i = 0; i < numSmallPrimes; i++) {
+            // Small primes are smaller than the block size, so the inner loop can use int arithmetic
+            int p = (int) smallPrimes[i];
+            for (int s = i * 8; s < (i + 1) * 8; s++) {
+                long relativeIndex = nextIndex[s] - blockStart;
+                if (relativeIndex >= length) {
+                    continue;
+                }
+                int index = (int) relativeIndex;
+                byte mask = streamMask[s];
+                for (; index < length; index += p) {
+                    sieve[index] |= mask;
+                }
+                nextIndex[s] = blockStart + index;
+            }
+        }
+    }
+
+    private void crossOffLargePrimes(WheelSegment block, int blockNumber, long blockStart) {
+        byte[] sieve = block.getSieve();
+        long blockEnd = blockStart + block.getLength();
+
+        int entry = bucketHead[blockNumber];
+        bucketHead[blockNumber] = NO_ENTRY;
+        while (entry != NO_ENTRY) {
+            int nextEntry = nextInBucket[entry];
+
+            long p = largePrimes[entry];
+            long offset = nextOffset[entry];
+            int w = wheelPosition[entry];
+            long index = offset / WHEEL_SIZE;
+            while (index < blockEnd) {
+                sieve[(int) (index - blockStart)] |= 1 << BIT_INDEX[(int) (offset % WHEEL_SIZE)];
+                offset += p * GAPS[w];
+                w = (w + 1) & 7;
+                index = offset / WHEEL_SIZE;
+            }
+            nextOffset[entry] = offset;
+            wheelPosition[entry] = (byte) w;
+            addToBucket(entry, index);
+
+            entry = nextEntry;
+        }
+    }
+
+    private void addToBucket(int entry, long index) {
+        if (index < segmentLength) {
+            int bucket = (int) (index / blockSize);
+            nextInBucket[entry] = bucketHead[bucket];
+            bucketHead[bucket] = entry;
+        }
+    }
+
+    /**
+     * Works out the first multiple of each sieving prime in the segment, and sorts the primes into
+     * the small primes and the buckets of large primes.
+     * <p>
+     * As in WheelSegment, we only cross off the multiples <code>p * q</code> where <code>q >= p</code> and
+     * <code>q</code> is on the wheel, so the primes 2, 3 and 5 are skipped, and so are the primes above
+     * sqrt(upperBound).
+     * <p>
+     * The tables of the small and large primes are sized separately, since there may be millions of sieving
+     * primes, of which only the few thousand below the block size are small.
+     */
+    private void initSievingPrimes(PrimeSequence sievingPrimes) {
+        int numPrimes = countPrimesBelow(sievingPrimes, isqrt(segment.getUpperBound()) + 1);
+        int maxSmallPrimes = countPrimesBelow(sievingPrimes, blockSize);
+        int maxLargePrimes = Math.max(0, numPrimes - maxSmallPrimes);
+        smallPrimes = new long[maxSmallPrimes];
+        nextIndex = new long[maxSmallPrimes * 8];
+        streamMask = new byte[maxSmallPrimes * 8];
+
+        largePrimes = new long[maxLargePrimes];
+        nextOffset = new long[maxLargePrimes];
+        wheelPosition = new byte[maxLargePrimes];
+        nextInBucket = new int[maxLargePrimes];
+        bucketHead = new int[numBlocks];
+        Arrays.fill(bucketHead, NO_ENTRY);
+
+        int numLargePrimes = 0;
+        for (int i = 0; i < numPrimes; i++) {
+            long p = sievingPrimes.get(i);
+            long maxQ = segment.getUpperBound() / p;
+            long minQ = Math.max(p, segment.getLowerBound() / p + (segment.getLowerBound() % p == 0 ? 0 : 1));
+            if (p < 7 || minQ > maxQ) {
+                continue;
+            }
+
+            if (p < blockSize) {
+                addSmallPrime(p, minQ, maxQ);
+            } else {
+                // Find the first q >= minQ which is on the wheel, and its position on the wheel
+                int w = 0;
+                while (RESIDUES[w] < minQ % WHEEL_SIZE) {
+                    w++;
+                }
+                long q = minQ - (minQ % WHEEL_SIZE) + RESIDUES[w];
+                if (q > maxQ) {
+                    continue;
+                }
+
+                int entry = numLargePrimes++;
+                largePrimes[entry] = p;
+                nextOffset[entry] = p * q - segmentBase;
+                wheelPosition[entry] = (byte) w;
+                addToBucket(entry, nextOffset[entry] / WHEEL_SIZE);
+            }
+        }
+    }
+
+    private void addSmallPrime(long p, long minQ, long maxQ) {
+        int first = numSmallPrimes * 8;
+        smallPrimes[numSmallPrimes++] = p;
+
+        int minQResidue = (int) (minQ % WHEEL_SIZE);
+        for (int r = 0; r < RESIDUES.length; r++) {
+            // The smallest q >= minQ that is congruent to this residue.  If it is beyond the segment,
+            // the stream starts past the end and never crosses anything off.
+            long q = minQ + ((RESIDUES[r] - minQResidue + WHEEL_SIZE) % WHEEL_SIZE);
+            if (q > maxQ) {
+                nextIndex[first + r] = Long.MAX_VALUE;
+                continue;
+            }
+            long offset = p * q - segmentBase;
+            nextIndex[first + r] = offset / WHEEL_SIZE;
+            streamMask[first + r] = (byte) (1 << BIT_INDEX[(int) (offset % WHEEL_SIZE)]);
+        }
+    }
+
+    /**
+     * The number of primes in the (ascending) sequence which are smaller than <code>bound</code>.
+     */
+    private static int countPrimesBelow(PrimeSequence primes, long bound) {
+        int low = 0;
+        int high = primes.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (primes.get(mid) < bound) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * An over-estimate of the number of primes in the segment, based on the prime number theorem
+     * (the density of primes around n is roughly 1 / ln(n)).
+     */
+    static int estimatePrimeCount(Segment segment) {
+        double density = 1.0 / (Math.log(Math.max(segment.getLowerBound(), 10)) - 1.1);
+        return (int) Math.min(segment.getSegmentSize(), segment.getSegmentSize() * density + 16);
+    }
+
+}
@@ -1,34 +1,43 @@
 package com.villarsolutions.primordial.calculator.impl;
 
 import com.google.common.base.Preconditions;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
 import com.villarsolutions.primordial.exception.CalculationException;
 
-import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 /**
  * Single-threaded implementation of Eratosthenes Sieve.
  * <p>
  * Only a ceiling as high as <code>Integer.MAX_VALUE</code> is supported for this algorithm
- * because it uses a BitSet to sieve the numbers.
+ * because it sieves the numbers into a single array (holding only the odd numbers).
  * <p>
  * Also note that multiple requests running concurrently in the same JVM will contend for heap space,
  * so the available memory will also limit the actual ceiling that can be used.
  * <p>
  * The time complexity of this algorithm is O( n log log n )
+ * <p>
+ * If a PrimeBitmapStore is given, the ceilings it covers are read from the store instead.
  *
  * @see Integer#MAX_VALUE
  */
 public class EratosthenesSieve extends AbstractSieveCalculator {
 
+    public EratosthenesSieve() {
+    }
+
+    public EratosthenesSieve(PrimeBitmapStore primeStore) {
+        super(primeStore);
+    }
+
     @Override
-    protected List<Long> calculate(long ceiling) throws CalculationException {
+    protected PrimeSequence calculate(long ceiling, ProgressMonitor monitor) throws CalculationException {
         Preconditions.checkArgument(ceiling <= Integer.MAX_VALUE);
-        return findPrimes((int) ceiling).stream()
-                .mapToLong(i -> (long) i)
-                .boxed()
-                .collect(Collectors.toList());
+        if (isStored(ceiling)) {
+            return getPrimeStore().primesInRange(2, ceiling);
+        }
+        return findPrimes((int) ceiling, monitor);
     }
 
     @Override
@@ -0,0 +1,462 @@
+package com.villarsolutions.primordial.calculator.impl;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+import static com.villarsolutions.primordial.util.PrimordialUtil.getDecimalFormat;
+import static com.villarsolutions.primordial.util.PrimordialUtil.isqrt;
+
+/**
+ * Counts the primes up to <code>x</code> with the combinatorial algorithm of Lagarias, Miller and Odlyzko (LMO),
+ * without finding the primes themselves.  It runs in roughly O(x^(2/3)) time and O(x^(1/3)) memory, compared to the
+ * O(x) time of counting with a sieve.
+ * <p>
+ * With <code>y >= x^(1/3)</code> and <code>a = pi(y)</code>, the prime counting function is:
+ * <pre>
+ *     pi(x) = phi(x, a) + a - 1 - P2(x, a)
+ * </pre>
+ * where <code>phi(x, a)</code> is the number of integers up to x which are not divisible by any of the first
+ * <code>a</code> primes, and <code>P2(x, a)</code> is the number of integers up to x which are the product of
+ * exactly two primes larger than y.
+ * <ul>
+ *     <li><code>phi(x, a)</code> is expanded into the "ordinary leaves" <code>mu(n) * phi(x / n, c)</code> (for n <= y),
+ *         where c is small enough for <code>phi(v, c)</code> to be read from a table, and the "special leaves"
+ *         <code>-mu(m) * phi(x / (p * m), b - 1)</code>.  The special leaves are found by sieving the integers up to
+ *         <code>x / y</code> in segments, and counting the numbers left in each segment with a Fenwick tree as the
+ *         primes up to y are crossed off one by one.</li>
+ *     <li><code>P2(x, a)</code> is the sum of <code>pi(x / p) - pi(p) + 1</code> over the primes p in (y, sqrt(x)].  The
+ *         primes p are generated in descending order, so that the values <code>x / p</code> are ascending, and their
+ *         pi values are read from a second segmented sieve that only moves forwards.</li>
+ * </ul>
+ * The only primes held in memory are those up to y, which the caller provides.  Instances are single-use and
+ * not thread-safe.
+ * <p>
+ * The monitor is checked before the leaves of each prime in each segment of the special leaves, before each chunk
+ * of P2, and before each segment of the sieve that answers <code>pi(x / p)</code>.
+ *
+ * @see <a href="https://doi.org/10.1090/S0025-5718-1985-0777285-5">Computing pi(x): The Meissel-Lehmer Method (Lagarias, Miller, Odlyzko, 1985)</a>
+ * @see <a href="https://github.com/kimwalisch/primecount">primecount</a>
+ */
+public class LagariasMillerOdlyzko {
+
+    private static final Logger log = LoggerFactory.getLogger(LagariasMillerOdlyzko.class);
+
+    /**
+     * Below this, y would be smaller than the primes 2, 3 and 5 which are not on the wheel of the P2 sieve.
+     * There is no point in using this algorithm for such small numbers anyway.
+     */
+    public static final long MIN_X = 100;
+
+    /**
+     * The number of primes whose phi values are read from a table.  The product of the first 6 primes is 30,030.
+     */
+    private static final int MAX_TABLE_PRIMES = 6;
+
+    private static final int MIN_SEGMENT_SIZE = 1 << 16;
+
+    /**
+     * The size of each chunk of (y, sqrt(x)] that is sieved to generate the primes of P2.
+     */
+    private static final int P2_CHUNK_SIZE = 1 << 22;
+
+    private final long x;
+    private final long y;
+    private final long z;
+
+    /**
+     * The primes up to y, 1-based so that <code>primes[b]</code> is the b-th prime.  <code>primes[0]</code> is unused.
+     */
+    private final long[] primes;
+    private final int a;
+    private final int c;
+
+    public LagariasMillerOdlyzko(long x, PrimeSequence primesUpToY) {
+        Preconditions.checkArgument(x >= MIN_X, "x must be at least %s", MIN_X);
+        long y = getY(x);
+        Preconditions.checkArgument(primesUpToY.isEmpty() || primesUpToY.get(primesUpToY.size() - 1) <= y, "The primes must not exceed y");
+        this.x = x;
+        this.y = y;
+        this.z = x / y;
+        this.a = primesUpToY.size();
+        this.c = Math.min(a, MAX_TABLE_PRIMES);
+        this.primes = new long[a + 1];
+        for (int i = 0; i < a; i++) {
+            primes[i + 1] = primesUpToY.get(i);
+        }
+    }
+
+    /**
+     * The primes up to this number must be given to the constructor.
+     * <p>
+     * <code>y = alpha * x^(1/3)</code>, where alpha trades the work of the special leaves (which grows with y)
+     * against the work of sieving up to <code>x / y</code>.  A small multiple of log(x) works well in practice.
+     * y is kept larger than the cube root of x, so that the primes up to y are enough to sieve up to <code>x / y</code>,
+     * and below sqrt(x) so that <code>x / y > y</code>.
+     */
+    public static long getY(long x) {
+        long cubeRoot = icbrt(x);
+        double alpha = Math.log(x) / 6;
+        long y = Math.max(cubeRoot + 1, (long) (cubeRoot * alpha));
+        return Math.max(1, Math.min(y, isqrt(x) - 1));
+    }
+
+    public long countPrimes() {
+        return countPrimes(new ProgressMonitor());
+    }
+
+    /**
+     * Same as {@link #countPrimes()}, but stops as soon as the monitor is cancelled or its deadline passes.
+     *
+     * @throws com.villarsolutions.primordial.exception.CalculationCancelledException if the monitor is cancelled
+     */
+    public long countPrimes(ProgressMonitor monitor) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        int[] leastPrimeFactor = leastPrimeFactors();
+        byte[] mobius = mobius(leastPrimeFactor);
+        long phi = ordinaryLeaves(leastPrimeFactor, mobius) + specialLeaves(leastPrimeFactor, mobius, monitor);
+        long p2 = p2(monitor);
+        long pi = phi + a - 1 - p2;
+        log.info(String.format("Counted [%s] primes up to [%s] with y = [%s] in %s", getDecimalFormat().format(pi),
+            getDecimalFormat().format(x), getDecimalFormat().format(y), stopwatch));
+        return pi;
+    }
+
+    /**
+     * The sum of <code>mu(n) * phi(x / n, c)</code> over the square-free n <= y whose prime factors are all larger
+     * than the c-th prime.
+     */
+    private long ordinaryLeaves(int[] leastPrimeFactor, byte[] mobius) {
+        PhiTable phiTable = new PhiTable(primes, c);
+
+        long sum = 0;
+        for (int n = 1; n <= y; n++) {
+            if (mobius[n] != 0 && leastPrimeFactor[n] > primes[c]) {
+                sum += mobius[n] * phiTable.phi(x / n);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * The sum of <code>-mu(m) * phi(x / (p_b * m), b - 1)</code> over the primes <code>p_b</code> (with b > c) and the
+     * square-free m such that <code>m <= y < p_b * m</code> and all the prime factors of m are larger than <code>p_b</code>.
+     * <p>
+     * Every <code>x / (p_b * m)</code> is smaller than <code>z = x / y</code>, so the integers from 1 to z are sieved in
+     * segments.  Within a segment, <code>phi(n, b - 1)</code> is the number of integers up to n that are left once the
+     * first b - 1 primes have been crossed off: the count carried over from the earlier segments (<code>phi[b]</code>)
+     * plus the count in this segment up to n, which a Fenwick tree answers in O(log n) as numbers are crossed off.
+     */
+    private long specialLeaves(int[] leastPrimeFactor, byte[] mobius, ProgressMonitor monitor) {
+        long sqrtY = isqrt(y);
+
+        int segmentSize = (int) Math.max(MIN_SEGMENT_SIZE, Long.highestOneBit(isqrt(z)) << 1);
+        boolean[] sieve = new boolean[segmentSize];
+        FenwickTree tree = new FenwickTree(segmentSize);
+        long[] nextMultiple = Arrays.copyOf(primes, primes.length);
+        long[] phi = new long[primes.length];
+
+        long sum = 0;
+        long limit = z + 1;
+        for (long low = 1; low < limit; low += segmentSize) {
+            long high = Math.min(low + segmentSize, limit);
+            int length = (int) (high - low);
+            Arrays.fill(sieve, 0, length, true);
+
+            // The multiples of the first c primes are accounted for by the ordinary leaves
+            for (int b = 1; b <= c; b++) {
+                crossOff(b, primes[b], sieve, low, high, nextMultiple, null);
+            }
+            tree.init(sieve, length);
+
+            for (int b = c + 1; b < a; b++) {
+                // The first segments hold the most leaves for each prime, and take far longer than the later ones
+                monitor.checkCancelled();
+                long p = primes[b];
+                long xOverP = x / p;
+                long minM = Math.max(xOverP / high, y / p);
+                long maxM = Math.min(xOverP / low, y);
+                if (p >= maxM) {
+                    // No more leaves for this or any larger prime, in this segment or any later one
+                    break;
+                }
+
+                if (p <= sqrtY) {
+                    for (long m = maxM; m > minM; m--) {
+                        if (mobius[(int) m] != 0 && leastPrimeFactor[(int) m] > p) {
+                            long n = xOverP / m;
+                            sum -= mobius[(int) m] * (phi[b] + tree.count((int) (n - low)));
+                        }
+                    }
+                } else {
+                    // m can only be a prime q in (p, y], for which mu(q) = -1
+                    int q = upperIndex(maxM);
+                    for (; primes[q] > Math.max(minM, p); q--) {
+                        long n = xOverP / primes[q];
+                        sum += phi[b] + tree.count((int) (n - low));
+                    }
+                }
+
+                phi[b] += tree.count(length - 1);
+                crossOff(b, p, sieve, low, high, nextMultiple, tree);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * The sum of <code>pi(x / p) - pi(p) + 1</code> over the primes p in (y, sqrt(x)], written as
+     * <code>sum(pi(x / p)) - sum(i - 1)</code> for the i-th primes from <code>a + 1</code> to <code>pi(sqrt(x))</code>.
+     */
+    private long p2(ProgressMonitor monitor) {
+        long sqrtX = isqrt(x);
+        if (sqrtX <= y) {
+            return 0;
+        }
+
+        PrimeSequence chunkSievingPrimes = primesUpTo(isqrt(sqrtX));
+        PrimeCountCursor pi = new PrimeCountCursor(y + 1, x / (y + 1), primesUpTo(isqrt(x / (y + 1))), a, monitor);
+
+        long sum = 0;
+        long count = 0;
+        for (long high = sqrtX; high > y; high -= P2_CHUNK_SIZE) {
+            monitor.checkCancelled();
+            long low = Math.max(y, high - P2_CHUNK_SIZE);
+            PrimeSequence chunk = new CacheBlockedSieve(chunkSievingPrimes, Segment.create(low + 1, (int) (high - low)),
+                CacheBlockedSieve.DEFAULT_BLOCK_SIZE).calculatePrimes();
+            for (int i = chunk.size() - 1; i >= 0; i--) {
+                sum += pi.pi(x / chunk.get(i));
+            }
+            count += chunk.size();
+        }
+
+        long b = a + count;
+        return sum - (b * (b - 1) - (long) a * (a - 1)) / 2;
+    }
+
+    /**
+     * Crosses off the multiples of the b-th prime in the segment, starting from the next multiple that has not been
+     * crossed off yet.  If given, the Fenwick tree is updated for each number that is crossed off for the first time.
+     */
+    private static void crossOff(int b, long p, boolean[] sieve, long low, long high, long[] nextMultiple, FenwickTree tree) {
+        long multiple = nextMultiple[b];
+        for (; multiple < high; multiple += p) {
+            int index = (int) (multiple - low);
+            if (sieve[index]) {
+                sieve[index] = false;
+                if (tree != null) {
+                    tree.decrement(index);
+                }
+            }
+        }
+        nextMultiple[b] = multiple;
+    }
+
+    /**
+     * The index of the largest prime <= n (or 0 if there is none).
+     */
+    private int upperIndex(long n) {
+        int index = Arrays.binarySearch(primes, 1, a + 1, n);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private PrimeSequence primesUpTo(long n) {
+        return PrimeSequence.wrap(Arrays.copyOfRange(primes, 1, upperIndex(n) + 1));
+    }
+
+    /**
+     * The least prime factor of each integer up to y, with <code>Integer.MAX_VALUE</code> for 1.
+     */
+    private int[] leastPrimeFactors() {
+        int[] leastPrimeFactor = new int[(int) y + 1];
+        leastPrimeFactor[1] = Integer.MAX_VALUE;
+        for (int b = a; b >= 1; b--) {
+            int p = (int) primes[b];
+            // Descending order, so that the smallest prime factor is written last
+            for (int n = p; n <= y; n += p) {
+                leastPrimeFactor[n] = p;
+            }
+        }
+        return leastPrimeFactor;
+    }
+
+    /**
+     * The Mobius function of each integer up to y: 0 if it has a square factor, otherwise
+     * -1 or 1 for an odd or even number of prime factors.
+     */
+    private byte[] mobius(int[] leastPrimeFactor) {
+        byte[] mobius = new byte[(int) y + 1];
+        mobius[1] = 1;
+        for (int n = 2; n <= y; n++) {
+            int p = leastPrimeFactor[n];
+            int m = n / p;
+            mobius[n] = m % p == 0 ? 0 : (byte) -mobius[m];
+        }
+        return mobius;
+    }
+
+    /**
+     * Integer cube root, exact for any non-negative long.
+     */
+    static long icbrt(long n) {
+        long root = (long) Math.cbrt((double) n);
+        while (root > 0 && root > n / root / root) {
+            root--;
+        }
+        while ((root + 1) <= n / (root + 1) / (root + 1)) {
+            root++;
+        }
+        return root;
+    }
+
+    /**
+     * <code>phi(v, c)</code> for a small c, which is periodic modulo the product of the first c primes.
+     */
+    private static class PhiTable {
+
+        private final long product;
+        private final int[] counts;
+
+        PhiTable(long[] primes, int c) {
+            long product = 1;
+            for (int b = 1; b <= c; b++) {
+                product *= primes[b];
+            }
+            this.product = product;
+
+            // counts[r] is the number of integers in [1, r] that are not divisible by any of the first c primes
+            boolean[] divisible = new boolean[(int) product + 1];
+            for (int b = 1; b <= c; b++) {
+                for (int n = (int) primes[b]; n <= product; n += primes[b]) {
+                    divisible[n] = true;
+                }
+            }
+            counts = new int[(int) product + 1];
+            for (int n = 1; n <= product; n++) {
+                counts[n] = counts[n - 1] + (divisible[n] ? 0 : 1);
+            }
+        }
+
+        long phi(long v) {
+            return (v / product) * counts[(int) product] + counts[(int) (v % product)];
+        }
+    }
+
+    /**
+     * Counts the numbers left in a segment of the sieve, up to a given index.
+     */
+    private static class FenwickTree {
+
+        private final int[] tree;
+
+        FenwickTree(int size) {
+            this.tree = new int[size + 1];
+        }
+
+        /**
+         * Builds the tree in O(n), with a 1 for each number that is still in the sieve.
+         */
+        void init(boolean[] sieve, int length) {
+            Arrays.fill(tree, 0);
+            for (int i = 1; i <= length; i++) {
+                tree[i] += sieve[i - 1] ? 1 : 0;
+                int parent = i + (i & -i);
+                if (parent <= length) {
+                    tree[parent] += tree[i];
+                }
+            }
+        }
+
+        void decrement(int index) {
+            for (int i = index + 1; i < tree.length; i += i & -i) {
+                tree[i]--;
+            }
+        }
+
+        /**
+         * The number of numbers left from index 0 to <code>index</code>, inclusive.
+         */
+        long count(int index) {
+            long count = 0;
+            for (int i = index + 1; i > 0; i -= i & -i) {
+                count += tree[i];
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Answers <code>pi(n)</code> for ascending values of n, by sieving forwards one segment at a time and keeping a
+     * running count of the primes before the current position.
+     */
+    private static class PrimeCountCursor {
+
+        private static final int SEGMENT_BYTES = 1 << 16;
+
+        private final long limit;
+        private final PrimeSequence sievingPrimes;
+        private final WheelSegment segment;
+        private final ProgressMonitor monitor;
+
+        /**
+         * The number of primes before the byte at <code>position</code> in the current segment.
+         */
+        private long count;
+        private int position;
+
+        PrimeCountCursor(long lowerBound, long limit, PrimeSequence sievingPrimes, long primesBeforeLowerBound, ProgressMonitor monitor) {
+            this.limit = limit;
+            this.sievingPrimes = sievingPrimes;
+            this.segment = new WheelSegment(SEGMENT_BYTES);
+            this.monitor = monitor;
+            this.count = primesBeforeLowerBound;
+            sieveSegment(lowerBound);
+        }
+
+        long pi(long n) {
+            Preconditions.checkArgument(n >= segment.getLowerBound() && n <= limit, "pi(%s) is out of order or out of range", n);
+            while (n > segment.getUpperBound()) {
+                count += countBytes(segment.getLength());
+                sieveSegment(segment.getUpperBound() + 1);
+            }
+
+            long offset = n - segment.getBase();
+            int index = (int) (offset / WheelSegment.WHEEL_SIZE);
+            count += countBytes(index);
+
+            // The primes in the byte holding n, up to n itself
+            int residue = (int) (offset % WheelSegment.WHEEL_SIZE);
+            int primeBits = ~segment.getSieve()[index] & 0xFF;
+            int inRange = 0;
+            for (int b = 0; b < WheelSegment.RESIDUES.length && WheelSegment.RESIDUES[b] <= residue; b++) {
+                inRange |= 1 << b;
+            }
+            return count + Integer.bitCount(primeBits & inRange);
+        }
+
+        /**
+         * Adds the primes in the bytes from <code>position</code> up to (excluding) <code>end</code> to the count.
+         */
+        private long countBytes(int end) {
+            byte[] sieve = segment.getSieve();
+            long primes = 0;
+            for (; position < end; position++) {
+                primes += Integer.bitCount(~sieve[position] & 0xFF);
+            }
+            return primes;
+        }
+
+        private void sieveSegment(long lowerBound) {
+            monitor.checkCancelled();
+            long upperBound = Math.min(limit, lowerBound - (lowerBound % WheelSegment.WHEEL_SIZE) + (long) SEGMENT_BYTES * WheelSegment.WHEEL_SIZE - 1);
+            segment.reset(lowerBound, upperBound);
+            segment.crossOff(sievingPrimes);
+            position = 0;
+        }
+    }
+}
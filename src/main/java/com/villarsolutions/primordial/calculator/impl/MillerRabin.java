@@ -0,0 +1,195 @@
+package com.villarsolutions.primordial.calculator.impl;
+
+import com.google.common.base.Preconditions;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+
+/**
+ * Tells whether any 64-bit number is prime, without sieving the numbers below it.
+ * <p>
+ * The number is first divided by the small primes (see {@link #MAX_TRIAL_DIVISOR}), which settles most composites.
+ * Instead of a division, each trial division is a multiplication by the inverse of the prime modulo 2^64: n is a
+ * multiple of the odd prime p if and only if <code>n * p^-1 mod 2^64 <= (2^64 - 1) / p</code>, as unsigned numbers.
+ * <p>
+ * The numbers which are left are tested with the Miller-Rabin test, using a set of bases which has been shown
+ * to have no strong pseudoprimes below the number, so the answer is always right:
+ * <ul>
+ *     <li>{2, 7, 61} below 2^32</li>
+ *     <li>{2, 325, 9375, 28178, 450775, 9780504, 1795265022} for the rest of the 64-bit numbers</li>
+ * </ul>
+ * The modular exponentiations are done in Montgomery form, so that each modular multiplication takes a few
+ * multiplications instead of a 128-bit division.
+ * <p>
+ * This class is immutable and thread-safe.
+ *
+ * @see <a href="https://miller-rabin.appspot.com/">Deterministic variants of the Miller-Rabin primality test</a>
+ * @see <a href="https://doi.org/10.1090/S0025-5718-1985-0777282-X">Modular Multiplication Without Trial Division (Montgomery, 1985)</a>
+ */
+public class MillerRabin {
+
+    /**
+     * The numbers are divided by the primes up to this before the Miller-Rabin test.  Beyond the first few dozen
+     * primes, each extra division settles too few composites to pay for itself.
+     */
+    public static final int MAX_TRIAL_DIVISOR = 100;
+
+    private static final long[] BASES_32 = {2, 7, 61};
+    private static final long[] BASES_64 = {2, 325, 9375, 28178, 450775, 9780504, 1795265022};
+
+    /**
+     * The odd primes up to MAX_TRIAL_DIVISOR, with their inverses modulo 2^64 and the largest quotient by each.
+     */
+    private final long[] trialPrimes;
+    private final long[] trialInverses;
+    private final long[] trialMaxQuotients;
+
+    /**
+     * The numbers up to this which survive the trial divisions have no factor below their square root.
+     */
+    private final long maxTrialDivisionResult;
+
+    public MillerRabin() {
+        this(new EratosthenesSieve().findPrimes(MAX_TRIAL_DIVISOR));
+    }
+
+    /**
+     * @param smallPrimes the primes from 2 up to some bound, by which the numbers are divided before the Miller-Rabin test.
+     */
+    public MillerRabin(PrimeSequence smallPrimes) {
+        Preconditions.checkArgument(smallPrimes.size() > 1 && smallPrimes.get(0) == 2, "smallPrimes must start with 2 and 3");
+        int count = smallPrimes.size() - 1;
+        trialPrimes = new long[count];
+        trialInverses = new long[count];
+        trialMaxQuotients = new long[count];
+        for (int i = 0; i < count; i++) {
+            long p = smallPrimes.get(i + 1);
+            trialPrimes[i] = p;
+            trialInverses[i] = inverse(p);
+            trialMaxQuotients[i] = Long.divideUnsigned(-1L, p);
+        }
+        long largest = trialPrimes[count - 1];
+        maxTrialDivisionResult = largest * largest;
+    }
+
+    public boolean isPrime(long n) {
+        if (n < 2) {
+            return false;
+        }
+        if ((n & 1) == 0) {
+            return n == 2;
+        }
+        for (int i = 0; i < trialPrimes.length; i++) {
+            if (Long.compareUnsigned(n * trialInverses[i], trialMaxQuotients[i]) <= 0) {
+                return n == trialPrimes[i];
+            }
+        }
+        if (n <= maxTrialDivisionResult) {
+            return true;
+        }
+        return isStrongProbablePrime(n, n < (1L << 32) ? BASES_32 : BASES_64);
+    }
+
+    /**
+     * The Miller-Rabin test of the odd number <code>n</code> to each of the bases.  With <code>n - 1 = d * 2^s</code>,
+     * n passes for base a if <code>a^d = 1</code>, or <code>a^(d * 2^r) = -1</code> for some r < s, modulo n.
+     */
+    private static boolean isStrongProbablePrime(long n, long[] bases) {
+        long nInverse = inverse(n);
+        // R = 2^64, and 2^64 mod n = (2^64 - n) mod n
+        long one = Long.remainderUnsigned(-n, n);
+        long minusOne = n - one;
+        long rSquared = one;
+        for (int i = 0; i < 64; i++) {
+            rSquared = addMod(rSquared, rSquared, n);
+        }
+
+        int s = Long.numberOfTrailingZeros(n - 1);
+        long d = (n - 1) >>> s;
+
+        for (long base : bases) {
+            long a = base % n;
+            if (a == 0) {
+                continue;
+            }
+            long x = pow(multiply(a, rSquared, n, nInverse), d, one, n, nInverse);
+            if (x == one || x == minusOne) {
+                continue;
+            }
+            boolean witness = true;
+            for (int r = 1; r < s && witness; r++) {
+                x = multiply(x, x, n, nInverse);
+                witness = x != minusOne;
+            }
+            if (witness) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <code>base^exponent</code>, with the base and the result in Montgomery form.
+     */
+    private static long pow(long base, long exponent, long one, long n, long nInverse) {
+        long result = one;
+        while (exponent != 0) {
+            if ((exponent & 1) != 0) {
+                result = multiply(result, base, n, nInverse);
+            }
+            base = multiply(base, base, n, nInverse);
+            exponent >>>= 1;
+        }
+        return result;
+    }
+
+    /**
+     * The Montgomery product <code>a * b / 2^64 mod n</code>, for <code>0 <= a, b < n</code>.
+     * <p>
+     * With <code>m = (a * b mod 2^64) * n^-1 mod 2^64</code>, the low 64 bits of <code>a * b</code> and of
+     * <code>m * n</code> are equal, so <code>(a * b - m * n) / 2^64</code> is the difference of their high bits.
+     * Both are below n, since n is below 2^63, so the difference only needs correcting when it is negative.
+     */
+    private static long multiply(long a, long b, long n, long nInverse) {
+        long high = multiplyHigh(a, b);
+        long m = a * b * nInverse;
+        // m may be negative as a signed number, in which case its unsigned product with n is n * 2^64 larger
+        long mnHigh = multiplyHigh(m, n) + (m < 0 ? n : 0);
+        long result = high - mnHigh;
+        return result < 0 ? result + n : result;
+    }
+
+    /**
+     * The high 64 bits of the signed 128-bit product, as in <code>Math.multiplyHigh</code> (which needs Java 9).
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = (t & 0xFFFFFFFFL) + x2 * y1;
+        long z0 = t >> 32;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    /**
+     * <code>(a + b) mod n</code> for <code>0 <= a, b < n</code>, where the sum may overflow into the sign bit.
+     */
+    private static long addMod(long a, long b, long n) {
+        long sum = a + b;
+        return sum < 0 || sum >= n ? sum - n : sum;
+    }
+
+    /**
+     * The inverse of the odd number <code>n</code> modulo 2^64, by Newton's iteration.  <code>n * n = 1 mod 8</code>
+     * for any odd n, so n is its own inverse to 3 bits, and each step doubles the number of bits.
+     */
+    static long inverse(long n) {
+        long x = n;
+        for (int i = 0; i < 5; i++) {
+            x *= 2 - n * x;
+        }
+        return x;
+    }
+
+}
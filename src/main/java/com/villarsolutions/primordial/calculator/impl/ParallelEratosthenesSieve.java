@@ -1,6 +1,8 @@
 package com.villarsolutions.primordial.calculator.impl;
 
 import com.google.common.base.Stopwatch;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
 import com.villarsolutions.primordial.exception.CalculationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,27 +11,31 @@ import javax.annotation.concurrent.ThreadSafe;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 import static com.villarsolutions.primordial.calculator.impl.SegmentedSieveUtil.calculatePrimesInSegment;
+import static com.villarsolutions.primordial.util.PrimordialUtil.isqrt;
 
 
 /**
- * Implementation of a segmented Eratosthenes Sieve which uses a fixed thread-pool executor and
- * Java 8 streams to multi-thread the work of sieving each segment.
+ * Implementation of a segmented Eratosthenes Sieve which uses a fixed thread-pool executor
+ * to multi-thread the work of sieving each segment.
  * <p>
  * The small primes (from 2 to sqrt(n)) are found first, using the single-threaded
  * Eratosthenes Sieve.  The rest of the number range is the split into segments,
  * and each segment is then processed in parallel using an array sieve.
  * <p>
+ * Each thread sieves its segment in cache-sized blocks of <code>blockSize</code> bytes (see CacheBlockedSieve),
+ * so that large segments do not need to be swept from main memory once per sieving prime.
+ * <p>
  * In comparison to the single-threaded Eratosthenes Sieve (which has a limit of <code>Integer.MAX_VALUE</code>),
  * this calculator is able to find much larger primes, up to (MAX_ARRAY_LENGTH ^ 2) - as long as there is enough
  * heap allocated to the process.
  * <p>
- * The fixed thread-pool is initialized with a number of threads equal to the number of available
- * CPU cores.  Therefore the heap footprint will be a function of the available cores.
+ * If a PrimeBitmapStore is given, the ceilings it covers are read from the store instead of being sieved.
+ * <p>
+ * The fixed thread-pool is given to the constructor, and is shared by all requests.  It is normally sized
+ * to the number of available CPU cores.  Therefore the heap footprint will be a function of the number of threads.
  *
  * @see Integer#MAX_VALUE
  * @see Runtime#availableProcessors()
@@ -39,15 +45,42 @@ public class ParallelEratosthenesSieve extends AbstractSegmentedSieveCalculator
 
     private static final Logger log = LoggerFactory.getLogger(ParallelEratosthenesSieve.class);
 
-    public ParallelEratosthenesSieve(int minSegmentSize, int maxSegmentSize, int parallelismLowerBound) {
-        super(minSegmentSize, maxSegmentSize, Runtime.getRuntime().availableProcessors(), parallelismLowerBound);
+    /**
+     * The number line is split into this many segments per thread, so that the threads which are done early can
+     * take over the remaining segments of a slower thread.  Each segment is still sieved in cache-sized blocks.
+     */
+    private static final int SEGMENTS_PER_THREAD = 16;
+
+    private final int blockSize;
+
+    public ParallelEratosthenesSieve(ExecutorService executorService, int levelOfParallelism, int minSegmentSize,
+                                     int maxSegmentSize, int parallelismLowerBound) {
+        this(executorService, levelOfParallelism, minSegmentSize, maxSegmentSize, parallelismLowerBound, CacheBlockedSieve.DEFAULT_BLOCK_SIZE);
+    }
+
+    public ParallelEratosthenesSieve(ExecutorService executorService, int levelOfParallelism, int minSegmentSize,
+                                     int maxSegmentSize, int parallelismLowerBound, int blockSize) {
+        this(executorService, levelOfParallelism, minSegmentSize, maxSegmentSize, parallelismLowerBound, blockSize, null);
+    }
+
+    /**
+     * @param primeStore if null, every request is sieved.
+     */
+    public ParallelEratosthenesSieve(ExecutorService executorService, int levelOfParallelism, int minSegmentSize,
+                                     int maxSegmentSize, int parallelismLowerBound, int blockSize, PrimeBitmapStore primeStore) {
+        super(executorService, primeStore, minSegmentSize, maxSegmentSize, levelOfParallelism, parallelismLowerBound);
+        this.blockSize = blockSize;
     }
 
     @Override
-    protected List<Long> calculate(long ceiling) throws CalculationException {
+    protected PrimeSequence calculate(long ceiling, ProgressMonitor monitor) throws CalculationException {
+        if (isStored(ceiling)) {
+            return getPrimeStore().primesInRange(2, ceiling);
+        }
+
         Stopwatch stopwatch = Stopwatch.createStarted();
         List<Segment> segments = getSegments(ceiling);
-        List<Integer> smallPrimes = findPrimesInFirstSegment(stopwatch, segments);
+        PrimeSequence smallPrimes = findPrimesInFirstSegment(stopwatch, segments, monitor);
 
         // We now find the bigger primes by calculating each segment in parallel.  Compared to an earlier
         // revision of this class, we now use a fixed thread-pool instead of a parallel stream with the
@@ -58,23 +91,97 @@ public class ParallelEratosthenesSieve extends AbstractSegmentedSieveCalculator
         // When testing the Fork/Join Pool vs fixed thread-pool, we found that the fixed threadpool
         // was able to calculate primes up to 2 billion in 58 seconds, versus 85 seconds for the Fork/Join pool.
         //
-        // The downside is that if one segment were to take longer to calculate than the others, there is no
-        // work-stealing and it would become a bottle-neck.
-        ExecutorService executorService = Executors.newFixedThreadPool(getLevelOfParallelism());
-        List<Future<List<Long>>> futures = segments.stream()
-            .skip(1)
-            .map(segment -> executorService.submit(() -> calculatePrimesInSegment(smallPrimes, segment)))
-            .collect(Collectors.toList());
-
-        List<Long> result = concatenate(smallPrimes, futures);
+        // With a single segment per thread, a segment which took longer than the others (e.g. because its
+        // core was busy with another process) would become a bottle-neck.  Instead, there are SEGMENTS_PER_THREAD
+        // segments per thread, and each thread claims the next segment as soon as it is done with the previous one.
+        PrimeSequence result = calculateSegments(smallPrimes, segments.subList(1, segments.size()),
+            segment -> calculatePrimesInSegment(smallPrimes, segment, blockSize, monitor), monitor);
         log.info(String.format("Calculation completed. Found [%d] primes overall. Time elapsed = %s", result.size(), stopwatch));
         return result;
     }
 
     /**
-     * Since the first segment is being sieved with a BitSet of size sqrt(n) and
-     * each BitSet cannot be longer than <code>Integer.MAX_LENGTH</code>,
-     * this algorithm can support a ceiling of <code>Integer.MAX_LENGTH ^ 2</code>
+     * A range which is wider than sqrt(ceiling) is split into segments, which are sieved on the shared thread-pool in
+     * the same way as the number line above sqrt(ceiling).  This is what the PrimesCache relies on to extend a cached
+     * prefix up to a larger ceiling, which would otherwise run on a single core.  The sieving primes up to sqrt(ceiling)
+     * are found first, and shared by every segment.
+     * <p>
+     * Narrower ranges, and ranges whose sieving primes are too many to be held in memory, are sieved in a single
+     * segment on the calling thread instead.
+     *
+     * @see SegmentedSieveUtil#calculatePrimesInRange(PrimeSequence, Segment, int, ProgressMonitor)
+     */
+    @Override
+    protected PrimeSequence calculate(long lowerBound, long ceiling, ProgressMonitor monitor) throws CalculationException {
+        if (!isSievedInParallel(lowerBound, ceiling)) {
+            return super.calculate(lowerBound, ceiling, monitor);
+        }
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<Segment> segments = getRangeSegments(lowerBound, ceiling);
+        PrimeSequence sievingPrimes = findPrimes((int) isqrt(ceiling), monitor);
+        PrimeSequence result = calculateSegments(new PrimeSequence(0), segments,
+            segment -> calculatePrimesInSegment(sievingPrimes, segment, blockSize, monitor), monitor);
+        log.info(String.format("Range calculation completed for [%d] segments. Found [%d] primes overall. Time elapsed = %s",
+            segments.size(), result.size(), stopwatch));
+        return result;
+    }
+
+    /**
+     * A range which is sieved in parallel holds a block, and the buckets of its large sieving primes, per thread.
+     */
+    @Override
+    public long estimatePeakMemory(long lowerBound, long ceiling) {
+        long estimate = super.estimatePeakMemory(lowerBound, ceiling);
+        if (!isSievedInParallel(lowerBound, ceiling)) {
+            return estimate;
+        }
+        long bucketsBytes = estimatePrimeCount(2, isqrt(ceiling)) * CacheBlockedSieve.BYTES_PER_LARGE_PRIME;
+        return estimate + (getLevelOfParallelism() - 1) * (blockSize + bucketsBytes);
+    }
+
+    private boolean isSievedInParallel(long lowerBound, long ceiling) {
+        long root = isqrt(ceiling);
+        return !isStored(ceiling)
+            && root <= SegmentedSieveUtil.MAX_STORED_SIEVING_PRIME
+            && ceiling - lowerBound + 1 > root
+            && getRangeSegments(lowerBound, ceiling).size() > 1;
+    }
+
+    /**
+     * The small primes are handed over first, and then each segment in order as soon as it is sieved.
+     */
+    @Override
+    protected void stream(long ceiling, Consumer<PrimeSequence> consumer, ProgressMonitor monitor) throws CalculationException {
+        if (isStored(ceiling)) {
+            getPrimeStore().streamPrimes(ceiling, consumer);
+            return;
+        }
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<Segment> segments = getStreamingSegments(ceiling);
+        PrimeSequence smallPrimes = findPrimesInFirstSegment(stopwatch, segments, monitor);
+        consumer.accept(smallPrimes);
+
+        streamSegments(segments.subList(1, segments.size()), segment -> calculatePrimesInSegment(smallPrimes, segment, blockSize, monitor),
+            consumer, monitor);
+        log.info(String.format("Streaming completed for [%d] segments. Time elapsed = %s", segments.size(), stopwatch));
+    }
+
+    @Override
+    protected int getSegmentsPerThread() {
+        return SEGMENTS_PER_THREAD;
+    }
+
+    @Override
+    protected int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Since the first segment (the primes up to sqrt(n)) is sieved by <code>findPrimes</code>, whose
+     * ceiling is an int and whose odd-only <code>long[]</code> is indexed by an int,
+     * this algorithm can support a ceiling of <code>Integer.MAX_VALUE ^ 2</code>
      * <p>
      * Also refer to EratosthenesSieve.getMaxCeilingSupported()
      *
@@ -0,0 +1,306 @@
+package com.villarsolutions.primordial.calculator.impl;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static com.villarsolutions.primordial.util.PrimordialUtil.getDecimalFormat;
+import static com.villarsolutions.primordial.util.PrimordialUtil.isqrt;
+
+/**
+ * A file which holds a bitmap of the odd numbers from 1 to a ceiling, which is memory-mapped so that the primes up
+ * to that ceiling can be read back without sieving them again, even after a restart.
+ * <p>
+ * As in <code>AbstractSieveCalculator.sieveOddNumbers</code>, bit <code>i</code> represents the odd number
+ * <code>2i + 1</code>, and a set bit means the number is *not* prime.  Each byte therefore holds 16 numbers, so
+ * the primes up to a billion take 62.5MB.  The file is made of:
+ * <ul>
+ *     <li>A header, with a magic number and the ceiling covered by the bitmap.</li>
+ *     <li>The bitmap, as little-endian longs.  The bits after the ceiling, in the last long, are set.</li>
+ * </ul>
+ * The file is mapped with <code>FileChannel.map</code>, so reading it is a sequential scan of the OS page cache,
+ * and does not take up any heap.  Since a single MappedByteBuffer cannot be larger than 2GB, large files are
+ * mapped in several parts.
+ * <p>
+ * A store starts out empty, and only covers a ceiling once it has been loaded from (or built into) a file.  A new file
+ * is always written next to the old one and then moved over it, so a file that is only partially written is never
+ * loaded.  The store is thread-safe.
+ */
+public class PrimeBitmapStore {
+
+    private static final Logger log = LoggerFactory.getLogger(PrimeBitmapStore.class);
+
+    private static final long MAGIC = 0x7072696d6f726469L;
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Each part of the file is mapped into its own buffer of at most this many longs (1GB).
+     */
+    private static final int WORDS_PER_MAPPING = 1 << 27;
+
+    /**
+     * When building the file, the bitmap is sieved in chunks of this many longs (256KB, i.e. about 4 million numbers),
+     * small enough to stay in the CPU's L2 cache.
+     */
+    private static final int WORDS_PER_CHUNK = 1 << 15;
+
+    /**
+     * When streaming, the primes are read back in chunks of this many numbers.
+     */
+    private static final int STREAMING_CHUNK_SIZE = 1 << 24;
+
+    private final Path path;
+
+    // The mappings are always assigned before the ceiling, so a thread which reads the ceiling also sees the mappings.
+    private volatile LongBuffer[] mappings = new LongBuffer[0];
+    private volatile long ceiling = 0;
+
+    public PrimeBitmapStore(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * The store holds every prime from 2 to this ceiling (inclusive), or none at all if it is 0.
+     */
+    public long getCeiling() {
+        return ceiling;
+    }
+
+    public boolean covers(long ceiling) {
+        return ceiling <= this.ceiling;
+    }
+
+    /**
+     * Maps the existing file, if there is one.  If the file cannot be read, or is not a valid bitmap, the store
+     * stays as it was.
+     *
+     * @return true if the file was loaded.
+     */
+    public boolean load() {
+        if (!Files.exists(path)) {
+            log.info(String.format("There is no prime bitmap at [%s]", path));
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            long fileCeiling = header.remaining() == HEADER_SIZE && header.getLong() == MAGIC ? header.getLong() : 0;
+            if (fileCeiling < 2 || channel.size() != HEADER_SIZE + getNumWords(fileCeiling) * 8) {
+                log.warn(String.format("Ignoring the prime bitmap at [%s] since it is not valid", path));
+                return false;
+            }
+
+            // The mappings stay valid after the channel is closed
+            long numWords = getNumWords(fileCeiling);
+            LongBuffer[] fileMappings = new LongBuffer[(int) ((numWords + WORDS_PER_MAPPING - 1) / WORDS_PER_MAPPING)];
+            for (int m = 0; m < fileMappings.length; m++) {
+                long firstWord = (long) m * WORDS_PER_MAPPING;
+                long size = Math.min(WORDS_PER_MAPPING, numWords - firstWord) * 8;
+                fileMappings[m] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + firstWord * 8, size)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asLongBuffer();
+            }
+            mappings = fileMappings;
+            ceiling = fileCeiling;
+            log.info(String.format("Loaded the prime bitmap at [%s] with the primes up to [%s]", path, getDecimalFormat().format(fileCeiling)));
+            return true;
+        } catch (IOException e) {
+            log.warn(String.format("Could not load the prime bitmap at [%s]", path), e);
+            return false;
+        }
+    }
+
+    /**
+     * Sieves the odd numbers up to <code>newCeiling</code> into a new file, and then loads it in place of the current one.
+     * The store keeps serving the current file while the new one is being written.
+     */
+    public void build(long newCeiling) {
+        Preconditions.checkArgument(newCeiling >= 2, "The ceiling must be at least 2");
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        Path tempPath = Paths.get(path + ".tmp");
+        try {
+            write(tempPath, newCeiling);
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info(String.format("Built the prime bitmap at [%s] with the primes up to [%s] in %s", path, getDecimalFormat().format(newCeiling), stopwatch));
+        load();
+    }
+
+    /**
+     * Returns the primes from <code>lowerBound</code> to <code>upperBound</code> (both inclusive), which must be covered by the store.
+     * <p>
+     * The primes are counted first, which is a cheap pass over the bitmap, so that the result is allocated with its exact size.
+     */
+    public PrimeSequence primesInRange(long lowerBound, long upperBound) {
+        Preconditions.checkArgument(covers(upperBound), "The store does not cover [%s]", upperBound);
+        LongBuffer[] mappings = this.mappings;
+        boolean includesTwo = lowerBound <= 2 && upperBound >= 2;
+        long firstBit = Math.max(lowerBound, 3) / 2;
+        long lastBit = (upperBound - 1) / 2;
+
+        PrimeSequence primes = new PrimeSequence(Math.toIntExact((includesTwo ? 1 : 0) + countClearBits(mappings, firstBit, lastBit)));
+        if (includesTwo) {
+            primes.add(2);
+        }
+        for (long w = firstBit >>> 6; w <= lastBit >>> 6; w++) {
+            long primeBits = ~getWord(mappings, w) & getMask(w, firstBit, lastBit);
+            while (primeBits != 0) {
+                primes.add(2 * ((w << 6) + Long.numberOfTrailingZeros(primeBits)) + 1);
+                primeBits &= primeBits - 1;
+            }
+        }
+        return primes;
+    }
+
+    /**
+     * Hands over the primes up to <code>upperBound</code>, which must be covered by the store, in chunks of ascending primes.
+     */
+    public void streamPrimes(long upperBound, Consumer<PrimeSequence> consumer) {
+        for (long lowerBound = 2; lowerBound <= upperBound; lowerBound += STREAMING_CHUNK_SIZE) {
+            consumer.accept(primesInRange(lowerBound, Math.min(upperBound, lowerBound + STREAMING_CHUNK_SIZE - 1)));
+        }
+    }
+
+    /**
+     * Returns the number of primes up to <code>upperBound</code>, which must be covered by the store.
+     */
+    public long countPrimes(long upperBound) {
+        Preconditions.checkArgument(covers(upperBound), "The store does not cover [%s]", upperBound);
+        if (upperBound < 2) {
+            return 0;
+        }
+
+        // 2 is the only even prime, and is not represented in the bitmap
+        return 1 + countClearBits(mappings, 0, (upperBound - 1) / 2);
+    }
+
+    private static long countClearBits(LongBuffer[] mappings, long firstBit, long lastBit) {
+        long count = 0;
+        for (long w = firstBit >>> 6; w <= lastBit >>> 6; w++) {
+            count += Long.bitCount(~getWord(mappings, w) & getMask(w, firstBit, lastBit));
+        }
+        return count;
+    }
+
+    private static long getWord(LongBuffer[] mappings, long w) {
+        return mappings[(int) (w / WORDS_PER_MAPPING)].get((int) (w % WORDS_PER_MAPPING));
+    }
+
+    /**
+     * The bits of word <code>w</code> which are between <code>firstBit</code> and <code>lastBit</code> (both inclusive).
+     */
+    private static long getMask(long w, long firstBit, long lastBit) {
+        long mask = -1L;
+        if (w == firstBit >>> 6) {
+            mask &= -1L << firstBit;
+        }
+        if (w == lastBit >>> 6) {
+            mask &= -1L >>> (63 - (lastBit & 63));
+        }
+        return mask;
+    }
+
+    private static long getNumWords(long ceiling) {
+        long numBits = (ceiling - 1) / 2 + 1;
+        return (numBits + 63) >>> 6;
+    }
+
+    /**
+     * Writes the header and the bitmap of the odd numbers up to <code>ceiling</code>.  The bitmap is sieved one chunk at
+     * a time, with the odd primes up to sqrt(ceiling).
+     */
+    private static void write(Path file, long ceiling) throws IOException {
+        long[] sievingPrimes = getOddSievingPrimes(isqrt(ceiling));
+        long numBits = (ceiling - 1) / 2 + 1;
+        long numWords = getNumWords(ceiling);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC).putLong(ceiling).flip();
+            channel.write(header, 0);
+
+            long[] chunk = new long[WORDS_PER_CHUNK];
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WORDS_PER_CHUNK * 8).order(ByteOrder.LITTLE_ENDIAN);
+            for (long firstWord = 0; firstWord < numWords; firstWord += WORDS_PER_CHUNK) {
+                int length = (int) Math.min(WORDS_PER_CHUNK, numWords - firstWord);
+                sieveChunk(chunk, length, firstWord << 6, numBits, sievingPrimes);
+
+                buffer.clear();
+                buffer.asLongBuffer().put(chunk, 0, length);
+                buffer.limit(length * 8);
+                long position = HEADER_SIZE + firstWord * 8;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Sieves the bits from <code>firstBit</code> to <code>firstBit + length * 64</code> into the chunk.
+     * Stepping the bit index by p steps the represented number by 2p, which skips the even multiples.
+     */
+    private static void sieveChunk(long[] chunk, int length, long firstBit, long numBits, long[] sievingPrimes) {
+        Arrays.fill(chunk, 0, length, 0L);
+        long endBit = firstBit + ((long) length << 6);
+        for (long p : sievingPrimes) {
+            // The first odd multiple of p, from p^2, whose bit is in the chunk
+            long firstNumber = 2 * firstBit + 1;
+            long multiple = Math.max(p * p, (firstNumber + p - 1) / p * p);
+            if ((multiple & 1) == 0) {
+                multiple += p;
+            }
+            for (long bit = (multiple - 1) / 2; bit < endBit; bit += p) {
+                int relativeBit = (int) (bit - firstBit);
+                chunk[relativeBit >>> 6] |= 1L << relativeBit;
+            }
+        }
+
+        // 1 is not prime, and neither are the bits after the ceiling
+        if (firstBit == 0) {
+            chunk[0] |= 1L;
+        }
+        if (endBit > numBits) {
+            long relativeBit = numBits - firstBit;
+            chunk[(int) (relativeBit >>> 6)] |= -1L << relativeBit;
+        }
+    }
+
+    private static long[] getOddSievingPrimes(long ceiling) {
+        if (ceiling < 3) {
+            return new long[0];
+        }
+        long[] sieve = AbstractSieveCalculator.sieveOddNumbers((int) ceiling);
+        PrimeSequence primes = new PrimeSequence();
+        for (int w = 0; w < sieve.length; w++) {
+            long primeBits = ~sieve[w];
+            while (primeBits != 0) {
+                primes.add(2 * (((long) w << 6) + Long.numberOfTrailingZeros(primeBits)) + 1);
+                primeBits &= primeBits - 1;
+            }
+        }
+        return primes.toArray();
+    }
+
+}
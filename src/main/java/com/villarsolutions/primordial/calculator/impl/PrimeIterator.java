@@ -0,0 +1,172 @@
+package com.villarsolutions.primordial.calculator.impl;
+
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import static com.villarsolutions.primordial.util.PrimordialUtil.isqrt;
+
+/**
+ * Generates the primes after (or before) any number, lazily, by sieving the number line one window at a time
+ * from that number onwards, so that the work is proportional to the number of primes taken rather than to
+ * the size of the number itself.
+ * <p>
+ * The first window is a single cache-sized block of the CacheBlockedSieve, and each following window is twice as
+ * large as the previous one (up to <code>MAX_WINDOW_SIZE</code> numbers), so taking a few primes sieves little
+ * more than the gaps between them, and taking many primes only needs a few windows.
+ * <p>
+ * The primes up to the square root of the window are needed to sieve it:
+ * <ul>
+ *     <li>As long as there are few enough of them (see <code>SegmentedSieveUtil.MAX_STORED_SIEVING_PRIME</code>), they are
+ *         found once, and kept for the following windows.  They are only found again if a window goes past their
+ *         square, which takes a lot of windows.</li>
+ *     <li>Above that, each window is sieved as a range, which generates its sieving primes on the fly.  This takes a
+ *         few seconds per window near Long.MAX_VALUE, whatever the size of the window.</li>
+ * </ul>
+ * The monitor is checked before each window, and between the blocks of the windows sieved with the stored primes.
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @see SegmentedSieveUtil#calculatePrimesInRange(PrimeSequence, Segment, int)
+ */
+public class PrimeIterator implements PrimitiveIterator.OfLong {
+
+    /**
+     * Each window holds at most about a million primes.
+     */
+    static final int MAX_WINDOW_SIZE = 1 << 24;
+
+    /**
+     * Enough primes to sieve a range anywhere below Long.MAX_VALUE, see SegmentedSieveUtil.calculatePrimesInRange.
+     */
+    private static final int MAX_TINY_PRIME = (int) isqrt(isqrt(Long.MAX_VALUE));
+
+    private final boolean ascending;
+    private final int blockSize;
+    private final ProgressMonitor monitor;
+
+    /**
+     * The next number to sieve: the lowest number which has not been sieved yet when ascending, and the highest
+     * one when descending.
+     */
+    private long nextBound;
+    private boolean exhausted;
+    private int windowSize;
+
+    private PrimeSequence tinyPrimes;
+    private PrimeSequence sievingPrimes = new PrimeSequence();
+    private long maxSievingPrime;
+
+    private PrimeSequence window = new PrimeSequence();
+    private int index;
+
+    private PrimeIterator(long start, boolean ascending, int blockSize, ProgressMonitor monitor) {
+        this.ascending = ascending;
+        this.blockSize = blockSize;
+        this.monitor = monitor;
+        this.nextBound = start;
+        this.windowSize = (int) Math.min(MAX_WINDOW_SIZE, (long) blockSize * WheelSegment.WHEEL_SIZE);
+    }
+
+    /**
+     * The primes greater than <code>from</code>, in ascending order, up to the largest prime below Long.MAX_VALUE.
+     */
+    public static PrimeIterator after(long from) {
+        return after(from, new ProgressMonitor());
+    }
+
+    public static PrimeIterator after(long from, ProgressMonitor monitor) {
+        PrimeIterator iterator = new PrimeIterator(Math.max(2, from + 1), true, CacheBlockedSieve.DEFAULT_BLOCK_SIZE, monitor);
+        iterator.exhausted = from == Long.MAX_VALUE;
+        return iterator;
+    }
+
+    /**
+     * The primes smaller than <code>from</code>, in descending order, down to 2.
+     */
+    public static PrimeIterator before(long from) {
+        return before(from, new ProgressMonitor());
+    }
+
+    public static PrimeIterator before(long from, ProgressMonitor monitor) {
+        PrimeIterator iterator = new PrimeIterator(from - 1, false, CacheBlockedSieve.DEFAULT_BLOCK_SIZE, monitor);
+        iterator.exhausted = from <= 2;
+        return iterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (index == window.size()) {
+            if (exhausted) {
+                return false;
+            }
+            sieveNextWindow();
+        }
+        return true;
+    }
+
+    @Override
+    public long nextLong() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int i = index++;
+        return ascending ? window.get(i) : window.get(window.size() - 1 - i);
+    }
+
+    /**
+     * The remaining primes, in the order of this iterator.  Sieving only goes as far as the primes taken from the stream.
+     */
+    public LongStream stream() {
+        int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+        return StreamSupport.longStream(Spliterators.spliteratorUnknownSize(this, characteristics), false);
+    }
+
+    private void sieveNextWindow() {
+        monitor.checkCancelled();
+
+        Segment segment;
+        if (ascending) {
+            long lowerBound = nextBound;
+            // Written to avoid overflow near Long.MAX_VALUE
+            int size = (int) Math.min(windowSize, Long.MAX_VALUE - lowerBound + 1);
+            segment = Segment.create(lowerBound, size);
+            exhausted = segment.getUpperBound() == Long.MAX_VALUE;
+            nextBound = segment.getUpperBound() + 1;
+        } else {
+            long upperBound = nextBound;
+            long lowerBound = Math.max(2, upperBound - windowSize + 1);
+            segment = Segment.create(lowerBound, (int) (upperBound - lowerBound + 1));
+            exhausted = lowerBound == 2;
+            nextBound = lowerBound - 1;
+        }
+
+        window = sieve(segment);
+        index = 0;
+        windowSize = (int) Math.min(MAX_WINDOW_SIZE, 2L * windowSize);
+    }
+
+    private PrimeSequence sieve(Segment segment) {
+        long root = isqrt(segment.getUpperBound());
+        if (root > SegmentedSieveUtil.MAX_STORED_SIEVING_PRIME) {
+            if (tinyPrimes == null) {
+                tinyPrimes = new EratosthenesSieve().findPrimes(MAX_TINY_PRIME);
+            }
+            return SegmentedSieveUtil.calculatePrimesInRange(tinyPrimes, segment, blockSize, monitor);
+        }
+
+        if (root > maxSievingPrime) {
+            // When ascending, the windows which follow need a few more sieving primes, so some are found ahead of time
+            maxSievingPrime = ascending ? Math.min(SegmentedSieveUtil.MAX_STORED_SIEVING_PRIME, root + (root >> 3)) : root;
+            sievingPrimes = new EratosthenesSieve().findPrimes((int) maxSievingPrime);
+        }
+        return new CacheBlockedSieve(sievingPrimes, segment, blockSize).calculatePrimes(monitor);
+    }
+
+}
@@ -1,53 +1,152 @@
 package com.villarsolutions.primordial.calculator.impl;
 
 import com.google.common.base.Stopwatch;
-import com.google.common.collect.Lists;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.BitSet;
-import java.util.List;
+import java.util.function.LongConsumer;
+
+import static com.villarsolutions.primordial.util.PrimordialUtil.isqrt;
 
 public class SegmentedSieveUtil {
 
     private static final Logger log = LoggerFactory.getLogger(SegmentedSieveUtil.class);
 
+    /**
+     * When sieving a range, the sieving primes up to this number (about 3.9 million primes, or 31MB)
+     * are held in memory.  Above it, they are generated on the fly and never stored.
+     */
+    public static final long MAX_STORED_SIEVING_PRIME = 1L << 26;
+
+    /**
+     * The size of each chunk of the number line from 2 to sqrt(upperBound) that is sieved
+     * to generate the sieving primes of a range.
+     */
+    private static final int SIEVING_PRIMES_CHUNK_SIZE = 1 << 30;
+
+    /**
+     * Return all the prime numbers in the given Segment by using the <code>smallPrimes</code>
+     * to sieve the multiples of each prime in the segment, with the default block size.
+     *
+     * @see #calculatePrimesInSegment(PrimeSequence, Segment, int)
+     */
+    public static PrimeSequence calculatePrimesInSegment(PrimeSequence smallPrimes, Segment segment) {
+        return calculatePrimesInSegment(smallPrimes, segment, CacheBlockedSieve.DEFAULT_BLOCK_SIZE);
+    }
+
     /**
      * Return all the prime numbers in the given Segment by using the <code>smallPrimes</code>
      * to sieve the multiples of each prime in the segment.
      * <p>
+     * The segment is sieved with a mod-30 wheel, so that it only takes about 27% of the memory of a
+     * sieve with a bit for every number, and the multiples of 2, 3 and 5 are never crossed off.
+     * The segment is sieved in blocks of <code>blockSize</code> bytes, so that each block stays in
+     * the CPU cache while all the small primes are applied to it.
+     * <p>
      * Defined as a static method so that we can invoke it from the ParallelEratosthenesSieve
      * as well as from an AWS Lambda.
+     *
+     * @see WheelSegment
+     * @see CacheBlockedSieve
+     */
+    public static PrimeSequence calculatePrimesInSegment(PrimeSequence smallPrimes, Segment segment, int blockSize) {
+        return calculatePrimesInSegment(smallPrimes, segment, blockSize, new ProgressMonitor());
+    }
+
+    /**
+     * Same as {@link #calculatePrimesInSegment(PrimeSequence, Segment, int)}, but stops between two blocks
+     * as soon as the <code>monitor</code> is cancelled.
      */
-    public static List<Long> calculatePrimesInSegment(List<Integer> smallPrimes, Segment segment) {
+    public static PrimeSequence calculatePrimesInSegment(PrimeSequence smallPrimes, Segment segment, int blockSize,
+                                                         ProgressMonitor monitor) {
         log.info(String.format("About to process sieve request for segment: %s", segment));
         Stopwatch stopwatch = Stopwatch.createStarted();
 
-        // false means the number is prime.  This is the same convention
-        // that was used in the basic EratosthenesSieve
-        BitSet sieve = new BitSet(segment.getSegmentSize());
-        int sieveLength = segment.getSegmentSize();
-        long lowerBound = segment.getLowerBound();
-
-        // For each small prime 'p', eliminate the multiples of p from the sieve
-        smallPrimes.forEach(p -> {
-            // This a safe-cast to int because p is an int, so the % operation
-            // yields a remainder that is < Integer.MAX_VALUE
-            int remainder = (int) (lowerBound % p);
-            int startIndex = remainder == 0 ? 0 : (p - remainder);
-
-            for (long index = startIndex; index < sieveLength; index += p) {
-                sieve.set((int) index);
-            }
-        });
-
-        List<Long> primes = Lists.newArrayList();
-        for (int index = 0; index < sieveLength; index++) {
-            if (!sieve.get(index)) {
-                primes.add(lowerBound + index);
-            }
-        }
+        PrimeSequence primes = new CacheBlockedSieve(smallPrimes, segment, blockSize).calculatePrimes(monitor);
         log.info(String.format("Found [%s] primes in segment of size [%s] in %s", primes.size(), segment.getSegmentSize(), stopwatch));
         return primes;
     }
+
+    /**
+     * Return the number of primes in the given Segment, using the <code>smallPrimes</code> to sieve it
+     * in the same way as {@link #calculatePrimesInSegment(PrimeSequence, Segment, int)}, but
+     * without materializing the primes.
+     */
+    public static int countPrimesInSegment(PrimeSequence smallPrimes, Segment segment, int blockSize) {
+        return countPrimesInSegment(smallPrimes, segment, blockSize, new ProgressMonitor());
+    }
+
+    /**
+     * Same as {@link #countPrimesInSegment(PrimeSequence, Segment, int)}, but stops between two blocks
+     * as soon as the <code>monitor</code> is cancelled.
+     */
+    public static int countPrimesInSegment(PrimeSequence smallPrimes, Segment segment, int blockSize, ProgressMonitor monitor) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        int count = new CacheBlockedSieve(smallPrimes, segment, blockSize).countPrimes(monitor);
+        log.info(String.format("Counted [%s] primes in segment of size [%s] in %s", count, segment.getSegmentSize(), stopwatch));
+        return count;
+    }
+
+    /**
+     * Return all the prime numbers in the given range, without sieving the number line below it.
+     * <p>
+     * Only the primes up to sqrt(upperBound) are needed to sieve the range.  These are found with a
+     * segmented sieve of their own, using the <code>tinyPrimes</code>, which must hold every prime up to
+     * the fourth root of the range's upper bound (at most 55,108 for any long).
+     * <ul>
+     *     <li>If the range is wider than sqrt(upperBound), most sieving primes cross off many numbers.  As long as
+     *         there are few enough of them, they are held in memory and the range is sieved in cache-sized
+     *         blocks like any other segment.</li>
+     *     <li>Otherwise each sieving prime crosses off its multiples in the range as soon as it is found, and
+     *         is then discarded.  Most of these primes are larger than the range itself and cross off one
+     *         number at most, so there is nothing to gain from blocking.</li>
+     * </ul>
+     *
+     * @see CacheBlockedSieve
+     * @see WheelSegment#forEachPrime(LongConsumer)
+     */
+    public static PrimeSequence calculatePrimesInRange(PrimeSequence tinyPrimes, Segment range, int blockSize) {
+        return calculatePrimesInRange(tinyPrimes, range, blockSize, new ProgressMonitor());
+    }
+
+    /**
+     * Same as {@link #calculatePrimesInRange(PrimeSequence, Segment, int)}, but stops between two blocks (of the
+     * range, or of the number line below sqrt(upperBound)) as soon as the <code>monitor</code> is cancelled.
+     */
+    public static PrimeSequence calculatePrimesInRange(PrimeSequence tinyPrimes, Segment range, int blockSize, ProgressMonitor monitor) {
+        log.info(String.format("About to process sieve request for range: %s", range));
+        Stopwatch stopwatch = Stopwatch.createStarted();
+
+        long root = isqrt(range.getUpperBound());
+        PrimeSequence primes;
+        if (root <= MAX_STORED_SIEVING_PRIME && range.getSegmentSize() > root) {
+            PrimeSequence sievingPrimes = new PrimeSequence();
+            forEachPrimeUpTo(root, tinyPrimes, blockSize, sievingPrimes::add, monitor);
+            primes = new CacheBlockedSieve(sievingPrimes, range, blockSize).calculatePrimes(monitor);
+        } else {
+            WheelSegment wheel = WheelSegment.create(range);
+            forEachPrimeUpTo(root, tinyPrimes, blockSize, wheel::crossOff, monitor);
+            primes = wheel.toPrimeSequence();
+        }
+
+        log.info(String.format("Found [%s] primes in range of size [%s] in %s", primes.size(), range.getSegmentSize(), stopwatch));
+        return primes;
+    }
+
+    /**
+     * Passes every prime from 2 to <code>ceiling</code> to the consumer, in ascending order, sieving the
+     * number line in chunks so that the primes never need to be held in memory.
+     */
+    private static void forEachPrimeUpTo(long ceiling, PrimeSequence tinyPrimes, int blockSize, LongConsumer consumer,
+                                         ProgressMonitor monitor) {
+        for (long lowerBound = 2; lowerBound <= ceiling; lowerBound += SIEVING_PRIMES_CHUNK_SIZE) {
+            int chunkSize = (int) Math.min(SIEVING_PRIMES_CHUNK_SIZE, ceiling - lowerBound + 1);
+            new CacheBlockedSieve(tinyPrimes, Segment.create(lowerBound, chunkSize), blockSize).sieve(block -> {
+                monitor.checkCancelled();
+                block.forEachPrime(consumer);
+            });
+        }
+    }
 }
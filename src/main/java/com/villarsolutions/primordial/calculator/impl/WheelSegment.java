@@ -0,0 +1,270 @@
+package com.villarsolutions.primordial.calculator.impl;
+
+import com.google.common.base.Preconditions;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * A segment of the number line that is sieved using a mod-30 wheel.
+ * <p>
+ * Every prime above 5 is congruent to one of 8 residues modulo 30 (1, 7, 11, 13, 17, 19, 23 and 29),
+ * so each block of 30 consecutive numbers is represented by a single byte, with one bit per residue.
+ * Compared to a sieve with a bit for every number, this needs 8/30 (about 27%) of the memory, and the
+ * multiples of 2, 3 and 5 never have to be crossed off at all.
+ * <p>
+ * As with the other sieves, a set bit means the number is *not* prime.  The bits that fall outside
+ * of the segment's bounds (in the first and last byte) are set up-front, so that they are never
+ * reported as primes.
+ * <p>
+ * A WheelSegment can also be re-used as the buffer for successive blocks of a larger segment,
+ * see CacheBlockedSieve.
+ * <p>
+ * This class is not thread-safe.  Each segment is expected to be sieved by a single thread.
+ *
+ * @see CacheBlockedSieve
+ */
+public class WheelSegment {
+
+    static final int WHEEL_SIZE = 30;
+
+    /**
+     * The residues modulo 30 that are co-prime to 30.  Bit <code>b</code> of each byte represents
+     * the number <code>base + (30 * byteIndex) + RESIDUES[b]</code>
+     */
+    static final int[] RESIDUES = {1, 7, 11, 13, 17, 19, 23, 29};
+
+    /**
+     * The distance from each residue to the next one on the wheel, i.e. <code>GAPS[b] = RESIDUES[b+1] - RESIDUES[b]</code>,
+     * wrapping around from 29 to 31.
+     */
+    static final int[] GAPS = {6, 4, 2, 4, 2, 4, 6, 2};
+
+    /**
+     * The primes which are not represented on the wheel.
+     */
+    private static final long[] WHEEL_PRIMES = {2, 3, 5};
+
+    /**
+     * Maps a residue modulo 30 to its bit index, or -1 if the residue is not on the wheel.
+     */
+    static final int[] BIT_INDEX = new int[WHEEL_SIZE];
+
+    static {
+        Arrays.fill(BIT_INDEX, -1);
+        for (int b = 0; b < RESIDUES.length; b++) {
+            BIT_INDEX[RESIDUES[b]] = b;
+        }
+    }
+
+    private long lowerBound;
+    private long upperBound;
+
+    /**
+     * The largest multiple of 30 which is <= lowerBound.  The first byte of the sieve starts here.
+     */
+    private long base;
+
+    /**
+     * The number of bytes of the sieve array in use by the current bounds.
+     */
+    private int length;
+    private final byte[] sieve;
+
+    /**
+     * Creates a segment which can hold up to <code>capacity</code> bytes (i.e. 30 * capacity numbers).
+     * The bounds must then be set with {@link #reset(long, long)}
+     */
+    WheelSegment(int capacity) {
+        this.sieve = new byte[capacity];
+    }
+
+    public static WheelSegment create(Segment segment) {
+        WheelSegment wheel = new WheelSegment(getLengthInBytes(segment.getLowerBound(), segment.getUpperBound()));
+        wheel.reset(segment.getLowerBound(), segment.getUpperBound());
+        return wheel;
+    }
+
+    /**
+     * The number of bytes needed to sieve the numbers from lowerBound to upperBound (inclusive).
+     */
+    static int getLengthInBytes(long lowerBound, long upperBound) {
+        long base = lowerBound - (lowerBound % WHEEL_SIZE);
+        return (int) ((upperBound - base) / WHEEL_SIZE + 1);
+    }
+
+    /**
+     * Clears the sieve and moves it to the given bounds, so that the same buffer can be re-used
+     * for the next block of a larger segment.
+     */
+    void reset(long lowerBound, long upperBound) {
+        Preconditions.checkArgument(lowerBound >= 2, "lowerBound must be at least 2");
+        Preconditions.checkArgument(upperBound >= lowerBound, "upperBound must not be less than lowerBound");
+        int length = getLengthInBytes(lowerBound, upperBound);
+        Preconditions.checkArgument(length <= sieve.length, "The bounds need [%s] bytes but the capacity is [%s]", length, sieve.length);
+
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.base = lowerBound - (lowerBound % WHEEL_SIZE);
+        this.length = length;
+        Arrays.fill(sieve, 0, length, (byte) 0);
+        maskOutOfBoundsBits();
+    }
+
+    public long getLowerBound() {
+        return lowerBound;
+    }
+
+    public long getUpperBound() {
+        return upperBound;
+    }
+
+    long getBase() {
+        return base;
+    }
+
+    /**
+     * The raw sieve, for callers in this package that cross off multiples themselves.
+     * Only the first <code>getLength()</code> bytes are in use.
+     */
+    byte[] getSieve() {
+        return sieve;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    private void maskOutOfBoundsBits() {
+        int last = length - 1;
+        for (int b = 0; b < RESIDUES.length; b++) {
+            // Compared relative to the base, so that they cannot overflow near Long.MAX_VALUE
+            if (RESIDUES[b] < lowerBound - base) {
+                sieve[0] |= 1 << b;
+            }
+            if ((long) WHEEL_SIZE * last + RESIDUES[b] > upperBound - base) {
+                sieve[last] |= 1 << b;
+            }
+        }
+    }
+
+    /**
+     * Crosses off the multiples of <code>p</code> in this segment, starting from <code>p * p</code>.
+     * <p>
+     * The multiples that are not divisible by 2, 3 or 5 are <code>p * q</code>, where <code>q</code> is itself
+     * on the wheel.  For each of the 8 residues of <code>q</code>, the multiples <code>p * (q + 30k)</code> all land
+     * on the same bit, and are exactly <code>p</code> bytes apart.  So each residue is a simple strided loop over
+     * the byte array.
+     * <p>
+     * The primes 2, 3 and 5 are ignored since their multiples are not on the wheel.
+     * <p>
+     * When <code>p</code> is large compared to the segment (as when sieving a narrow range of very
+     * large numbers), only a few multiples fall in the segment, so they are visited directly instead.
+     */
+    public void crossOff(long p) {
+        if (p < 7) {
+            return;
+        }
+
+        long maxQ = upperBound / p;
+        long minQ = Math.max(p, lowerBound / p + (lowerBound % p == 0 ? 0 : 1));
+        if (minQ > maxQ) {
+            return;
+        }
+        if (maxQ - minQ < WHEEL_SIZE) {
+            crossOffSparse(p, minQ, maxQ);
+            return;
+        }
+
+        int minQResidue = (int) (minQ % WHEEL_SIZE);
+        for (int residue : RESIDUES) {
+            // The smallest q >= minQ that is congruent to this residue
+            long q = minQ + ((residue - minQResidue + WHEEL_SIZE) % WHEEL_SIZE);
+            if (q > maxQ) {
+                continue;
+            }
+
+            // Offsets are relative to the base, so that they cannot overflow near Long.MAX_VALUE
+            long offset = p * q - base;
+            byte mask = (byte) (1 << BIT_INDEX[(int) (offset % WHEEL_SIZE)]);
+            for (long index = offset / WHEEL_SIZE; index < length; index += p) {
+                sieve[(int) index] |= mask;
+            }
+        }
+    }
+
+    private void crossOffSparse(long p, long minQ, long maxQ) {
+        for (long q = minQ; q <= maxQ; q++) {
+            if (BIT_INDEX[(int) (q % WHEEL_SIZE)] < 0) {
+                continue;
+            }
+            long offset = p * q - base;
+            sieve[(int) (offset / WHEEL_SIZE)] |= 1 << BIT_INDEX[(int) (offset % WHEEL_SIZE)];
+        }
+    }
+
+    /**
+     * Crosses off the multiples of each of the given primes.  The primes must include every
+     * prime up to sqrt(upperBound), for only primes to be left in the segment.
+     */
+    public void crossOff(PrimeSequence smallPrimes) {
+        for (int i = 0; i < smallPrimes.size(); i++) {
+            crossOff(smallPrimes.get(i));
+        }
+    }
+
+    /**
+     * Returns the number of primes left in the segment, without materializing them.
+     */
+    public int countPrimes() {
+        int count = 0;
+        for (long p : WHEEL_PRIMES) {
+            if (p >= lowerBound && p <= upperBound) {
+                count++;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            count += Integer.bitCount(~sieve[i] & 0xFF);
+        }
+        return count;
+    }
+
+    /**
+     * Appends the primes left in the segment to the given sequence, in ascending order.
+     */
+    public void collectPrimes(PrimeSequence primes) {
+        forEachPrime(primes::add);
+    }
+
+    /**
+     * Passes each prime left in the segment to the given consumer, in ascending order,
+     * without materializing them.
+     */
+    public void forEachPrime(LongConsumer consumer) {
+        for (long p : WHEEL_PRIMES) {
+            if (p >= lowerBound && p <= upperBound) {
+                consumer.accept(p);
+            }
+        }
+
+        for (int i = 0; i < length; i++) {
+            int primeBits = ~sieve[i] & 0xFF;
+            long byteBase = base + (long) WHEEL_SIZE * i;
+            while (primeBits != 0) {
+                consumer.accept(byteBase + RESIDUES[Integer.numberOfTrailingZeros(primeBits)]);
+                primeBits &= primeBits - 1;
+            }
+        }
+    }
+
+    /**
+     * Convenience method which returns a new sequence, sized exactly, with the primes left in the segment.
+     */
+    public PrimeSequence toPrimeSequence() {
+        PrimeSequence primes = new PrimeSequence(countPrimes());
+        collectPrimes(primes);
+        return primes;
+    }
+
+}
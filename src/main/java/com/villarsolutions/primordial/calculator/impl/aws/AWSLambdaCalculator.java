@@ -1,9 +1,11 @@
 package com.villarsolutions.primordial.calculator.impl.aws;
 
-import com.amazonaws.regions.Regions;
-import com.amazonaws.services.lambda.AWSLambdaClient;
-import com.amazonaws.services.lambda.invoke.LambdaInvokerFactory;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Stopwatch;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
 import com.villarsolutions.primordial.calculator.impl.AbstractSegmentedSieveCalculator;
 import com.villarsolutions.primordial.calculator.impl.ParallelEratosthenesSieve;
 import com.villarsolutions.primordial.calculator.impl.Segment;
@@ -13,20 +15,26 @@ import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static com.villarsolutions.primordial.util.PrimordialUtil.propagateCancellation;
 
 /**
  * Prime number calculator that uses a segmented Sieve of Eratosthenes algorithm and
  * works on each segment in parallel using AWS Lambdas.
  * <p>
- * It uses a fixed thread-pool to create N threads (where N = <code>levelOfParallelism</code>)
+ * The primes in each segment are computed by invoking an AWS Lambda through the <code>LambdaInvoker</code>, which is
+ * shared by all the requests.  The invocations are asynchronous, so no thread of this calculator waits for them: at
+ * most <code>levelOfParallelism</code> lambdas are in flight per request, and each one invokes the next segment as soon
+ * as it responds.  So this calculator has no thread-pool of its own: the AWSLambdaInvoker runs its calls on the
+ * AWS thread-pool.
  * <p>
- * Each thread then computes the primes in each segment by invoking an AWS Lambda
+ * Only the bounds of the segment are sent, and each lambda finds the primes needed to sieve it by itself
+ * (see <code>LambdaPrimeSieveImpl</code>).
  * <p>
- * For this calculator to work, the lambda must first be deployed to AWS using the
+ * The LocalLambdaInvoker runs the lambda in-process instead, for tests and benchmarks.  With the AWSLambdaInvoker, the
+ * lambda must first be deployed to AWS using the
  * <code>mvn install</code> Maven lifecycle phase.
  * <p>
  * The properties in the <code>aws.properties</code> file must be correctly set, and a AWS
@@ -39,43 +47,87 @@ public class AWSLambdaCalculator extends AbstractSegmentedSieveCalculator {
 
     private static final Logger log = LoggerFactory.getLogger(AWSLambdaCalculator.class);
 
-    private final Regions awsRegion;
+    private final LambdaInvoker lambdaInvoker;
+    private final Timer invocations = new Timer();
+    private final Meter invocationErrors = new Meter();
 
-    public AWSLambdaCalculator(Regions awsRegion, int minSegmentSize, int maxSegmentSize, int levelOfParallelism, int parallelismLowerBound) {
-        super(minSegmentSize, maxSegmentSize, levelOfParallelism, parallelismLowerBound);
-        this.awsRegion = awsRegion;
+    /**
+     * @param levelOfParallelism the maximum number of lambdas in flight for each request
+     */
+    public AWSLambdaCalculator(LambdaInvoker lambdaInvoker, int minSegmentSize, int maxSegmentSize,
+                               int levelOfParallelism, int parallelismLowerBound) {
+        super(null, minSegmentSize, maxSegmentSize, levelOfParallelism, parallelismLowerBound);
+        this.lambdaInvoker = lambdaInvoker;
     }
 
     @Override
-    protected List<Long> calculate(long ceiling) throws CalculationException {
+    protected PrimeSequence calculate(long ceiling, ProgressMonitor monitor) throws CalculationException {
         Stopwatch stopwatch = Stopwatch.createStarted();
         List<Segment> segments = getSegments(ceiling);
-        List<Integer> smallPrimes = findPrimesInFirstSegment(stopwatch, segments);
+        PrimeSequence smallPrimes = findPrimesInFirstSegment(stopwatch, segments, monitor);
 
-        ExecutorService executorService = Executors.newFixedThreadPool(getLevelOfParallelism());
-        List<Future<List<Long>>> futures = segments.stream()
-            .skip(1)
-            .map(segment -> executorService.submit(() -> executeLambda(smallPrimes, segment)))
-            .collect(Collectors.toList());
-
-        List<Long> result = concatenate(smallPrimes, futures);
+        PrimeSequence result = calculateSegmentsAsync(smallPrimes, segments.subList(1, segments.size()), this::executeLambda, monitor);
         log.info(String.format("Calculation completed. Found [%d] primes overall. Time elapsed = %s", result.size(), stopwatch));
         return result;
     }
 
-    private LambdaPrimeSieve createLambda() {
-        AWSLambdaClient lambdaClient = new AWSLambdaClient();
-        lambdaClient.configureRegion(awsRegion);
-        return LambdaInvokerFactory.build(LambdaPrimeSieve.class, lambdaClient);
+    /**
+     * The small primes are handed over first, and then the result of each lambda in segment order.
+     */
+    @Override
+    protected void stream(long ceiling, Consumer<PrimeSequence> consumer, ProgressMonitor monitor) throws CalculationException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<Segment> segments = getStreamingSegments(ceiling);
+        PrimeSequence smallPrimes = findPrimesInFirstSegment(stopwatch, segments, monitor);
+        consumer.accept(smallPrimes);
+
+        streamSegmentsAsync(segments.subList(1, segments.size()), this::executeLambda, consumer, monitor);
+        log.info(String.format("Streaming completed for [%d] segments. Time elapsed = %s", segments.size(), stopwatch));
+    }
+
+    /**
+     * The response of each lambda is held in full while it is being decoded.  A prime takes up to 2 bytes
+     * once it is encoded, and a few more while the response is base64-decoded and inflated, plus its 8 bytes
+     * once it is decoded.
+     */
+    @Override
+    protected long estimateSegmentWorkingMemory(Segment segment) {
+        return estimatePrimeCount(segment.getLowerBound(), segment.getUpperBound()) * (8 + Long.BYTES);
+    }
+
+    /**
+     * On top of the metrics of the segmented calculators, the latency of every lambda invocation is published as
+     * <code>lambdaInvocations</code>, and the rate of the invocations which failed as <code>lambdaErrors</code>.
+     */
+    @Override
+    public void registerMetrics(MetricRegistry metrics) {
+        super.registerMetrics(metrics);
+        metrics.register(MetricRegistry.name(getClass(), "lambdaInvocations"), invocations);
+        metrics.register(MetricRegistry.name(getClass(), "lambdaErrors"), invocationErrors);
     }
 
-    private List<Long> executeLambda(List<Integer> smallPrimes, Segment segment) {
+    private CompletableFuture<PrimeSequence> executeLambda(Segment segment) {
         Stopwatch stopwatch = Stopwatch.createStarted();
-        LambdaPrimeSieve lambda = createLambda();
-        log.info(String.format("Created Lambda in [%s] for %s", stopwatch, segment));
-        List<Long> primesInSegment = lambda.calculatePrimesInSegment(SieveSegmentRequest.create(smallPrimes, segment));
-        log.info(String.format("Executed Lambda in [%s] and found [%d] primes for %s", stopwatch, primesInSegment.size(), segment));
-        return primesInSegment;
+        Timer.Context invocationTime = invocations.time();
+        CompletableFuture<String> response;
+        try {
+            response = lambdaInvoker.invoke(SieveSegmentRequest.create(segment));
+        } catch (RuntimeException e) {
+            invocationErrors.mark();
+            throw e;
+        }
+        return propagateCancellation(response, response
+            .whenComplete((ignored, e) -> {
+                invocationTime.stop();
+                if (e != null) {
+                    invocationErrors.mark();
+                }
+            })
+            .thenApply(encodedPrimes -> {
+                PrimeSequence primesInSegment = SegmentPrimesCodec.decode(encodedPrimes);
+                log.info(String.format("Executed Lambda in [%s] and found [%d] primes for %s", stopwatch, primesInSegment.size(), segment));
+                return primesInSegment;
+            }));
     }
 
     /**
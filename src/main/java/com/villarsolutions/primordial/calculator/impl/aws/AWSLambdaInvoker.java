@@ -0,0 +1,98 @@
+package com.villarsolutions.primordial.calculator.impl.aws;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.lambda.AWSLambdaAsyncClient;
+import com.amazonaws.services.lambda.model.InvocationType;
+import com.amazonaws.services.lambda.model.InvokeRequest;
+import com.amazonaws.services.lambda.model.InvokeResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.villarsolutions.primordial.exception.CalculationException;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.villarsolutions.primordial.util.PrimordialUtil.propagateCancellation;
+
+/**
+ * Invokes the lambda deployed to AWS (see the README.md file) with a single AWSLambdaAsyncClient, which is created
+ * once and shared by all the requests, so that its HTTP connections are pooled and reused from one segment to
+ * the next.  The pool holds at most <code>maxConnections</code> connections.
+ * <p>
+ * The AWS SDK runs each invocation on a thread of the given <code>executorService</code>, which waits for the
+ * response, so the executor should have <code>maxConnections</code> threads as well.
+ * <p>
+ * Cancelling the response of an invocation interrupts the thread which waits for it, so that its thread and
+ * connection go back to the pools straight away.  The lambda itself runs to completion on AWS regardless.
+ */
+@ThreadSafe
+public class AWSLambdaInvoker implements LambdaInvoker {
+
+    private static final String FUNCTION_NAME = "LambdaPrimeSieve";
+
+    private final AWSLambdaAsyncClient lambdaClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public AWSLambdaInvoker(Regions awsRegion, int maxConnections, ExecutorService executorService) {
+        ClientConfiguration clientConfiguration = new ClientConfiguration().withMaxConnections(maxConnections);
+        this.lambdaClient = new AWSLambdaAsyncClient(new DefaultAWSCredentialsProviderChain(), clientConfiguration, executorService);
+        this.lambdaClient.configureRegion(awsRegion);
+    }
+
+    @Override
+    public CompletableFuture<String> invoke(SieveSegmentRequest request) {
+        InvokeRequest invokeRequest = new InvokeRequest()
+            .withFunctionName(FUNCTION_NAME)
+            .withInvocationType(InvocationType.RequestResponse)
+            .withPayload(toJson(request));
+
+        CompletableFuture<String> response = new CompletableFuture<>();
+        Future<InvokeResult> invocation = lambdaClient.invokeAsync(invokeRequest, new AsyncHandler<InvokeRequest, InvokeResult>() {
+            @Override
+            public void onError(Exception e) {
+                response.completeExceptionally(e);
+            }
+
+            @Override
+            public void onSuccess(InvokeRequest ignored, InvokeResult result) {
+                try {
+                    response.complete(fromJson(result, request));
+                } catch (RuntimeException e) {
+                    response.completeExceptionally(e);
+                }
+            }
+        });
+        return propagateCancellation(invocation, response);
+    }
+
+    private String toJson(SieveSegmentRequest request) {
+        try {
+            return objectMapper.writeValueAsString(request);
+        } catch (JsonProcessingException e) {
+            throw new CalculationException(String.format("Could not serialize the lambda request %s", request), e);
+        }
+    }
+
+    /**
+     * The lambda returns a single JSON string.  If the lambda itself failed, the payload describes the error instead.
+     */
+    private String fromJson(InvokeResult result, SieveSegmentRequest request) {
+        String payload = StandardCharsets.UTF_8.decode(result.getPayload()).toString();
+        if (result.getFunctionError() != null) {
+            throw new CalculationException(String.format("The lambda failed for %s: [%s] %s", request.getSegment(), result.getFunctionError(), payload));
+        }
+        try {
+            return objectMapper.readValue(payload, String.class);
+        } catch (IOException e) {
+            throw new CalculationException(String.format("Could not parse the lambda response for %s", request.getSegment()), e);
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.villarsolutions.primordial.calculator.impl.aws;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Stopwatch;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.calculator.impl.AbstractSegmentedSieveCalculator;
+import com.villarsolutions.primordial.calculator.impl.ParallelEratosthenesSieve;
+import com.villarsolutions.primordial.calculator.impl.Segment;
+import com.villarsolutions.primordial.calculator.impl.SegmentedSieveUtil;
+import com.villarsolutions.primordial.exception.CalculationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static com.villarsolutions.primordial.util.PrimordialUtil.propagateCancellation;
+
+/**
+ * Prime number calculator which sieves the segments on the local cores and on AWS Lambdas at the same time, so that
+ * a large calculation keeps both the local thread-pool and the lambdas busy, instead of one of them sitting idle.
+ * <p>
+ * The segments are claimed from a single cursor by <code>localLevelOfParallelism</code> workers on the local thread-pool,
+ * which sieve them like the ParallelEratosthenesSieve, and by <code>remoteLevelOfParallelism</code> chains of lambdas,
+ * which are invoked like in the AWSLambdaCalculator.  Each of them claims the next segment as soon as it is done with
+ * the previous one, so the share of the segments sieved on each side follows its throughput, whatever the latency
+ * of the lambdas or the load on the local cores.  There are <code>SEGMENTS_PER_WORKER</code> segments per worker (and per
+ * lambda), so the faster side takes over the segments that the slower side has not claimed yet.
+ * <p>
+ * The primes of every segment are stored at the index of the segment, and concatenated in order once they are
+ * all done, wherever they were sieved.
+ * <p>
+ * Since any segment may be sent to a lambda, the <code>maxSegmentSize</code> should be the one of the
+ * AWSLambdaCalculator (see <code>awsMaxSegmentSize</code>).
+ *
+ * @see AbstractSegmentedSieveCalculator#calculateSegments(PrimeSequence, List, Function, int, Function, int, ProgressMonitor)
+ */
+@ThreadSafe
+public class HybridSieveCalculator extends AbstractSegmentedSieveCalculator {
+
+    private static final Logger log = LoggerFactory.getLogger(HybridSieveCalculator.class);
+
+    private static final int SEGMENTS_PER_WORKER = 4;
+
+    private final int localLevelOfParallelism;
+    private final int remoteLevelOfParallelism;
+    private final int blockSize;
+    private final LambdaInvoker lambdaInvoker;
+    private final Meter localSegments = new Meter();
+    private final Meter remoteSegments = new Meter();
+
+    /**
+     * @param localExecutorService the thread-pool which is shared with the ParallelEratosthenesSieve
+     * @param lambdaInvoker the invoker which is shared with the AWSLambdaCalculator
+     */
+    public HybridSieveCalculator(ExecutorService localExecutorService, int localLevelOfParallelism, int blockSize,
+                                 LambdaInvoker lambdaInvoker, int remoteLevelOfParallelism,
+                                 int minSegmentSize, int maxSegmentSize, int parallelismLowerBound) {
+        super(localExecutorService, minSegmentSize, maxSegmentSize, localLevelOfParallelism + remoteLevelOfParallelism, parallelismLowerBound);
+        this.localLevelOfParallelism = localLevelOfParallelism;
+        this.remoteLevelOfParallelism = remoteLevelOfParallelism;
+        this.blockSize = blockSize;
+        this.lambdaInvoker = lambdaInvoker;
+    }
+
+    @Override
+    protected PrimeSequence calculate(long ceiling, ProgressMonitor monitor) throws CalculationException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<Segment> segments = getSegments(ceiling);
+        PrimeSequence smallPrimes = findPrimesInFirstSegment(stopwatch, segments, monitor);
+
+        AtomicInteger sievedLocally = new AtomicInteger();
+        AtomicInteger sievedRemotely = new AtomicInteger();
+        PrimeSequence result = calculateSegments(smallPrimes, segments.subList(1, segments.size()),
+            segment -> {
+                sievedLocally.incrementAndGet();
+                return sieveLocally(smallPrimes, segment, monitor);
+            }, localLevelOfParallelism,
+            segment -> {
+                sievedRemotely.incrementAndGet();
+                return invokeLambda(segment);
+            }, remoteLevelOfParallelism,
+            monitor);
+        log.info(String.format("Calculation completed. Found [%d] primes overall, with [%d] segments sieved locally and [%d] by lambdas. Time elapsed = %s",
+            result.size(), sievedLocally.get(), sievedRemotely.get(), stopwatch));
+        return result;
+    }
+
+    /**
+     * The small primes are handed over first, and then each segment in order as soon as it is sieved.  Each segment
+     * is sent to a lambda as long as fewer than <code>remoteLevelOfParallelism</code> lambdas are in flight, and is
+     * otherwise queued on the local thread-pool.
+     */
+    @Override
+    protected void stream(long ceiling, Consumer<PrimeSequence> consumer, ProgressMonitor monitor) throws CalculationException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<Segment> segments = getStreamingSegments(ceiling);
+        PrimeSequence smallPrimes = findPrimesInFirstSegment(stopwatch, segments, monitor);
+        consumer.accept(smallPrimes);
+
+        streamSegments(segments.subList(1, segments.size()), segment -> sieveLocally(smallPrimes, segment, monitor),
+            this::invokeLambda, remoteLevelOfParallelism, consumer, monitor);
+        log.info(String.format("Streaming completed for [%d] segments. Time elapsed = %s", segments.size(), stopwatch));
+    }
+
+    private PrimeSequence sieveLocally(PrimeSequence smallPrimes, Segment segment, ProgressMonitor monitor) {
+        localSegments.mark();
+        return SegmentedSieveUtil.calculatePrimesInSegment(smallPrimes, segment, blockSize, monitor);
+    }
+
+    private CompletableFuture<PrimeSequence> invokeLambda(Segment segment) {
+        remoteSegments.mark();
+        CompletableFuture<String> response = lambdaInvoker.invoke(SieveSegmentRequest.create(segment));
+        return propagateCancellation(response, response.thenApply(SegmentPrimesCodec::decode));
+    }
+
+    /**
+     * A segment takes the larger of the working memory of a local worker and of a lambda response,
+     * see AWSLambdaCalculator.
+     */
+    @Override
+    protected long estimateSegmentWorkingMemory(Segment segment) {
+        long lambdaResponse = estimatePrimeCount(segment.getLowerBound(), segment.getUpperBound()) * (8 + Long.BYTES);
+        return Math.max(blockSize, lambdaResponse);
+    }
+
+    /**
+     * On top of the metrics of the segmented calculators, the rate of the segments sieved on each side is
+     * published as <code>localSegments</code> and <code>remoteSegments</code>.
+     */
+    @Override
+    public void registerMetrics(MetricRegistry metrics) {
+        super.registerMetrics(metrics);
+        metrics.register(MetricRegistry.name(getClass(), "localSegments"), localSegments);
+        metrics.register(MetricRegistry.name(getClass(), "remoteSegments"), remoteSegments);
+    }
+
+    @Override
+    protected int getSegmentsPerThread() {
+        return SEGMENTS_PER_WORKER;
+    }
+
+    @Override
+    protected int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Same reason as for the limit in <code>ParallelEratosthenesSieve.getMaxCeilingSupported()</code>.
+     *
+     * @see ParallelEratosthenesSieve#getMaxCeilingSupported()
+     */
+    @Override
+    protected Optional<Long> getMaxCeilingSupported() {
+        return Optional.of((long) Math.pow(Integer.MAX_VALUE, 2));
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.villarsolutions.primordial.calculator.impl.aws;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Invokes the lambda which sieves a segment, without blocking the calling thread.
+ * <p>
+ * Implementations must be thread-safe, since a single invoker is shared by all the requests to the
+ * AWSLambdaCalculator.
+ *
+ * @see AWSLambdaInvoker
+ * @see LocalLambdaInvoker
+ */
+public interface LambdaInvoker {
+
+    /**
+     * The future is completed with the response of the lambda, i.e. the primes in the segment encoded with the
+     * SegmentPrimesCodec, or exceptionally if the invocation fails.
+     *
+     * @see LambdaPrimeSieveImpl#calculatePrimesInSegment(SieveSegmentRequest)
+     */
+    CompletableFuture<String> invoke(SieveSegmentRequest request);
+
+}
@@ -1,30 +1,76 @@
 package com.villarsolutions.primordial.calculator.impl.aws;
 
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.impl.CacheBlockedSieve;
 import com.villarsolutions.primordial.calculator.impl.Segment;
 import com.villarsolutions.primordial.calculator.impl.SegmentedSieveUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.concurrent.ThreadSafe;
-import java.util.List;
+import java.util.Arrays;
+
+import static com.villarsolutions.primordial.calculator.impl.SegmentedSieveUtil.MAX_STORED_SIEVING_PRIME;
+import static com.villarsolutions.primordial.util.PrimordialUtil.isqrt;
 
 /**
  * Lambda implementation class with a method to return all the prime numbers in a
  * given <code>Segment</code>. This is executed inside AWS Lambda, when invoked by
  * AWSLambdaCalculator
+ * <p>
+ * The request only holds the bounds of the segment, and the primes needed to sieve it are found here.  AWS runs
+ * consecutive invocations in the same container as long as it stays warm, so they are kept in a static table, which
+ * is extended whenever a segment needs more of them.  As in the PrimeIterator, the table stops at
+ * <code>SegmentedSieveUtil.MAX_STORED_SIEVING_PRIME</code>, and the segments above its square are sieved as ranges,
+ * which generate their sieving primes on the fly.
  *
  * @see AWSLambdaCalculator
+ * @see SegmentedSieveUtil#calculatePrimesInRange(PrimeSequence, Segment, int)
  */
 @ThreadSafe
 public class LambdaPrimeSieveImpl {
 
     private static final Logger log = LoggerFactory.getLogger(LambdaPrimeSieveImpl.class);
 
-    public static List<Long> calculatePrimesInSegment(SieveSegmentRequest request) {
+    /**
+     * Every prime up to <code>maxSievingPrime</code>.  The table is never modified once it is published, since
+     * it is shared by the invocations running at the same time.  Guarded by the class.
+     */
+    private static PrimeSequence sievingPrimes = PrimeSequence.of(2, 3, 5, 7);
+    private static long maxSievingPrime = 10;
+
+    /**
+     * The primes found are encoded with the SegmentPrimesCodec.
+     */
+    public static String calculatePrimesInSegment(SieveSegmentRequest request) {
         log.info(String.format("About to process sieve request for segment: %s", request.getSegment()));
-        List<Integer> smallPrimes = request.getSmallPrimes();
         Segment segment = request.getSegment();
-        return SegmentedSieveUtil.calculatePrimesInSegment(smallPrimes, segment);
+        long root = isqrt(segment.getUpperBound());
+        PrimeSequence primes = root <= MAX_STORED_SIEVING_PRIME
+            ? SegmentedSieveUtil.calculatePrimesInSegment(getSievingPrimes(root), segment)
+            : SegmentedSieveUtil.calculatePrimesInRange(getSievingPrimes(isqrt(root)), segment, CacheBlockedSieve.DEFAULT_BLOCK_SIZE);
+        return SegmentPrimesCodec.encode(primes);
+    }
+
+    /**
+     * Returns (at least) every prime up to <code>ceiling</code>, which must not be above
+     * <code>MAX_STORED_SIEVING_PRIME</code>.
+     * <p>
+     * The table at least doubles each time it is extended, so that a container which is given segments in
+     * ascending order only extends it a few times.  Each extension is sieved with the primes already found,
+     * which can only sieve up to the square of the largest of them.
+     */
+    static synchronized PrimeSequence getSievingPrimes(long ceiling) {
+        while (maxSievingPrime < ceiling) {
+            long extendedMax = Math.min(Math.max(ceiling, 2 * maxSievingPrime), MAX_STORED_SIEVING_PRIME);
+            extendedMax = Math.min(extendedMax, maxSievingPrime * maxSievingPrime);
+            Segment extension = Segment.create(maxSievingPrime + 1, (int) (extendedMax - maxSievingPrime));
+            PrimeSequence found = SegmentedSieveUtil.calculatePrimesInSegment(sievingPrimes, extension);
+            sievingPrimes = PrimeSequence.concat(Arrays.asList(sievingPrimes, found));
+            maxSievingPrime = extendedMax;
+            log.info(String.format("Extended the sieving primes up to [%d]: [%d] primes", maxSievingPrime, sievingPrimes.size()));
+        }
+        return sievingPrimes;
     }
 
 }
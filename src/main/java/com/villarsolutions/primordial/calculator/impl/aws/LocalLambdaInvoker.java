@@ -0,0 +1,43 @@
+package com.villarsolutions.primordial.calculator.impl.aws;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.villarsolutions.primordial.util.PrimordialUtil.propagateCancellation;
+
+/**
+ * Stands in for the lambda deployed to AWS, by running the LambdaPrimeSieveImpl in-process, so that the
+ * AWSLambdaCalculator can be tested and benchmarked without AWS.
+ * <p>
+ * Each invocation starts after <code>latencyMillis</code>, to simulate the round-trip to AWS, and then runs on
+ * a thread of the <code>scheduler</code>, so the scheduler's threads play the part of the lambdas.  Cancelling the
+ * response of an invocation which has not started yet takes it off the scheduler.
+ */
+@ThreadSafe
+public class LocalLambdaInvoker implements LambdaInvoker {
+
+    private final ScheduledExecutorService scheduler;
+    private final long latencyMillis;
+
+    public LocalLambdaInvoker(ScheduledExecutorService scheduler, long latencyMillis) {
+        this.scheduler = scheduler;
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public CompletableFuture<String> invoke(SieveSegmentRequest request) {
+        CompletableFuture<String> response = new CompletableFuture<>();
+        ScheduledFuture<?> invocation = scheduler.schedule(() -> {
+            try {
+                response.complete(LambdaPrimeSieveImpl.calculatePrimesInSegment(request));
+            } catch (RuntimeException e) {
+                response.completeExceptionally(e);
+            }
+        }, latencyMillis, TimeUnit.MILLISECONDS);
+        return propagateCancellation(invocation, response);
+    }
+
+}
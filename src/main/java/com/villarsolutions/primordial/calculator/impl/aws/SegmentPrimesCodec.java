@@ -0,0 +1,131 @@
+package com.villarsolutions.primordial.calculator.impl.aws;
+
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.exception.CalculationException;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The wire format of the primes returned by a lambda, which is about 10 times more compact than a JSON array,
+ * so that a segment can be 10 times larger before its response reaches the 6MB limit of AWS Lambda.
+ * <p>
+ * The primes are held as the gaps between them, which are small whatever the size of the primes.  The gaps
+ * between odd primes are even, so each gap is halved, and written as a varint (7 bits per byte, with the top bit
+ * set on all but the last byte), which takes a single byte for any gap below 256.  The gaps are then deflated,
+ * and the result is base64-encoded, since the lambda responses are JSON:
+ * <pre>
+ *     varint count of primes
+ *     varint length of the gaps before they are deflated
+ *     deflate(varint first prime, varint (p[1] - p[0]) / 2, ..., varint (p[n-1] - p[n-2]) / 2)
+ * </pre>
+ * The gap from 2 to 3 is the only odd gap, and is written as 0.
+ */
+final class SegmentPrimesCodec {
+
+    /**
+     * The first prime takes up to 10 bytes, and a halved gap up to 2 bytes, since the gaps between
+     * the primes below Long.MAX_VALUE are below 2 * 2^14.
+     */
+    private static final int MAX_FIRST_PRIME_BYTES = 10;
+    private static final int MAX_GAP_BYTES = 2;
+
+    private SegmentPrimesCodec() {
+    }
+
+    static String encode(PrimeSequence primes) {
+        byte[] gaps = new byte[MAX_FIRST_PRIME_BYTES + MAX_GAP_BYTES * primes.size()];
+        int length = 0;
+        long previous = 0;
+        for (int i = 0; i < primes.size(); i++) {
+            long prime = primes.get(i);
+            length = writeVarint(gaps, length, i == 0 ? prime : (prime - previous) >>> 1);
+            previous = prime;
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        byte[] encoded = new byte[2 * MAX_FIRST_PRIME_BYTES + length + length / 1000 + 64];
+        int headerLength = writeVarint(encoded, 0, primes.size());
+        headerLength = writeVarint(encoded, headerLength, length);
+        try {
+            deflater.setInput(gaps, 0, length);
+            deflater.finish();
+            int encodedLength = headerLength;
+            while (!deflater.finished()) {
+                if (encodedLength == encoded.length) {
+                    encoded = Arrays.copyOf(encoded, encoded.length * 2);
+                }
+                encodedLength += deflater.deflate(encoded, encodedLength, encoded.length - encodedLength);
+            }
+            return Base64.getEncoder().encodeToString(Arrays.copyOf(encoded, encodedLength));
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static PrimeSequence decode(String text) {
+        byte[] encoded = Base64.getDecoder().decode(text);
+        int[] position = {0};
+        int count = (int) readVarint(encoded, position);
+        int length = (int) readVarint(encoded, position);
+
+        byte[] gaps = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(encoded, position[0], encoded.length - position[0]);
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                int n = inflater.inflate(gaps, inflated, length - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != length) {
+                throw new CalculationException(String.format("The lambda response was truncated: [%d] of [%d] bytes", inflated, length));
+            }
+        } catch (DataFormatException e) {
+            throw new CalculationException("The lambda response could not be inflated", e);
+        } finally {
+            inflater.end();
+        }
+
+        long[] primes = new long[count];
+        position[0] = 0;
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long value = readVarint(gaps, position);
+            previous = i == 0 ? value : previous == 2 ? 3 : previous + 2 * value;
+            primes[i] = previous;
+        }
+        return PrimeSequence.wrap(primes);
+    }
+
+    private static int writeVarint(byte[] buffer, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Reads the varint at <code>position[0]</code>, and moves the position past it.
+     */
+    private static long readVarint(byte[] buffer, int[] position) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+}
@@ -6,38 +6,29 @@ import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
-import java.util.List;
-
 /**
- * Request POJO to contain the parameters needed for the {@link LambdaPrimeSieve#calculatePrimesInSegment(SieveSegmentRequest)}
+ * Request POJO to contain the parameters needed for the {@link LambdaPrimeSieveImpl#calculatePrimesInSegment(SieveSegmentRequest)}
  * function.
  * <p>
- * This class is serialized by the AWSLambdaClient and deserialised in the AWS Lambda compute grid.
+ * This class is serialized by the AWSLambdaInvoker and deserialised in the AWS Lambda compute grid.  It only holds
+ * the bounds of the segment, since the lambda finds the primes needed to sieve it by itself.
+ *
+ * @see LambdaPrimeSieveImpl
  */
 public class SieveSegmentRequest {
 
-    private List<Integer> smallPrimes;
     private Segment segment;
 
     public SieveSegmentRequest() {
         // JSON Deserialization
     }
 
-    private SieveSegmentRequest(List<Integer> smallPrimes, Segment segment) {
-        this.smallPrimes = smallPrimes;
+    private SieveSegmentRequest(Segment segment) {
         this.segment = segment;
     }
 
-    public static SieveSegmentRequest create(List<Integer> smallPrimes, Segment segment) {
-        return new SieveSegmentRequest(smallPrimes, segment);
-    }
-
-    public List<Integer> getSmallPrimes() {
-        return smallPrimes;
-    }
-
-    public void setSmallPrimes(List<Integer> smallPrimes) {
-        this.smallPrimes = smallPrimes;
+    public static SieveSegmentRequest create(Segment segment) {
+        return new SieveSegmentRequest(segment);
     }
 
     public Segment getSegment() {
@@ -57,7 +48,6 @@ public class SieveSegmentRequest {
         SieveSegmentRequest that = (SieveSegmentRequest) o;
 
         return new EqualsBuilder()
-            .append(smallPrimes, that.smallPrimes)
             .append(segment, that.segment)
             .isEquals();
     }
@@ -65,7 +55,6 @@ public class SieveSegmentRequest {
     @Override
     public int hashCode() {
         return new HashCodeBuilder()
-            .append(smallPrimes)
             .append(segment)
             .toHashCode();
     }
@@ -0,0 +1,15 @@
+package com.villarsolutions.primordial.exception;
+
+/**
+ * Indicates that a calculation was stopped before it completed, either because it was cancelled
+ * or because it ran past its deadline.
+ *
+ * @see com.villarsolutions.primordial.calculator.ProgressMonitor
+ */
+public class CalculationCancelledException extends CalculationException {
+
+    public CalculationCancelledException(String message) {
+        super(message);
+    }
+
+}
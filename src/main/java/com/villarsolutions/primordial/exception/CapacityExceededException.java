@@ -0,0 +1,28 @@
+package com.villarsolutions.primordial.exception;
+
+/**
+ * Indicates that a calculation was not started, because it would need more heap than
+ * is left in the budget shared by all the calculations.
+ * <p>
+ * Unlike a CalculationException, this is expected under load, and the same request may well
+ * succeed after <code>retryAfterSecs</code>.
+ *
+ * @see com.villarsolutions.primordial.AdmissionController
+ */
+public class CapacityExceededException extends RuntimeException {
+
+    private final long retryAfterSecs;
+
+    /**
+     * @param retryAfterSecs if 0, the request would never fit in the budget, and should not be retried.
+     */
+    public CapacityExceededException(String message, long retryAfterSecs) {
+        super(message);
+        this.retryAfterSecs = retryAfterSecs;
+    }
+
+    public long getRetryAfterSecs() {
+        return retryAfterSecs;
+    }
+
+}
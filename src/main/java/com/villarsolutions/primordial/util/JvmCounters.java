@@ -0,0 +1,86 @@
+package com.villarsolutions.primordial.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * A snapshot of the bytes allocated by all the threads of the JVM so far, and of the number of garbage collections
+ * and the time spent in them, as reported by the JMX beans.  The difference between two snapshots tells how much
+ * a piece of work allocated, and how much GC it caused.
+ * <p>
+ * The allocation counts are per thread, so the bytes allocated by a thread which terminates between the two
+ * snapshots are not counted.  The thread-pools of the calculators are long-lived, so this hardly matters in practice.
+ * The counters cover the whole JVM, so any other work which runs at the same time is counted as well.
+ */
+public class JvmCounters {
+
+    /**
+     * Returned as the allocated bytes if the JVM cannot count the bytes allocated per thread.
+     */
+    public static final long UNSUPPORTED = -1;
+
+    private final long allocatedBytes;
+    private final long gcCount;
+    private final long gcTimeMillis;
+
+    private JvmCounters(long allocatedBytes, long gcCount, long gcTimeMillis) {
+        this.allocatedBytes = allocatedBytes;
+        this.gcCount = gcCount;
+        this.gcTimeMillis = gcTimeMillis;
+    }
+
+    public static JvmCounters read() {
+        long gcCount = 0;
+        long gcTimeMillis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            // Either value is -1 if the collector does not report it
+            gcCount += Math.max(0, collector.getCollectionCount());
+            gcTimeMillis += Math.max(0, collector.getCollectionTime());
+        }
+        return new JvmCounters(readAllocatedBytes(), gcCount, gcTimeMillis);
+    }
+
+    /**
+     * Returns the difference between this snapshot and an earlier one.
+     */
+    public JvmCounters since(JvmCounters earlier) {
+        long allocated = allocatedBytes == UNSUPPORTED || earlier.allocatedBytes == UNSUPPORTED
+            ? UNSUPPORTED
+            : Math.max(0, allocatedBytes - earlier.allocatedBytes);
+        return new JvmCounters(allocated, gcCount - earlier.gcCount, gcTimeMillis - earlier.gcTimeMillis);
+    }
+
+    /**
+     * UNSUPPORTED if the JVM cannot count the bytes allocated per thread.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public long getGcTimeMillis() {
+        return gcTimeMillis;
+    }
+
+    private static long readAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return UNSUPPORTED;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) {
+            return UNSUPPORTED;
+        }
+        long total = 0;
+        for (long bytes : allocations.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            // -1 for the threads which terminated in the meantime
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+}
@@ -1,7 +1,12 @@
 package com.villarsolutions.primordial.util;
 
+import com.google.common.base.Stopwatch;
 
+import java.math.BigDecimal;
 import java.text.DecimalFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class PrimordialUtil {
 
@@ -19,8 +24,54 @@ public class PrimordialUtil {
         return DECIMAL_FORMAT.get();
     }
 
+    /**
+     * The time elapsed on the stopwatch in seconds, to the millisecond.
+     */
+    public static BigDecimal getElapsedSecs(Stopwatch stopwatch) {
+        double elapsedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+        return BigDecimal.valueOf(elapsedMillis / 1000).setScale(3, BigDecimal.ROUND_DOWN);
+    }
+
     public static boolean isEven(long n) {
         return (n & 1) == 0;
     }
 
+    /**
+     * Returns floor(sqrt(n)) exactly, for any non-negative long.
+     * <p>
+     * <code>Math.sqrt</code> works on doubles, which cannot represent every long, so the estimate is
+     * corrected by at most a step or two.  The comparisons are written as divisions so that they
+     * cannot overflow near Long.MAX_VALUE.
+     */
+    public static long isqrt(long n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Cannot take the square root of a negative number");
+        }
+        if (n < 2) {
+            return n;
+        }
+        long root = (long) Math.sqrt((double) n);
+        while (root > n / root) {
+            root--;
+        }
+        while (root + 1 <= n / (root + 1)) {
+            root++;
+        }
+        return root;
+    }
+
+    /**
+     * Returns <code>derived</code>, once cancelling it also cancels <code>source</code>.  A CompletableFuture which
+     * depends on another one (e.g. through <code>thenApply</code>) does not pass its cancellation on by itself, so
+     * the work behind the source would otherwise carry on after its result is no longer wanted.
+     */
+    public static <T> CompletableFuture<T> propagateCancellation(Future<?> source, CompletableFuture<T> derived) {
+        derived.whenComplete((result, e) -> {
+            if (derived.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return derived;
+    }
+
 }
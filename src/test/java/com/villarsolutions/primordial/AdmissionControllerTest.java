@@ -0,0 +1,80 @@
+package com.villarsolutions.primordial;
+
+import com.codahale.metrics.MetricRegistry;
+import com.villarsolutions.primordial.exception.CapacityExceededException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class AdmissionControllerTest {
+
+    private final MetricRegistry metrics = new MetricRegistry();
+    private AdmissionController admissionController;
+
+    @Before
+    public void setUp() throws Exception {
+        admissionController = new AdmissionController(1000, 100);
+        admissionController.registerMetrics(metrics);
+    }
+
+    @Test
+    public void whenTheBudgetIsExhausted_thenTheRequestWaitsForAReservationToBeClosed() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            admissionController = new AdmissionController(1000, 10_000);
+            AdmissionController.Reservation first = admissionController.reserve(600);
+            Future<?> second = executor.submit(() -> {
+                admissionController.reserve(600).close();
+                return null;
+            });
+            while (admissionController.getQueueDepth() == 0) {
+                Thread.sleep(10);
+            }
+            assertFalse(second.isDone());
+
+            first.close();
+            second.get();
+            assertEquals(0, admissionController.getReservedBytes());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void whenTheBudgetIsStillExhaustedAfterWaiting_thenTheRequestIsRejected() throws Exception {
+        try (AdmissionController.Reservation ignored = admissionController.reserve(600)) {
+            admissionController.reserve(600);
+            fail("The reservation should have been rejected");
+        } catch (CapacityExceededException e) {
+            assertEquals(1, e.getRetryAfterSecs());
+        }
+
+        assertEquals(0, admissionController.getReservedBytes());
+        assertEquals(0, admissionController.getQueueDepth());
+        assertEquals(1, meter("rejected"));
+        assertEquals(600, meter("rejectedBytes"));
+    }
+
+    @Test
+    public void whenTheRequestIsLargerThanTheBudget_thenItIsRejectedWithoutWaiting() throws Exception {
+        try {
+            admissionController.reserve(1001);
+            fail("The reservation should have been rejected");
+        } catch (CapacityExceededException e) {
+            assertEquals(0, e.getRetryAfterSecs());
+        }
+        assertEquals(1001, meter("rejectedBytes"));
+    }
+
+    private long meter(String name) {
+        return metrics.meter(MetricRegistry.name(AdmissionController.class, name)).getCount();
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.villarsolutions.primordial;
+
+import com.villarsolutions.primordial.api.CalculationResult;
+import com.villarsolutions.primordial.api.JobStatus;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.calculator.impl.EratosthenesSieve;
+import com.villarsolutions.primordial.calculator.impl.ParallelEratosthenesSieve;
+import com.villarsolutions.primordial.exception.CalculationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.villarsolutions.primordial.PrimordialFixtures.CEILING;
+import static com.villarsolutions.primordial.PrimordialFixtures.PRIMES_UP_TO_CEILING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CalculationJobsTest {
+
+    private ExecutorService jobExecutor;
+    private ExecutorService sieveExecutor;
+    private AdmissionController admissionController;
+    private CalculationJobs jobs;
+
+    @Before
+    public void setUp() throws Exception {
+        jobExecutor = Executors.newFixedThreadPool(2);
+        sieveExecutor = Executors.newFixedThreadPool(4);
+        admissionController = new AdmissionController(Long.MAX_VALUE, 0);
+        jobs = new CalculationJobs(jobExecutor, admissionController, 10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        jobExecutor.shutdownNow();
+        sieveExecutor.shutdownNow();
+    }
+
+    @Test
+    public void whenAJobCompletes_thenItsResultAndProgressAreAvailable() throws Exception {
+        ParallelEratosthenesSieve calculator = new ParallelEratosthenesSieve(sieveExecutor, 4, 100, Integer.MAX_VALUE, 19);
+        CalculationJob job = jobs.submit(calculator, CEILING);
+        JobStatus status = awaitState(job, JobStatus.State.COMPLETED);
+
+        assertTrue(status.getSegmentsTotal() > 1);
+        assertEquals(status.getSegmentsTotal(), status.getSegmentsCompleted());
+
+        CalculationResult result = job.getResult(3).get();
+        assertEquals(PRIMES_UP_TO_CEILING.size(), result.getCountOfPrimes());
+        assertEquals(PrimeSequence.of(983L, 991L, 997L), result.getPrimes());
+        assertTrue(jobs.get(job.getId()).isPresent());
+    }
+
+    @Test
+    public void whenAJobIsCancelled_thenItHasNoResult() throws Exception {
+        BlockingSieve calculator = new BlockingSieve();
+        CalculationJob job = jobs.submit(calculator, CEILING);
+        calculator.started.await();
+
+        assertTrue(job.cancel());
+        assertEquals(JobStatus.State.CANCELLED, job.getStatus().getState());
+        assertFalse(job.getResult(null).isPresent());
+        assertFalse(job.cancel());
+    }
+
+    @Test
+    public void whenAJobCompletes_thenItsPrimesStayReservedUntilItIsRemoved() throws Exception {
+        CalculationJob job = jobs.submit(new EratosthenesSieve(), CEILING);
+        awaitState(job, JobStatus.State.COMPLETED);
+        assertEquals((long) PRIMES_UP_TO_CEILING.size() * Long.BYTES, admissionController.getReservedBytes());
+
+        assertTrue(jobs.remove(job.getId()).isPresent());
+        assertEquals(0, admissionController.getReservedBytes());
+        assertFalse(job.getResult(null).isPresent());
+        assertFalse(jobs.get(job.getId()).isPresent());
+    }
+
+    @Test
+    public void whenTooManyJobsAreUnfinished_thenFurtherJobsAreRejectedWithoutCancellingAny() throws Exception {
+        BlockingSieve calculator = new BlockingSieve();
+        CalculationJob first = jobs.submit(calculator, CEILING);
+        calculator.started.await();
+        for (int i = 1; i < CalculationJobs.MAX_JOBS; i++) {
+            jobs.submit(calculator, CEILING);
+        }
+
+        try {
+            jobs.submit(calculator, CEILING);
+            fail("Expected the job to be rejected");
+        } catch (RejectedExecutionException e) {
+            assertEquals("There are already [100] jobs queued or running", e.getMessage());
+        }
+        assertEquals(JobStatus.State.RUNNING, first.getStatus().getState());
+        assertTrue(jobs.get(first.getId()).isPresent());
+    }
+
+    @Test
+    public void whenTheJobDoesNotExist_thenItIsNotFound() throws Exception {
+        assertFalse(jobs.get("unknown").isPresent());
+    }
+
+    private static JobStatus awaitState(CalculationJob job, JobStatus.State state) throws InterruptedException {
+        JobStatus status = job.getStatus();
+        while (status.getState() != state) {
+            Thread.sleep(10);
+            status = job.getStatus();
+        }
+        return status;
+    }
+
+    private static class BlockingSieve extends EratosthenesSieve {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        @Override
+        protected PrimeSequence calculate(long ceiling, ProgressMonitor monitor) throws CalculationException {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                throw new CalculationException("Interrupted", e);
+            }
+            return super.calculate(ceiling, monitor);
+        }
+    }
+
+}
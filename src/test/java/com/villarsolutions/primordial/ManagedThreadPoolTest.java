@@ -0,0 +1,71 @@
+package com.villarsolutions.primordial;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ManagedThreadPoolTest {
+
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ManagedThreadPool threadPool;
+
+    @Before
+    public void setUp() throws Exception {
+        threadPool = new ManagedThreadPool("test", 1, 2);
+        threadPool.registerMetrics(metrics);
+        threadPool.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        threadPool.stop();
+    }
+
+    @Test
+    public void whenTheQueueIsFull_thenTasksAreRejectedAndCounted() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        threadPool.getExecutorService().submit(() -> {
+            running.countDown();
+            release.await();
+            return null;
+        });
+        running.await();
+        threadPool.getExecutorService().submit(() -> { });
+        threadPool.getExecutorService().submit(() -> { });
+
+        try {
+            threadPool.getExecutorService().submit(() -> { });
+            fail("The task should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        assertEquals(2, gauge("queueDepth").getValue());
+        assertEquals(1, gauge("activeCount").getValue());
+        assertEquals(1.0, gauge("utilization").getValue());
+        assertEquals(1, metrics.meter("executors.test.rejected").getCount());
+    }
+
+    @Test
+    public void whenStopped_thenTheExecutorIsShutDown() throws Exception {
+        threadPool.stop();
+        assertTrue(threadPool.getExecutorService().awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    private Gauge<?> gauge(String name) {
+        return metrics.getGauges().get("executors.test." + name);
+    }
+
+}
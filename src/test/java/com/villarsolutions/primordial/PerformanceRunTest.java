@@ -0,0 +1,117 @@
+package com.villarsolutions.primordial;
+
+import com.google.common.collect.Lists;
+import com.villarsolutions.primordial.api.PerformanceResult;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.calculator.impl.EratosthenesSieve;
+import com.villarsolutions.primordial.exception.CalculationException;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.villarsolutions.primordial.PrimordialFixtures.CEILING;
+import static com.villarsolutions.primordial.PrimordialFixtures.PRIMES_UP_TO_CEILING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PerformanceRunTest {
+
+    private final AdmissionController admissionController = new AdmissionController(Long.MAX_VALUE, 0);
+
+    @Test
+    public void whenAllIterationsComplete_thenTheStatisticsCoverTheMeasuredIterations() throws Exception {
+        PerformanceResult result = new PerformanceRun(admissionController, 2, 5, 60_000).run(new EratosthenesSieve(), CEILING);
+
+        assertEquals(PerformanceResult.State.COMPLETED, result.getState());
+        assertEquals("EratosthenesSieve", result.getCalculatorType());
+        assertEquals(2, result.getWarmupIterations());
+        assertEquals(5, result.getMeasuredIterations());
+        assertEquals(PRIMES_UP_TO_CEILING.size(), result.getCountOfPrimes());
+        assertEquals(result.getP50Secs(), result.getTimeElapsedSecs());
+        assertTrue(result.getMinSecs().compareTo(result.getP50Secs()) <= 0);
+        assertTrue(result.getP50Secs().compareTo(result.getP90Secs()) <= 0);
+        assertTrue(result.getP90Secs().compareTo(result.getP99Secs()) <= 0);
+        assertTrue(result.getP99Secs().compareTo(result.getMaxSecs()) <= 0);
+        assertTrue(result.getStdDevSecs().signum() >= 0);
+        assertTrue(result.getGcCount() >= 0);
+        assertNull(result.getError());
+    }
+
+    @Test
+    public void whenAnIterationRunsOutOfBudget_thenTheCalculatorIsAborted() throws Exception {
+        PerformanceResult result = new PerformanceRun(admissionController, 0, 5, 100).run(new SlowSieve(Long.MAX_VALUE), CEILING);
+
+        assertEquals(PerformanceResult.State.ABORTED, result.getState());
+        assertEquals(0, result.getMeasuredIterations());
+        assertNull(result.getTimeElapsedSecs());
+        assertNotNull(result.getError());
+    }
+
+    @Test
+    public void whenTheNextIterationWouldNotFitInTheBudget_thenItIsSkipped() throws Exception {
+        PerformanceResult result = new PerformanceRun(admissionController, 0, 5, 300).run(new SlowSieve(200), CEILING);
+
+        assertEquals(PerformanceResult.State.SKIPPED, result.getState());
+        assertEquals(1, result.getMeasuredIterations());
+        assertEquals(result.getMinSecs(), result.getMaxSecs());
+        assertNotNull(result.getError());
+    }
+
+    @Test
+    public void whenTheCalculatorDoesNotFitInTheHeapBudget_thenItIsSkipped() throws Exception {
+        PerformanceResult result = new PerformanceRun(new AdmissionController(1, 0), 1, 5, 60_000).run(new EratosthenesSieve(), CEILING);
+
+        assertEquals(PerformanceResult.State.SKIPPED, result.getState());
+        assertEquals(0, result.getMeasuredIterations());
+    }
+
+    @Test
+    public void whenSorting_thenTheCompletedResultsComeFirstByMedianTime() throws Exception {
+        PerformanceResult aborted = new PerformanceRun(admissionController, 0, 1, 100).run(new SlowSieve(Long.MAX_VALUE), CEILING);
+        PerformanceResult completed = new PerformanceRun(admissionController, 0, 1, 60_000).run(new EratosthenesSieve(), CEILING);
+        List<PerformanceResult> results = Lists.newArrayList(aborted, completed);
+        results.sort(null);
+
+        assertEquals(Lists.newArrayList(completed, aborted), results);
+    }
+
+    @Test
+    public void whenTakingAPercentile_thenTheNearestRankIsUsed() throws Exception {
+        List<Long> times = Lists.newArrayList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+
+        assertEquals(5, PerformanceRun.percentile(times, 50));
+        assertEquals(9, PerformanceRun.percentile(times, 90));
+        assertEquals(10, PerformanceRun.percentile(times, 99));
+        assertEquals(7, PerformanceRun.percentile(Lists.newArrayList(7L), 50));
+    }
+
+    /**
+     * Sleeps for <code>sleepMillis</code> before sieving, or until the monitor is cancelled if that comes first.
+     */
+    private static class SlowSieve extends EratosthenesSieve {
+
+        private final long sleepMillis;
+
+        private SlowSieve(long sleepMillis) {
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        protected PrimeSequence calculate(long ceiling, ProgressMonitor monitor) throws CalculationException {
+            long start = System.currentTimeMillis();
+            while (System.currentTimeMillis() - start < sleepMillis) {
+                monitor.checkCancelled();
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    throw new CalculationException("Interrupted", e);
+                }
+            }
+            return super.calculate(ceiling, monitor);
+        }
+    }
+
+}
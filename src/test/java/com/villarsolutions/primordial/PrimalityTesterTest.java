@@ -0,0 +1,62 @@
+package com.villarsolutions.primordial;
+
+import com.codahale.metrics.MetricRegistry;
+import com.villarsolutions.primordial.calculator.impl.MillerRabin;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.LongStream;
+
+import static com.villarsolutions.primordial.PrimordialFixtures.CEILING;
+import static com.villarsolutions.primordial.PrimordialFixtures.PRIMES_UP_TO_CEILING;
+import static org.junit.Assert.assertEquals;
+
+public class PrimalityTesterTest {
+
+    private final MillerRabin millerRabin = new MillerRabin();
+    private ExecutorService executorService;
+    private PrimalityTester primalityTester;
+
+    @Before
+    public void setUp() throws Exception {
+        executorService = Executors.newFixedThreadPool(4);
+        primalityTester = new PrimalityTester(millerRabin, executorService, 4);
+        primalityTester.registerMetrics(new MetricRegistry());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void whenTestingASmallBatch_thenOnlyThePrimesArePrime() throws Exception {
+        long[] numbers = LongStream.rangeClosed(0, CEILING).toArray();
+        boolean[] prime = primalityTester.test(numbers);
+
+        for (long n : numbers) {
+            assertEquals(String.valueOf(n), PRIMES_UP_TO_CEILING.contains(n), prime[(int) n]);
+        }
+    }
+
+    @Test
+    public void whenTestingABatchSplitIntoChunks_thenEveryNumberIsTestedInPlace() throws Exception {
+        // Not a multiple of the chunk size, so that the last chunk is shorter
+        long[] numbers = LongStream.range(0, 5L * PrimalityTester.MIN_CHUNK_SIZE + 7).map(i -> Long.MAX_VALUE - i).toArray();
+        boolean[] prime = primalityTester.test(numbers);
+
+        assertEquals(numbers.length, prime.length);
+        for (int i = 0; i < numbers.length; i++) {
+            assertEquals(String.valueOf(numbers[i]), millerRabin.isPrime(numbers[i]), prime[i]);
+        }
+    }
+
+    @Test
+    public void whenTestingAnEmptyBatch_thenTheResultIsEmpty() throws Exception {
+        assertEquals(0, primalityTester.test(new long[0]).length);
+    }
+
+}
@@ -0,0 +1,213 @@
+package com.villarsolutions.primordial;
+
+import com.codahale.metrics.MetricRegistry;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.calculator.impl.EratosthenesSieve;
+import com.villarsolutions.primordial.calculator.impl.ParallelEratosthenesSieve;
+import com.villarsolutions.primordial.exception.CalculationException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.villarsolutions.primordial.PrimordialFixtures.CEILING;
+import static com.villarsolutions.primordial.PrimordialFixtures.PRIMES_UP_TO_CEILING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PrimesCacheTest {
+
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final CountingSieve calculator = new CountingSieve();
+    private final AdmissionController admissionController = new AdmissionController(Long.MAX_VALUE, 0);
+    private PrimesCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new PrimesCache(1024 * 1024, admissionController);
+        cache.registerMetrics(metrics);
+    }
+
+    @Test
+    public void whenTheCeilingIsBelowTheCachedOne_thenThePrefixIsSliced() throws Exception {
+        assertEquals(PRIMES_UP_TO_CEILING, cache.calculatePrimes(calculator, CEILING));
+        assertEquals(PrimeSequence.of(2L, 3L, 5L, 7L), cache.calculatePrimes(calculator, 10));
+        assertEquals(Optional.of(PrimeSequence.of(983L, 991L, 997L)), cache.getIfCovered(calculator, 980, CEILING));
+
+        assertEquals(1, calculator.fullCalculations);
+        assertEquals(1, meter("misses"));
+        assertEquals(2, meter("hits"));
+    }
+
+    @Test
+    public void whenThePrimesAreReturned_thenEachRequestGetsAReadOnlyViewOfItsOwn() throws Exception {
+        PrimeSequence miss = cache.calculatePrimes(calculator, CEILING);
+        PrimeSequence hit = cache.calculatePrimes(calculator, CEILING);
+
+        assertTrue(miss.isReadOnly());
+        assertTrue(hit.isReadOnly());
+        assertNotSame(miss, hit);
+        assertTrue(cache.getIfCovered(calculator, 2, CEILING).get().isReadOnly());
+        try {
+            miss.add(1009);
+            fail("The primes returned by the cache must not be modifiable");
+        } catch (UnsupportedOperationException expected) {
+            // The cached primes are left untouched
+        }
+        assertEquals(PRIMES_UP_TO_CEILING, cache.calculatePrimes(calculator, CEILING));
+    }
+
+    @Test
+    public void whenTheCeilingIsAboveTheCachedOne_thenOnlyTheDifferenceIsCalculated() throws Exception {
+        cache.calculatePrimes(calculator, 600);
+        assertEquals(PRIMES_UP_TO_CEILING, cache.calculatePrimes(calculator, CEILING));
+        assertEquals(PRIMES_UP_TO_CEILING, cache.calculatePrimes(calculator, CEILING));
+
+        assertEquals(1, calculator.fullCalculations);
+        assertEquals(1, calculator.rangeCalculations);
+        assertEquals(1, meter("partialHits"));
+        assertEquals(1, meter("hits"));
+    }
+
+    @Test
+    public void whenThePrefixOfAParallelCalculatorIsExtended_thenTheDifferenceIsSievedInParallel() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ParallelEratosthenesSieve parallel = new ParallelEratosthenesSieve(executor, 4, 10, 50, 19);
+            cache.calculatePrimes(parallel, 600);
+
+            // The first two segments of the range wait for each other, which they can only do on two different threads
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+            CountDownLatch bothSegments = new CountDownLatch(2);
+            ProgressMonitor monitor = new ProgressMonitor() {
+                @Override
+                public void segmentCompleted() {
+                    super.segmentCompleted();
+                    threads.add(Thread.currentThread().getName());
+                    bothSegments.countDown();
+                    try {
+                        bothSegments.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+
+            assertEquals(PRIMES_UP_TO_CEILING, cache.calculatePrimes(parallel, CEILING, monitor));
+            assertEquals(1, meter("partialHits"));
+            assertTrue(monitor.getTotalSegments() > 1);
+            assertTrue(threads.size() > 1);
+            assertFalse(threads.contains(Thread.currentThread().getName()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void whenTheCachedCeilingIsTooSmall_thenTheWholeCeilingIsCalculated() throws Exception {
+        cache.calculatePrimes(calculator, 100);
+        assertEquals(PRIMES_UP_TO_CEILING, cache.calculatePrimes(calculator, CEILING));
+
+        assertEquals(2, calculator.fullCalculations);
+        assertEquals(0, calculator.rangeCalculations);
+        assertEquals(2, meter("misses"));
+    }
+
+    @Test
+    public void whenThePrimesDoNotFit_thenTheyAreNotCached() throws Exception {
+        cache = new PrimesCache(0, admissionController);
+        cache.calculatePrimes(calculator, CEILING);
+
+        assertFalse(cache.getIfCovered(calculator, 2, CEILING).isPresent());
+        assertEquals(PRIMES_UP_TO_CEILING, cache.calculatePrimes(calculator, CEILING));
+        assertEquals(2, calculator.fullCalculations);
+    }
+
+    @Test
+    public void whenThePrimesTakeMostOfTheCache_thenTheyAreStillCached() throws Exception {
+        // The 9,592 primes up to 100,000 take 75KB, which is more than a quarter of the cache
+        cache = new PrimesCache(128 * 1024, admissionController);
+        PrimeSequence primes = cache.calculatePrimes(calculator, 100_000);
+
+        assertEquals(9592, primes.size());
+        assertEquals(Optional.of(primes), cache.getIfCovered(calculator, 2, 100_000));
+        assertEquals(1, calculator.fullCalculations);
+    }
+
+    @Test
+    public void whenASmallerCeilingIsInFlight_thenTheRequestWaitsForIt() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        cache = new PrimesCache(0, admissionController);
+        cache.registerMetrics(metrics);
+        BlockingSieve calculator = new BlockingSieve();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<PrimeSequence> first = executor.submit(() -> cache.calculatePrimes(calculator, CEILING));
+            calculator.started.await();
+            Future<PrimeSequence> second = executor.submit(() -> cache.calculatePrimes(calculator, 10));
+            Future<PrimeSequence> third = executor.submit(() -> cache.calculatePrimes(calculator, CEILING));
+            while (metrics.meter(MetricRegistry.name(PrimesCache.class, "coalesced")).getCount() < 2) {
+                Thread.sleep(10);
+            }
+            calculator.release.countDown();
+
+            assertEquals(PRIMES_UP_TO_CEILING, first.get());
+            assertEquals(PrimeSequence.of(2L, 3L, 5L, 7L), second.get());
+            assertEquals(PRIMES_UP_TO_CEILING, third.get());
+            assertEquals(1, calculator.fullCalculations);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long meter(String name) {
+        return metrics.meter(MetricRegistry.name(PrimesCache.class, name)).getCount();
+    }
+
+    private static class CountingSieve extends EratosthenesSieve {
+
+        int fullCalculations;
+        int rangeCalculations;
+
+        @Override
+        protected PrimeSequence calculate(long ceiling, ProgressMonitor monitor) throws CalculationException {
+            fullCalculations++;
+            return super.calculate(ceiling, monitor);
+        }
+
+        @Override
+        protected PrimeSequence calculate(long lowerBound, long ceiling, ProgressMonitor monitor) throws CalculationException {
+            rangeCalculations++;
+            return super.calculate(lowerBound, ceiling, monitor);
+        }
+    }
+
+    private static class BlockingSieve extends CountingSieve {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        protected PrimeSequence calculate(long ceiling, ProgressMonitor monitor) throws CalculationException {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new CalculationException("Interrupted", e);
+            }
+            return super.calculate(ceiling, monitor);
+        }
+    }
+
+}
@@ -2,15 +2,14 @@ package com.villarsolutions.primordial;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Throwables;
-import com.google.common.collect.Lists;
 import com.villarsolutions.primordial.api.CalculationResult;
 import com.villarsolutions.primordial.calculator.PrimeCalculator;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
 import com.villarsolutions.primordial.calculator.impl.Segment;
 import io.dropwizard.jackson.Jackson;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.List;
 
 import static io.dropwizard.testing.FixtureHelpers.fixture;
 
@@ -21,7 +20,7 @@ public class PrimordialFixtures {
      */
     public static final long CEILING = 997;
 
-    public static final List<Long> PRIMES_UP_TO_CEILING = Lists.newArrayList(2L,3L,5L,7L,11L,13L,17L,19L,23L,29L,31L,
+    public static final PrimeSequence PRIMES_UP_TO_CEILING = PrimeSequence.of(2L,3L,5L,7L,11L,13L,17L,19L,23L,29L,31L,
             37L,41L,43L,47L,53L,59L,61L,67L,71L,73L,79L,83L,89L,97L,101L,103L,107L,109L,113L,127L,131L,137L,139L,149L,
             151L,157L,163L,167L,173L,179L,181L,191L,193L,197L,199L,211L,223L,227L,229L,233L,239L,241L,251L,257L,263L,
             269L,271L,277L,281L,283L,293L,307L,311L,313L,317L,331L,337L,347L,349L,353L,359L,367L,373L,379L,383L,389L,
@@ -2,6 +2,7 @@ package com.villarsolutions.primordial;
 
 import com.google.common.collect.Lists;
 import com.villarsolutions.primordial.api.CalculationResult;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
 import io.dropwizard.testing.ResourceHelpers;
 import io.dropwizard.testing.junit.DropwizardAppRule;
 import org.junit.After;
@@ -14,6 +15,7 @@ import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.List;
 
 import static com.villarsolutions.primordial.PrimesResource.URL_BASE_PATH;
@@ -87,6 +89,77 @@ public class PrimordialIntegrationTest {
         assertThat(errorText).contains("This calculator only supports prime numbers up to [");
     }
 
+    @Test
+    public void whenUsingKeepLast_thenOnlyTheLastPrimesAreReturnedWithTheFullCount() throws Exception {
+        final Response response = client.target("http://localhost:" + RULE.getLocalPort() + URL_BASE_PATH)
+                .queryParam(PrimesResource.CEILING_PARAMETER, PrimordialFixtures.CEILING)
+                .queryParam(PrimesResource.KEEP_LAST_PARAMETER, 3)
+                .request()
+                .get(Response.class);
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        CalculationResult result = response.readEntity(CalculationResult.class);
+        assertEquals(PrimordialFixtures.PRIMES_UP_TO_CEILING.size(), result.getCountOfPrimes());
+        assertEquals(PrimeSequence.of(983L, 991L, 997L), result.getPrimes());
+    }
+
+    @Test
+    public void whenStreaming_thenOnePrimeIsReturnedPerLine() throws Exception {
+        final Response response = client.target("http://localhost:" + RULE.getLocalPort() + URL_BASE_PATH + "/stream")
+                .queryParam(PrimesResource.CEILING_PARAMETER, PrimordialFixtures.CEILING)
+                .request()
+                .get(Response.class);
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        long[] primes = Arrays.stream(response.readEntity(String.class).split("\n"))
+                .mapToLong(Long::parseLong)
+                .toArray();
+        assertEquals(PrimordialFixtures.PRIMES_UP_TO_CEILING, PrimeSequence.of(primes));
+    }
+
+    @Test
+    public void whenRequestingARange_thenOnlyThePrimesInTheRangeAreReturned() throws Exception {
+        final Response response = client.target("http://localhost:" + RULE.getLocalPort() + URL_BASE_PATH + "/range")
+                .queryParam(PrimesResource.LOWER_PARAMETER, 1_000_000_000_000L)
+                .queryParam(PrimesResource.UPPER_PARAMETER, 1_000_000_000_100L)
+                .request()
+                .get(Response.class);
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        CalculationResult result = response.readEntity(CalculationResult.class);
+        assertEquals(Long.valueOf(1_000_000_000_000L), result.getLowerBound());
+        assertEquals(1_000_000_000_100L, result.getCeiling());
+        assertEquals(4, result.getCountOfPrimes());
+        assertEquals(PrimeSequence.of(1_000_000_000_039L, 1_000_000_000_061L, 1_000_000_000_063L, 1_000_000_000_091L), result.getPrimes());
+    }
+
+    @Test
+    public void whenTheRangeIsInverted_thenABadRequestResultIsReturned() throws Exception {
+        final Response response = client.target("http://localhost:" + RULE.getLocalPort() + URL_BASE_PATH + "/range")
+                .queryParam(PrimesResource.LOWER_PARAMETER, 100)
+                .queryParam(PrimesResource.UPPER_PARAMETER, 10)
+                .request()
+                .get(Response.class);
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        String errorText = response.readEntity(String.class);
+        assertThat(errorText).contains("The 'lower' bound must not be greater than the 'upper' bound");
+    }
+
+    @Test
+    public void whenCounting_thenOnlyTheCountOfPrimesIsReturned() throws Exception {
+        final Response response = client.target("http://localhost:" + RULE.getLocalPort() + URL_BASE_PATH + "/count")
+                .queryParam(PrimesResource.CEILING_PARAMETER, 1_000_000_000L)
+                .request()
+                .get(Response.class);
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        CalculationResult result = response.readEntity(CalculationResult.class);
+        assertEquals(1_000_000_000L, result.getCeiling());
+        assertEquals(50_847_534, result.getCountOfPrimes());
+        assertThat(result.getPrimes()).isNull();
+    }
+
     private Response sendRequest(long ceiling) {
         return sendRequest(null, ceiling);
     }
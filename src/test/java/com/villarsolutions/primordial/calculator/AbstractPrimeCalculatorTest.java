@@ -1,7 +1,7 @@
 package com.villarsolutions.primordial.calculator;
 
-import com.google.common.collect.Sets;
 import com.villarsolutions.primordial.PrimordialFixtures;
+import com.google.common.collect.Lists;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -9,7 +9,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
-import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.villarsolutions.primordial.PrimordialFixtures.PRIMES_UP_TO_CEILING;
 import static org.junit.Assert.*;
@@ -47,7 +47,7 @@ public abstract class AbstractPrimeCalculatorTest {
 
     @Test
     public void whenCeilingIsTwo_thenASinglePrimeNumberIsFound() throws Exception {
-        List<Long> primes = getCalculator().calculatePrimes(2);
+        PrimeSequence primes = getCalculator().calculatePrimes(2);
         assertNotNull(primes);
         assertEquals(1, primes.size());
         long actual = primes.get(0);
@@ -56,7 +56,7 @@ public abstract class AbstractPrimeCalculatorTest {
 
     @Test
     public void whenCeilingIsSetToCorrectly_thenPrimeNumbersShouldBeGenerated() throws Exception {
-        List<Long> primes = getCalculator().calculatePrimes(PrimordialFixtures.CEILING);
+        PrimeSequence primes = getCalculator().calculatePrimes(PrimordialFixtures.CEILING);
         assertNotNull(primes);
         assertFalse(primes.isEmpty());
         assertEquals(PRIMES_UP_TO_CEILING, primes);
@@ -64,7 +64,7 @@ public abstract class AbstractPrimeCalculatorTest {
 
     @Test
     public void whenCeilingIsSetToAPrimeNumber_thenThisPrimeNumbersIsInResult() throws Exception {
-        List<Long> primes = getCalculator().calculatePrimes(19);
+        PrimeSequence primes = getCalculator().calculatePrimes(19);
         assertNotNull(primes);
         assertFalse(primes.isEmpty());
         long actual = primes.get(primes.size()-1);
@@ -78,13 +78,113 @@ public abstract class AbstractPrimeCalculatorTest {
         }
     }
 
+    @Test
+    public void whenStreaming_thenTheChunksAddUpToTheSamePrimes() throws Exception {
+        List<PrimeSequence> chunks = Lists.newArrayList();
+        getCalculator().streamPrimes(PrimordialFixtures.CEILING, chunks::add);
+        assertFalse(chunks.isEmpty());
+        assertEquals(PRIMES_UP_TO_CEILING, PrimeSequence.concat(chunks));
+    }
+
+    @Test
+    public void whenCountIsZero_thenIllegalArgumentExceptionIsThrown() throws Exception {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage(AbstractPrimeCalculator.COUNT_MUST_BE_GREATER_THAN_0);
+        getCalculator().calculateLastPrimes(100, 0);
+    }
+
+    @Test
+    public void whenCalculatingTheLastPrimes_thenTheyMatchTheTailOfAllThePrimes() throws Exception {
+        for (long ceiling = 2; ceiling <= PrimordialFixtures.CEILING; ceiling += 19) {
+            long to = ceiling;
+            PrimeSequence allPrimes = PrimeSequence.of(PRIMES_UP_TO_CEILING.stream().filter(p -> p <= to).toArray());
+            for (int count : new int[]{1, 2, 5, 50, 1000}) {
+                assertEquals(allPrimes.tail(count), getCalculator().calculateLastPrimes(ceiling, count));
+            }
+        }
+    }
+
+    @Test
+    public void whenCalculatingTheLastPrimesFarFromTwo_thenOnlyTheEndOfTheNumberLineIsSearched() throws Exception {
+        PrimeSequence primes = getCalculator().calculateLastPrimes(1_000_000_000_100L, 3);
+        assertEquals(PrimeSequence.of(1_000_000_000_061L, 1_000_000_000_063L, 1_000_000_000_091L), primes);
+    }
+
+    @Test
+    public void whenCountingPrimes_thenTheCountMatchesTheNumberOfPrimesCalculated() throws Exception {
+        for (long ceiling = 2; ceiling <= PrimordialFixtures.CEILING; ceiling += 13) {
+            assertEquals(getCalculator().calculatePrimes(ceiling).size(), getCalculator().countPrimes(ceiling));
+        }
+        assertEquals(PRIMES_UP_TO_CEILING.size(), getCalculator().countPrimes(PrimordialFixtures.CEILING));
+    }
+
+    @Test
+    public void whenLowerBoundIsNegative_thenIllegalArgumentExceptionIsThrown() throws Exception {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage(AbstractPrimeCalculator.LOWER_BOUND_MUST_NOT_BE_NEGATIVE);
+        getCalculator().calculatePrimes(-1, 100);
+    }
+
+    @Test
+    public void whenLowerBoundIsAboveCeiling_thenIllegalArgumentExceptionIsThrown() throws Exception {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage(AbstractPrimeCalculator.LOWER_BOUND_MUST_NOT_EXCEED_CEILING);
+        getCalculator().calculatePrimes(101, 100);
+    }
+
+    @Test
+    public void whenRangeIsTooLarge_thenIllegalArgumentExceptionIsThrown() throws Exception {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage(AbstractPrimeCalculator.RANGE_IS_TOO_LARGE);
+        getCalculator().calculatePrimes(0, AbstractPrimeCalculator.MAX_RANGE_SIZE);
+    }
+
+    @Test
+    public void whenCalculatingForManyRanges_thenOnlyThePrimesInTheRangeAreFound() throws Exception {
+        for (long lowerBound = 0; lowerBound < 200; lowerBound += 7) {
+            for (long ceiling = Math.max(lowerBound, 2); ceiling <= PrimordialFixtures.CEILING; ceiling += 31) {
+                long from = lowerBound;
+                long to = ceiling;
+                PrimeSequence expected = PrimeSequence.of(PRIMES_UP_TO_CEILING.stream().filter(p -> p >= from && p <= to).toArray());
+                assertEquals(expected, getCalculator().calculatePrimes(lowerBound, ceiling));
+            }
+        }
+    }
+
+    @Test
+    public void whenRangeIsFarFromTwo_thenOnlyThePrimesInTheRangeAreFound() throws Exception {
+        PrimeSequence primes = getCalculator().calculatePrimes(1_000_000_000_000L, 1_000_000_000_100L);
+        assertEquals(PrimeSequence.of(1_000_000_000_039L, 1_000_000_000_061L, 1_000_000_000_063L, 1_000_000_000_091L), primes);
+    }
+
+    @Test
+    public void whenEstimatingPeakMemory_thenThePrimesFoundFitInTheEstimate() throws Exception {
+        for (long ceiling : new long[] {2, 17, 18, PrimordialFixtures.CEILING, 100_000}) {
+            long primesBytes = (long) getCalculator().calculatePrimes(ceiling).size() * Long.BYTES;
+            assertTrue(getCalculator().estimatePeakMemory(ceiling) >= primesBytes);
+        }
+        for (long lowerBound : new long[] {0, 17, 18, 500, 99_000}) {
+            long primesBytes = (long) getCalculator().calculatePrimes(lowerBound, 100_000).size() * Long.BYTES;
+            assertTrue(getCalculator().estimatePeakMemory(lowerBound, 100_000) >= primesBytes);
+        }
+    }
+
+    @Test
+    public void whenEstimatingThePeakMemoryOfTheLastPrimes_thenItGrowsWithTheCountUpToThatOfAllThePrimes() throws Exception {
+        assertTrue(getCalculator().estimateLastPrimesPeakMemory(100_000, 10) >= 2 * 10 * Long.BYTES);
+        assertTrue(getCalculator().estimateLastPrimesPeakMemory(100_000, 10) < getCalculator().estimatePeakMemory(100_000));
+        assertEquals(getCalculator().estimatePeakMemory(100_000), getCalculator().estimateLastPrimesPeakMemory(100_000, Integer.MAX_VALUE));
+    }
+
     public void verifyPrimesUpToCeiling(long ceiling) {
         log.info(String.format("Calculating primes up to ceiling [%d]", ceiling));
-        List<Long> primes = getCalculator().calculatePrimes(ceiling);
+        PrimeSequence primes = getCalculator().calculatePrimes(ceiling);
         assertNotNull(primes);
         assertFalse(primes.isEmpty());
-        Set<Long> s = Sets.newHashSet(primes);
-        s.removeAll(PRIMES_UP_TO_CEILING);
+        List<Long> s = primes.stream()
+            .filter(p -> !PRIMES_UP_TO_CEILING.contains(p))
+            .boxed()
+            .collect(Collectors.toList());
         if (!s.isEmpty()) {
             log.error(String.format("Got the following non-prime numbers: %s", s));
         }
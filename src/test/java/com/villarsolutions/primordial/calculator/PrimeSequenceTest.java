@@ -0,0 +1,100 @@
+package com.villarsolutions.primordial.calculator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import io.dropwizard.jackson.Jackson;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PrimeSequenceTest {
+
+    private static final ObjectMapper MAPPER = Jackson.newObjectMapper();
+
+    @Test
+    public void whenAddingBeyondTheInitialCapacity_thenTheSequenceGrows() throws Exception {
+        PrimeSequence primes = new PrimeSequence(1);
+        primes.add(2);
+        primes.add(3);
+        primes.add(5);
+        assertEquals(3, primes.size());
+        assertEquals(PrimeSequence.of(2, 3, 5), primes);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void whenGettingBeyondTheSize_thenIndexOutOfBoundsExceptionIsThrown() throws Exception {
+        PrimeSequence primes = new PrimeSequence(10);
+        primes.add(2);
+        primes.get(1);
+    }
+
+    @Test
+    public void whenSlicing_thenOnlyThePrimesWithinTheBoundsAreKept() throws Exception {
+        PrimeSequence primes = PrimeSequence.of(2, 3, 5, 7, 11, 13);
+        assertEquals(PrimeSequence.of(3, 5, 7), primes.slice(3, 7));
+        assertEquals(PrimeSequence.of(5, 7, 11), primes.slice(4, 12));
+        assertEquals(PrimeSequence.of(2, 3, 5, 7, 11, 13), primes.slice(0, Long.MAX_VALUE));
+        assertEquals(new PrimeSequence(), primes.slice(8, 10));
+        assertEquals(new PrimeSequence(), primes.slice(20, 10));
+    }
+
+    @Test
+    public void whenConcatenating_thenTheOrderOfTheSequencesIsKept() throws Exception {
+        PrimeSequence actual = PrimeSequence.concat(Lists.newArrayList(
+            PrimeSequence.of(2, 3),
+            new PrimeSequence(),
+            PrimeSequence.of(5, 7, 11)
+        ));
+        assertArrayEquals(new long[]{2, 3, 5, 7, 11}, actual.toArray());
+    }
+
+    @Test
+    public void whenTakingTheTail_thenOnlyTheLastPrimesAreKept() throws Exception {
+        PrimeSequence primes = PrimeSequence.of(2, 3, 5, 7, 11);
+        assertEquals(PrimeSequence.of(7, 11), primes.tail(2));
+        assertEquals(primes, primes.tail(100));
+    }
+
+    @Test
+    public void whenSearching_thenOnlyPrimesInTheSequenceAreFound() throws Exception {
+        PrimeSequence primes = PrimeSequence.of(2, 3, 5, 7, 11);
+        assertTrue(primes.contains(2));
+        assertTrue(primes.contains(11));
+        assertFalse(primes.contains(9));
+        assertFalse(primes.contains(13));
+    }
+
+    @Test
+    public void whenSlicingAReadOnlySequence_thenAReadOnlyViewOfTheSamePrimesIsReturned() throws Exception {
+        PrimeSequence primes = PrimeSequence.of(2, 3, 5, 7, 11, 13).asReadOnly();
+        PrimeSequence slice = primes.slice(4, 12);
+
+        assertTrue(slice.isReadOnly());
+        assertEquals(PrimeSequence.of(5, 7, 11), slice);
+        assertEquals(PrimeSequence.of(7, 11), slice.slice(6, 20));
+        assertEquals(PrimeSequence.of(11), slice.tail(1));
+        assertArrayEquals(new long[]{5, 7, 11}, slice.toArray());
+        assertArrayEquals(new long[]{5, 7, 11}, slice.stream().toArray());
+        assertTrue(slice.contains(7));
+        assertFalse(slice.contains(13));
+        assertEquals(PrimeSequence.of(2, 3, 5, 7, 11), PrimeSequence.concat(Lists.newArrayList(primes.slice(0, 3), slice)));
+        assertEquals("PrimeSequence[size=3, primes=[5, 7, 11]]", slice.toString());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void whenAddingToAReadOnlySequence_thenUnsupportedOperationExceptionIsThrown() throws Exception {
+        PrimeSequence.of(2, 3).asReadOnly().add(5);
+    }
+
+    @Test
+    public void serializesToAndFromAPlainJSONArray() throws Exception {
+        PrimeSequence primes = PrimeSequence.of(2, 3, 5, 7, 11, 2_147_483_647L);
+        String json = MAPPER.writeValueAsString(primes);
+        assertEquals("[2,3,5,7,11,2147483647]", json);
+        assertEquals(primes, MAPPER.readValue(json, PrimeSequence.class));
+    }
+
+}
@@ -7,6 +7,7 @@ import java.util.List;
 
 import static com.villarsolutions.primordial.PrimordialFixtures.newSegment;
 import static com.villarsolutions.primordial.calculator.impl.AbstractSegmentedSieveCalculator.divideIntoSegments;
+import static com.villarsolutions.primordial.calculator.impl.AbstractSegmentedSieveCalculator.divideRangeIntoSegments;
 import static org.junit.Assert.assertEquals;
 
 public class AbstractSegmentedSieveCalculatorTest {
@@ -86,4 +87,26 @@ public class AbstractSegmentedSieveCalculatorTest {
         assertEquals(expected, actual);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void whenDividingARange_thenEverySegmentHasTheSameSizeApartFromTheFinalOne() throws Exception {
+        List<Segment> actual = divideRangeIntoSegments(100, 122, 2, Integer.MAX_VALUE, 5, 19);
+        List<Segment> expected = Lists.newArrayList(
+            newSegment(100,5),
+            newSegment(105,5),
+            newSegment(110,5),
+            newSegment(115,5),
+            newSegment(120,3)
+        );
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void whenTheRangeIsBelowTheParallelismLowerBound_thenThereIsOnlyOneSegment() throws Exception {
+        List<Segment> actual = divideRangeIntoSegments(100, 118, 2, Integer.MAX_VALUE, 5, 19);
+        List<Segment> expected = Lists.newArrayList(
+            newSegment(100,19)
+        );
+        assertEquals(expected, actual);
+    }
+
+}
@@ -2,7 +2,14 @@ package com.villarsolutions.primordial.calculator.impl;
 
 import com.villarsolutions.primordial.calculator.AbstractPrimeCalculatorTest;
 import com.villarsolutions.primordial.calculator.PrimeCalculator;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.exception.CalculationCancelledException;
 import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
 
 /**
  * Most of the functionality is tested in the abstract superclass.
@@ -21,4 +28,26 @@ public class BasicTrialDivisionTest extends AbstractPrimeCalculatorTest {
         return calculator;
     }
 
+    @Test
+    public void whenTheMonitorIsCancelledWhileTestingALargePrime_thenCalculationCancelledExceptionIsThrown() throws Exception {
+        // Testing this prime takes a billion divisions
+        long largePrime = 1_000_000_000_000_000_003L;
+        AtomicInteger checks = new AtomicInteger();
+        ProgressMonitor monitor = new ProgressMonitor() {
+            @Override
+            public void checkCancelled() {
+                if (checks.incrementAndGet() == 5) {
+                    cancel();
+                }
+                super.checkCancelled();
+            }
+        };
+        exception.expect(CalculationCancelledException.class);
+        try {
+            getCalculator().calculatePrimes(largePrime, largePrime, monitor);
+        } finally {
+            assertEquals(5, checks.get());
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.villarsolutions.primordial.calculator.impl;
+
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.villarsolutions.primordial.PrimordialFixtures.PRIMES_UP_TO_CEILING;
+import static com.villarsolutions.primordial.PrimordialFixtures.newSegment;
+import static org.junit.Assert.assertEquals;
+
+public class CacheBlockedSieveTest {
+
+    /**
+     * The fixture holds every prime up to 997, which is enough to sieve any segment up to 997^2
+     */
+    private static final long MAX_UPPER_BOUND = 997L * 997L;
+
+    private static final int[] BLOCK_SIZES = {1, 2, 7, 64, 1000, CacheBlockedSieve.DEFAULT_BLOCK_SIZE};
+
+    /**
+     * Tiny block sizes make most of the sieving primes "large", so that they go through the buckets,
+     * and spread each segment over many blocks.
+     */
+    @Test
+    public void whenSievingInBlocks_thenTheResultMatchesSievingTheWholeSegmentAtOnce() throws Exception {
+        Segment[] segments = {
+            newSegment(2, 99_999),
+            newSegment(7, 30),
+            newSegment(500_001, 100_000),
+            newSegment(MAX_UPPER_BOUND - 1_000, 1_001)
+        };
+
+        for (Segment segment : segments) {
+            PrimeSequence expected = sieveWholeSegment(segment);
+            for (int blockSize : BLOCK_SIZES) {
+                PrimeSequence actual = new CacheBlockedSieve(PRIMES_UP_TO_CEILING, segment, blockSize).calculatePrimes();
+                assertEquals(String.format("%s with blockSize %d", segment, blockSize), expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void whenConsumingBlocks_thenEachBlockIsHandedOverInOrder() throws Exception {
+        Segment segment = newSegment(1_000, 10_000);
+        AtomicInteger count = new AtomicInteger();
+        long[] previousUpperBound = {segment.getLowerBound() - 1};
+
+        new CacheBlockedSieve(PRIMES_UP_TO_CEILING, segment, 16).sieve(block -> {
+            assertEquals(previousUpperBound[0] + 1, block.getLowerBound());
+            previousUpperBound[0] = block.getUpperBound();
+            count.addAndGet(block.countPrimes());
+        });
+
+        assertEquals(segment.getUpperBound(), previousUpperBound[0]);
+        assertEquals(sieveWholeSegment(segment).size(), count.get());
+    }
+
+    @Test
+    public void whenCounting_thenTheCountMatchesTheNumberOfPrimesCalculated() throws Exception {
+        Segment segment = newSegment(500_001, 100_000);
+        for (int blockSize : BLOCK_SIZES) {
+            int count = new CacheBlockedSieve(PRIMES_UP_TO_CEILING, segment, blockSize).countPrimes();
+            assertEquals(sieveWholeSegment(segment).size(), count);
+        }
+    }
+
+    private static PrimeSequence sieveWholeSegment(Segment segment) {
+        WheelSegment wheel = WheelSegment.create(segment);
+        wheel.crossOff(PRIMES_UP_TO_CEILING);
+        return wheel.toPrimeSequence();
+    }
+
+}
@@ -1,12 +1,20 @@
 package com.villarsolutions.primordial.calculator.impl;
 
+import com.google.common.collect.Lists;
 import com.villarsolutions.primordial.calculator.AbstractPrimeCalculatorTest;
 import com.villarsolutions.primordial.calculator.PrimeCalculator;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.exception.CalculationCancelledException;
 import com.villarsolutions.primordial.exception.CalculationException;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
 
 /**
  * Most of the functionality is tested in the abstract superclass.
@@ -32,4 +40,38 @@ public class EratosthenesSieveTest extends AbstractPrimeCalculatorTest {
         assertThat(getCalculator().calculatePrimes((long) Integer.MAX_VALUE + 1));
     }
 
+    @Test
+    public void whenTheMonitorIsCancelledWhileSieving_thenCalculationCancelledExceptionIsThrown() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        ProgressMonitor monitor = new ProgressMonitor() {
+            @Override
+            public void checkCancelled() {
+                if (checks.incrementAndGet() == 10) {
+                    cancel();
+                }
+                super.checkCancelled();
+            }
+        };
+        exception.expect(CalculationCancelledException.class);
+        try {
+            getCalculator().calculatePrimes(1_000_000, monitor);
+        } finally {
+            assertEquals(10, checks.get());
+        }
+    }
+
+    @Test
+    public void whenStreamingALargeCeiling_thenThePrimesAreHandedOverInSeveralChunks() throws Exception {
+        long ceiling = 40_000_000;
+        List<PrimeSequence> chunks = Lists.newArrayList();
+        getCalculator().streamPrimes(ceiling, chunks::add);
+        assertEquals(3, chunks.size());
+        assertEquals(getCalculator().calculatePrimes(ceiling), PrimeSequence.concat(chunks));
+    }
+
+    @Test
+    public void whenCountingAboveIntegerMaxValue_thenThePrimesAreCounted() throws Exception {
+        assertEquals(105_097_565L, getCalculator().countPrimes((long) Integer.MAX_VALUE + 1));
+    }
+
 }
\ No newline at end of file
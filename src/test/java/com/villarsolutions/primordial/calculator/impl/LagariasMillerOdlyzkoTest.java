@@ -0,0 +1,73 @@
+package com.villarsolutions.primordial.calculator.impl;
+
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.exception.CalculationCancelledException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+public class LagariasMillerOdlyzkoTest {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private final EratosthenesSieve sieve = new EratosthenesSieve();
+
+    @Test
+    public void whenCountingSmallCeilings_thenTheCountMatchesTheSieve() throws Exception {
+        PrimeSequence primes = sieve.calculatePrimes(100_000);
+        int count = 0;
+        for (long x = LagariasMillerOdlyzko.MIN_X; x <= 100_000; x += (x < 2_000 ? 1 : 997)) {
+            while (count < primes.size() && primes.get(count) <= x) {
+                count++;
+            }
+            assertEquals("pi(" + x + ")", count, countPrimes(x));
+        }
+    }
+
+    @Test
+    public void whenCountingPowersOfTen_thenTheKnownValuesAreReturned() throws Exception {
+        assertEquals(78_498, countPrimes(1_000_000L));
+        assertEquals(50_847_534, countPrimes(1_000_000_000L));
+        assertEquals(98_222_287, countPrimes(2_000_000_000L));
+        assertEquals(455_052_511, countPrimes(10_000_000_000L));
+        assertEquals(37_607_912_018L, countPrimes(1_000_000_000_000L));
+    }
+
+    @Test
+    public void whenXIsTooSmall_thenIllegalArgumentExceptionIsThrown() throws Exception {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("x must be at least");
+        new LagariasMillerOdlyzko(LagariasMillerOdlyzko.MIN_X - 1, new PrimeSequence());
+    }
+
+    @Test
+    public void whenTheMonitorIsCancelled_thenCalculationCancelledExceptionIsThrown() throws Exception {
+        long x = 1_000_000_000_000L;
+        PrimeSequence primesUpToY = sieve.calculatePrimes(LagariasMillerOdlyzko.getY(x));
+        ProgressMonitor monitor = new ProgressMonitor();
+        monitor.cancel();
+
+        exception.expect(CalculationCancelledException.class);
+        new LagariasMillerOdlyzko(x, primesUpToY).countPrimes(monitor);
+    }
+
+    @Test
+    public void whenGettingY_thenItIsBetweenTheCubeRootAndTheSquareRoot() throws Exception {
+        for (long x : new long[] {LagariasMillerOdlyzko.MIN_X, 1_000_000L, 1_000_000_000_000L, (long) Integer.MAX_VALUE * Integer.MAX_VALUE}) {
+            long y = LagariasMillerOdlyzko.getY(x);
+            assertThat(y).isGreaterThan(x / y / y);
+            assertThat(y).isLessThan(x / y);
+        }
+    }
+
+    private long countPrimes(long x) {
+        PrimeSequence primesUpToY = sieve.calculatePrimes(LagariasMillerOdlyzko.getY(x));
+        return new LagariasMillerOdlyzko(x, primesUpToY).countPrimes();
+    }
+
+}
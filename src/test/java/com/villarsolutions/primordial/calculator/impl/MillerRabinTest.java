@@ -0,0 +1,70 @@
+package com.villarsolutions.primordial.calculator.impl;
+
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MillerRabinTest {
+
+    private final MillerRabin millerRabin = new MillerRabin();
+
+    @Test
+    public void whenTestingEveryNumberUpToAMillion_thenOnlyTheSievedPrimesArePrime() throws Exception {
+        int ceiling = 1_000_000;
+        PrimeSequence primes = new EratosthenesSieve().findPrimes(ceiling);
+        int next = 0;
+        for (long n = -10; n <= ceiling; n++) {
+            boolean expected = next < primes.size() && primes.get(next) == n;
+            assertEquals(String.valueOf(n), expected, millerRabin.isPrime(n));
+            if (expected) {
+                next++;
+            }
+        }
+    }
+
+    @Test
+    public void whenTestingStrongPseudoprimes_thenTheyAreNotPrime() throws Exception {
+        // Carmichael numbers, and the smallest strong pseudoprimes to the first 4, 7 and 9 prime bases
+        long[] pseudoprimes = {561, 41041, 3215031751L, 341550071728321L, 3825123056546413051L};
+        for (long n : pseudoprimes) {
+            assertEquals(String.valueOf(n), BigInteger.valueOf(n).isProbablePrime(64), millerRabin.isPrime(n));
+        }
+        assertFalse(millerRabin.isPrime(3215031751L));
+        assertFalse(millerRabin.isPrime(3825123056546413051L));
+    }
+
+    @Test
+    public void whenTestingNumbersNearLongMaxValue_thenTheLargestPrimesAreFound() throws Exception {
+        assertTrue(millerRabin.isPrime(9_223_372_036_854_775_783L));
+        assertTrue(millerRabin.isPrime((1L << 61) - 1));
+        assertFalse(millerRabin.isPrime(Long.MAX_VALUE));
+        assertFalse(millerRabin.isPrime(4_294_967_291L * 4_294_967_279L));
+        for (long n = Long.MAX_VALUE; n > Long.MAX_VALUE - 1000; n--) {
+            assertEquals(String.valueOf(n), BigInteger.valueOf(n).isProbablePrime(64), millerRabin.isPrime(n));
+        }
+    }
+
+    @Test
+    public void whenTestingRandomNumbers_thenTheResultMatchesBigInteger() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            // Spread the numbers over every bit length, so that both base sets are covered
+            long n = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            assertEquals(String.valueOf(n), BigInteger.valueOf(n).isProbablePrime(64), millerRabin.isPrime(n));
+        }
+    }
+
+    @Test
+    public void whenInvertingOddNumbers_thenTheProductIsOne() throws Exception {
+        for (long n : new long[]{1, 3, 97, 1_000_000_007L, Long.MAX_VALUE, -1}) {
+            assertEquals(1, n * MillerRabin.inverse(n));
+        }
+    }
+
+}
@@ -1,20 +1,52 @@
 package com.villarsolutions.primordial.calculator.impl;
 
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.Lists;
+import com.villarsolutions.primordial.PrimordialFixtures;
 import com.villarsolutions.primordial.calculator.AbstractPrimeCalculatorTest;
 import com.villarsolutions.primordial.calculator.PrimeCalculator;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.exception.CalculationCancelledException;
+import com.villarsolutions.primordial.exception.CalculationException;
+import org.junit.After;
 import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.villarsolutions.primordial.PrimordialFixtures.PRIMES_UP_TO_CEILING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * The functionality is tested in the abstract superclass.
  */
 public class ParallelEratosthenesSieveTest extends AbstractPrimeCalculatorTest {
 
+    private static final int NUM_THREADS = 4;
+
+    private ExecutorService executorService;
     private ParallelEratosthenesSieve calculator;
 
     @Before
     public void setUp() throws Exception {
-        calculator = new ParallelEratosthenesSieve(1, Integer.MAX_VALUE, 19);
+        executorService = Executors.newFixedThreadPool(NUM_THREADS);
+        calculator = new ParallelEratosthenesSieve(executorService, NUM_THREADS, 1, Integer.MAX_VALUE, 19);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executorService.shutdownNow();
     }
 
     @Override
@@ -22,6 +54,154 @@ public class ParallelEratosthenesSieveTest extends AbstractPrimeCalculatorTest {
         return calculator;
     }
 
+    @Test
+    public void whenStreamingManySegments_thenEachSegmentIsHandedOverInOrder() throws Exception {
+        // Small segments, so that there are many more segments than can be in flight at once
+        ParallelEratosthenesSieve smallSegments = new ParallelEratosthenesSieve(executorService, NUM_THREADS, 10, 50, 19);
+        List<PrimeSequence> chunks = Lists.newArrayList();
+        smallSegments.streamPrimes(PrimordialFixtures.CEILING, chunks::add);
+
+        assertTrue(chunks.size() > 10);
+        assertEquals(PRIMES_UP_TO_CEILING, PrimeSequence.concat(chunks));
+    }
+
+    @Test
+    public void whenTheConsumerFails_thenStreamingStops() throws Exception {
+        ParallelEratosthenesSieve smallSegments = new ParallelEratosthenesSieve(executorService, NUM_THREADS, 10, 50, 19);
+        List<PrimeSequence> chunks = Lists.newArrayList();
+        exception.expect(CalculationException.class);
+        try {
+            smallSegments.streamPrimes(PrimordialFixtures.CEILING, primes -> {
+                if (chunks.size() == 3) {
+                    throw new IllegalStateException("The client went away");
+                }
+                chunks.add(primes);
+            });
+        } finally {
+            assertEquals(3, chunks.size());
+        }
+    }
+
+    @Test
+    public void whenCalculating_thenEverySegmentAndPhaseIsTimed() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        calculator.registerMetrics(metrics);
+        calculator.calculatePrimes(PrimordialFixtures.CEILING);
+
+        int segments = calculator.getSegments(PrimordialFixtures.CEILING).size() - 1;
+        assertEquals(1, timer(metrics, "calculations").getCount());
+        assertEquals(segments, timer(metrics, "segments").getCount());
+        assertEquals(segments, metrics.histogram(MetricRegistry.name(ParallelEratosthenesSieve.class, "primesPerSegment")).getCount());
+        assertEquals(1, timer(metrics, "smallPrimesPhase").getCount());
+        assertEquals(1, timer(metrics, "segmentPhase").getCount());
+        assertEquals(1, timer(metrics, "mergePhase").getCount());
+    }
+
+    @Test
+    public void whenTheMonitorIsCancelled_thenTheRemainingSegmentsAreNotSieved() throws Exception {
+        ParallelEratosthenesSieve singleThread = new ParallelEratosthenesSieve(executorService, 1, 10, 50, 19);
+        ProgressMonitor monitor = new ProgressMonitor() {
+            @Override
+            public void segmentCompleted() {
+                super.segmentCompleted();
+                if (getCompletedSegments() == 3) {
+                    cancel();
+                }
+            }
+        };
+        exception.expect(CalculationCancelledException.class);
+        try {
+            singleThread.calculatePrimes(PrimordialFixtures.CEILING, monitor);
+        } finally {
+            assertEquals(3, monitor.getCompletedSegments());
+            assertTrue(monitor.getTotalSegments() > 3);
+        }
+    }
+
+    @Test
+    public void whenTheDeadlineHasPassed_thenCalculationCancelledExceptionIsThrown() throws Exception {
+        ProgressMonitor monitor = new ProgressMonitor(1);
+        Thread.sleep(10);
+        exception.expect(CalculationCancelledException.class);
+        exception.expectMessage("deadline");
+        calculator.streamPrimes(PrimordialFixtures.CEILING, primes -> { }, monitor);
+    }
+
+    @Test
+    public void whenTheExecutorIsSaturatedBeforeACalculation_thenCalculationExceptionIsThrown() throws Exception {
+        ExecutorService saturated = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            // The only thread is busy and the only slot in the queue is taken, so the first worker cannot be submitted
+            saturated.submit(() -> {
+                blocked.await();
+                return null;
+            });
+            saturated.submit(() -> { });
+
+            ParallelEratosthenesSieve smallSegments = new ParallelEratosthenesSieve(saturated, 1, 10, 50, 19);
+            exception.expect(CalculationException.class);
+            exception.expectMessage("RejectedExecutionException");
+            smallSegments.calculatePrimes(PrimordialFixtures.CEILING);
+        } finally {
+            blocked.countDown();
+            saturated.shutdownNow();
+        }
+    }
+
+    @Test
+    public void whenOtherTasksAreQueued_thenTheyRunBetweenTheSegmentsOfACalculation() throws Exception {
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        try {
+            ParallelEratosthenesSieve smallSegments = new ParallelEratosthenesSieve(singleThread, 1, 10, 50, 19);
+            AtomicInteger segmentsBeforeOtherTask = new AtomicInteger(-1);
+            ProgressMonitor monitor = new ProgressMonitor() {
+                @Override
+                public void segmentCompleted() {
+                    super.segmentCompleted();
+                    if (getCompletedSegments() == 1) {
+                        singleThread.submit(() -> segmentsBeforeOtherTask.set(getCompletedSegments()));
+                    }
+                }
+            };
+
+            assertEquals(PRIMES_UP_TO_CEILING, smallSegments.calculatePrimes(PrimordialFixtures.CEILING, monitor));
+            assertEquals(1, segmentsBeforeOtherTask.get());
+        } finally {
+            singleThread.shutdownNow();
+        }
+    }
+
+    @Test
+    public void whenTheQueueFillsUpDuringACalculation_thenTheWorkersCarryOnWithoutFailing() throws Exception {
+        ThreadPoolExecutor saturated = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        try {
+            ParallelEratosthenesSieve smallSegments = new ParallelEratosthenesSieve(saturated, 1, 10, 50, 19);
+            ProgressMonitor monitor = new ProgressMonitor() {
+                @Override
+                public void segmentCompleted() {
+                    super.segmentCompleted();
+                    if (getCompletedSegments() == 1) {
+                        saturated.submit(() -> { });
+                    }
+                }
+            };
+
+            assertEquals(PRIMES_UP_TO_CEILING, smallSegments.calculatePrimes(PrimordialFixtures.CEILING, monitor));
+        } finally {
+            saturated.shutdownNow();
+        }
+    }
 
+    @Test
+    public void whenEstimatingARangeFarFromTwo_thenTheSievingPrimesAreIncluded() throws Exception {
+        // The range holds about 2 million primes (16MB), but is sieved with the 3.9 million primes up to 2^26
+        long lowerBound = 1L << 52;
+        assertTrue(calculator.estimatePeakMemory(lowerBound, lowerBound + 70_000_000) > 3_900_000L * (Long.BYTES + CacheBlockedSieve.BYTES_PER_LARGE_PRIME));
+    }
+
+    private static Timer timer(MetricRegistry metrics, String name) {
+        return metrics.timer(MetricRegistry.name(ParallelEratosthenesSieve.class, name));
+    }
 
-}
\ No newline at end of file
+}
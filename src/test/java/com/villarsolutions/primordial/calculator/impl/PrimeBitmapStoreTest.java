@@ -0,0 +1,90 @@
+package com.villarsolutions.primordial.calculator.impl;
+
+import com.google.common.collect.Lists;
+import com.villarsolutions.primordial.PrimordialFixtures;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.villarsolutions.primordial.PrimordialFixtures.PRIMES_UP_TO_CEILING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PrimeBitmapStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+
+    @Before
+    public void setUp() throws Exception {
+        path = folder.getRoot().toPath().resolve("primes.bin");
+    }
+
+    @Test
+    public void whenBuilt_thenThePrimesAreReadBackFromTheFile() throws Exception {
+        PrimeBitmapStore store = new PrimeBitmapStore(path);
+        assertFalse(store.covers(2));
+
+        store.build(PrimordialFixtures.CEILING);
+        assertTrue(store.covers(PrimordialFixtures.CEILING));
+        assertEquals(PRIMES_UP_TO_CEILING, store.primesInRange(2, PrimordialFixtures.CEILING));
+        assertEquals(PRIMES_UP_TO_CEILING.size(), store.countPrimes(PrimordialFixtures.CEILING));
+    }
+
+    @Test
+    public void whenReadingRanges_thenOnlyThePrimesInTheRangeAreReturned() throws Exception {
+        PrimeBitmapStore store = new PrimeBitmapStore(path);
+        store.build(PrimordialFixtures.CEILING);
+
+        // Bounds on either side of a long in the bitmap (bit 64 is the number 129)
+        assertEquals(PrimeSequence.of(2L, 3L), store.primesInRange(0, 4));
+        assertEquals(PrimeSequence.of(127L, 131L), store.primesInRange(127, 131));
+        assertEquals(PrimeSequence.of(131L), store.primesInRange(128, 136));
+        assertEquals(PrimeSequence.of(), store.primesInRange(24, 28));
+        assertEquals(PrimeSequence.of(983L, 991L, 997L), store.primesInRange(980, PrimordialFixtures.CEILING));
+        assertEquals(31, store.countPrimes(128));
+    }
+
+    @Test
+    public void whenLoadedAfterARestart_thenTheSameCeilingIsCovered() throws Exception {
+        new PrimeBitmapStore(path).build(100_000);
+
+        PrimeBitmapStore store = new PrimeBitmapStore(path);
+        assertTrue(store.load());
+        assertEquals(100_000, store.getCeiling());
+        assertEquals(9_592, store.countPrimes(100_000));
+    }
+
+    @Test
+    public void whenTheFileIsNotValid_thenItIsNotLoaded() throws Exception {
+        Files.write(path, new byte[] {1, 2, 3});
+        PrimeBitmapStore store = new PrimeBitmapStore(path);
+        assertFalse(store.load());
+        assertEquals(0, store.getCeiling());
+    }
+
+    @Test
+    public void whenTheCeilingIsStored_thenTheCalculatorsAnswerFromTheStore() throws Exception {
+        PrimeBitmapStore store = new PrimeBitmapStore(path);
+        store.build(PrimordialFixtures.CEILING);
+        EratosthenesSieve calculator = new EratosthenesSieve(store);
+
+        assertEquals(PRIMES_UP_TO_CEILING, calculator.calculatePrimes(PrimordialFixtures.CEILING));
+        assertEquals(PrimeSequence.of(983L, 991L, 997L), calculator.calculateLastPrimes(PrimordialFixtures.CEILING, 3));
+        assertEquals(PRIMES_UP_TO_CEILING.size(), calculator.countPrimes(PrimordialFixtures.CEILING));
+
+        List<PrimeSequence> chunks = Lists.newArrayList();
+        calculator.streamPrimes(PrimordialFixtures.CEILING, chunks::add);
+        assertEquals(PRIMES_UP_TO_CEILING, PrimeSequence.concat(chunks));
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.villarsolutions.primordial.calculator.impl;
+
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.exception.CalculationCancelledException;
+import org.junit.Test;
+
+import java.util.NoSuchElementException;
+import java.util.stream.LongStream;
+
+import static com.villarsolutions.primordial.PrimordialFixtures.CEILING;
+import static com.villarsolutions.primordial.PrimordialFixtures.PRIMES_UP_TO_CEILING;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class PrimeIteratorTest {
+
+    private final MillerRabin millerRabin = new MillerRabin();
+
+    @Test
+    public void whenIteratingAfterEveryNumberUpToCeiling_thenTheFollowingPrimesAreFound() throws Exception {
+        for (long from = -1; from < CEILING; from++) {
+            long first = from;
+            long[] expected = PRIMES_UP_TO_CEILING.stream().filter(p -> p > first).limit(10).toArray();
+            assertArrayEquals(String.valueOf(from), expected, PrimeIterator.after(from).stream().limit(expected.length).toArray());
+        }
+    }
+
+    @Test
+    public void whenIteratingBeforeEveryNumberUpToCeiling_thenThePrecedingPrimesAreFoundDownTo2() throws Exception {
+        for (long from = -1; from <= CEILING; from++) {
+            long last = from;
+            long[] expected = PRIMES_UP_TO_CEILING.stream().filter(p -> p < last).toArray();
+            long[] actual = PrimeIterator.before(from).stream().toArray();
+            assertEquals(String.valueOf(from), expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[expected.length - 1 - i], actual[i]);
+            }
+        }
+    }
+
+    @Test
+    public void whenTakingManyPrimes_thenTheyMatchTheSieveAcrossWindows() throws Exception {
+        // More than the first few windows, which double in size
+        PrimeSequence expected = new EratosthenesSieve().findPrimes(20_000_000);
+        long[] after = PrimeIterator.after(1).stream().limit(expected.size()).toArray();
+        assertArrayEquals(expected.toArray(), after);
+
+        long[] before = PrimeIterator.before(20_000_001).stream().toArray();
+        assertEquals(expected.size(), before.length);
+        assertEquals(expected.get(expected.size() - 1), before[0]);
+        assertEquals(2, before[before.length - 1]);
+    }
+
+    @Test
+    public void whenIteratingNearLongMaxValue_thenThePrimesMatchMillerRabin() throws Exception {
+        long from = Long.MAX_VALUE - 10_000;
+        long[] expected = LongStream.rangeClosed(from + 1, Long.MAX_VALUE).filter(millerRabin::isPrime).toArray();
+        assertArrayEquals(expected, PrimeIterator.after(from).stream().toArray());
+
+        long[] before = PrimeIterator.before(from).stream().limit(100).toArray();
+        long[] expectedBefore = LongStream.iterate(from - 1, n -> n - 1).filter(millerRabin::isPrime).limit(100).toArray();
+        assertArrayEquals(expectedBefore, before);
+    }
+
+    @Test
+    public void whenIteratingAboveTheStoredSievingPrimes_thenThePrimesMatchMillerRabin() throws Exception {
+        long from = (SegmentedSieveUtil.MAX_STORED_SIEVING_PRIME + 1) * (SegmentedSieveUtil.MAX_STORED_SIEVING_PRIME + 1);
+        long[] expected = LongStream.iterate(from + 1, n -> n + 1).filter(millerRabin::isPrime).limit(200).toArray();
+        assertArrayEquals(expected, PrimeIterator.after(from).stream().limit(200).toArray());
+    }
+
+    @Test
+    public void whenThereAreNoMorePrimes_thenNextLongThrows() throws Exception {
+        PrimeIterator iterator = PrimeIterator.before(2);
+        assertFalse(iterator.hasNext());
+        try {
+            iterator.nextLong();
+            fail("Expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+        assertFalse(PrimeIterator.after(Long.MAX_VALUE).hasNext());
+    }
+
+    @Test
+    public void whenTheMonitorIsCancelled_thenNoFurtherWindowIsSieved() throws Exception {
+        ProgressMonitor monitor = new ProgressMonitor();
+        PrimeIterator iterator = PrimeIterator.after(1, monitor);
+        assertEquals(2, iterator.nextLong());
+
+        monitor.cancel();
+        try {
+            iterator.stream().forEach(p -> { });
+            fail("Expected CalculationCancelledException");
+        } catch (CalculationCancelledException e) {
+            // expected
+        }
+    }
+
+}
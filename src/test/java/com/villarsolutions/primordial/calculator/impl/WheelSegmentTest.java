@@ -0,0 +1,73 @@
+package com.villarsolutions.primordial.calculator.impl;
+
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import org.junit.Test;
+
+import static com.villarsolutions.primordial.PrimordialFixtures.CEILING;
+import static com.villarsolutions.primordial.PrimordialFixtures.PRIMES_UP_TO_CEILING;
+import static com.villarsolutions.primordial.PrimordialFixtures.newSegment;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WheelSegmentTest {
+
+    /**
+     * Enough small primes to sieve any segment up to the fixture's CEILING
+     */
+    private static final PrimeSequence SMALL_PRIMES = PrimeSequence.of(2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31);
+
+    @Test
+    public void whenSievingEverySegmentUpToCeiling_thenOnlyThePrimesInTheSegmentAreFound() throws Exception {
+        for (long lowerBound = 2; lowerBound < 100; lowerBound++) {
+            for (int segmentSize = 1; lowerBound + segmentSize - 1 <= CEILING; segmentSize += 37) {
+                Segment segment = newSegment(lowerBound, segmentSize);
+                assertEquals(segment.toString(), expectedPrimes(segment), sieve(segment));
+            }
+        }
+    }
+
+    @Test
+    public void whenTheSegmentContainsTheWheelPrimes_thenTheyAreIncluded() throws Exception {
+        assertEquals(PrimeSequence.of(2, 3, 5, 7), sieve(newSegment(2, 9)));
+        assertEquals(PrimeSequence.of(5), sieve(newSegment(4, 3)));
+    }
+
+    @Test
+    public void whenCountingPrimes_thenTheCountMatchesTheCollectedPrimes() throws Exception {
+        WheelSegment wheel = WheelSegment.create(newSegment(2, (int) CEILING - 1));
+        wheel.crossOff(SMALL_PRIMES);
+        assertEquals(PRIMES_UP_TO_CEILING.size(), wheel.countPrimes());
+        assertEquals(PRIMES_UP_TO_CEILING, wheel.toPrimeSequence());
+    }
+
+    /**
+     * The last byte of this segment holds residues beyond Long.MAX_VALUE, so this verifies that
+     * the bounds are checked without overflowing.
+     */
+    @Test
+    public void whenTheSegmentEndsAtLongMaxValue_thenNoCandidateIsOutOfBounds() throws Exception {
+        WheelSegment wheel = WheelSegment.create(newSegment(Long.MAX_VALUE - 99, 100));
+        wheel.crossOff(SMALL_PRIMES);
+        PrimeSequence candidates = wheel.toPrimeSequence();
+
+        assertTrue(candidates.stream().allMatch(n -> n >= Long.MAX_VALUE - 99));
+        // The largest prime that fits in a long must survive the sieve
+        assertTrue(candidates.contains(9_223_372_036_854_775_783L));
+        assertEquals(candidates.size(), wheel.countPrimes());
+    }
+
+    private static PrimeSequence sieve(Segment segment) {
+        WheelSegment wheel = WheelSegment.create(segment);
+        wheel.crossOff(SMALL_PRIMES);
+        return wheel.toPrimeSequence();
+    }
+
+    private static PrimeSequence expectedPrimes(Segment segment) {
+        PrimeSequence expected = new PrimeSequence();
+        PRIMES_UP_TO_CEILING.stream()
+            .filter(p -> p >= segment.getLowerBound() && p <= segment.getUpperBound())
+            .forEach(expected::add);
+        return expected;
+    }
+
+}
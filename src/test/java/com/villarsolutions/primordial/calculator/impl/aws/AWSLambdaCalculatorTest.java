@@ -0,0 +1,158 @@
+package com.villarsolutions.primordial.calculator.impl.aws;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
+import com.villarsolutions.primordial.PrimordialFixtures;
+import com.villarsolutions.primordial.calculator.AbstractPrimeCalculatorTest;
+import com.villarsolutions.primordial.calculator.PrimeCalculator;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.ProgressMonitor;
+import com.villarsolutions.primordial.exception.CalculationCancelledException;
+import com.villarsolutions.primordial.exception.CalculationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.villarsolutions.primordial.PrimordialFixtures.PRIMES_UP_TO_CEILING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The lambdas run in-process, see LocalLambdaInvoker.  The functionality is tested in the abstract superclass.
+ */
+public class AWSLambdaCalculatorTest extends AbstractPrimeCalculatorTest {
+
+    private static final int NUM_LAMBDAS = 4;
+
+    private ScheduledExecutorService scheduler;
+    private AWSLambdaCalculator calculator;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = Executors.newScheduledThreadPool(NUM_LAMBDAS);
+        calculator = createCalculator(new LocalLambdaInvoker(scheduler, 1), 1, Integer.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    protected PrimeCalculator getCalculator() {
+        return calculator;
+    }
+
+    @Test
+    public void whenThereAreMoreSegmentsThanLambdas_thenTheyAreAllInvokedAndConcatenatedInOrder() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        LambdaInvoker localInvoker = new LocalLambdaInvoker(scheduler, 2);
+        LambdaInvoker countingInvoker = request -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return localInvoker.invoke(request).whenComplete((primes, e) -> inFlight.decrementAndGet());
+        };
+        AWSLambdaCalculator smallSegments = createCalculator(countingInvoker, 10, 50);
+
+        assertEquals(PRIMES_UP_TO_CEILING, smallSegments.calculatePrimes(PrimordialFixtures.CEILING));
+        assertTrue(maxInFlight.get() <= NUM_LAMBDAS);
+    }
+
+    @Test
+    public void whenStreamingManySegments_thenEachSegmentIsHandedOverInOrder() throws Exception {
+        AWSLambdaCalculator smallSegments = createCalculator(new LocalLambdaInvoker(scheduler, 1), 10, 50);
+        List<PrimeSequence> chunks = Lists.newArrayList();
+        smallSegments.streamPrimes(PrimordialFixtures.CEILING, chunks::add);
+
+        assertTrue(chunks.size() > 10);
+        assertEquals(PRIMES_UP_TO_CEILING, PrimeSequence.concat(chunks));
+    }
+
+    @Test
+    public void whenCalculating_thenEveryLambdaIsTimed() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        calculator.registerMetrics(metrics);
+        calculator.calculatePrimes(PrimordialFixtures.CEILING);
+
+        long segments = metrics.timer(MetricRegistry.name(AWSLambdaCalculator.class, "segments")).getCount();
+        assertTrue(segments > 0);
+        assertEquals(segments, metrics.timer(MetricRegistry.name(AWSLambdaCalculator.class, "lambdaInvocations")).getCount());
+        assertEquals(0, metrics.meter(MetricRegistry.name(AWSLambdaCalculator.class, "lambdaErrors")).getCount());
+    }
+
+    @Test
+    public void whenALambdaFails_thenCalculationExceptionIsThrownAndTheErrorIsCounted() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        LambdaInvoker failingInvoker = request -> {
+            CompletableFuture<String> response = new CompletableFuture<>();
+            response.completeExceptionally(new IllegalStateException("The lambda timed out"));
+            return response;
+        };
+        AWSLambdaCalculator failing = createCalculator(failingInvoker, 10, 50);
+        failing.registerMetrics(metrics);
+
+        exception.expect(CalculationException.class);
+        exception.expectMessage("The lambda timed out");
+        try {
+            failing.calculatePrimes(PrimordialFixtures.CEILING);
+        } finally {
+            assertTrue(metrics.meter(MetricRegistry.name(AWSLambdaCalculator.class, "lambdaErrors")).getCount() > 0);
+        }
+    }
+
+    @Test
+    public void whenTheMonitorIsCancelled_thenTheRemainingSegmentsAreNotInvoked() throws Exception {
+        AtomicInteger invocations = new AtomicInteger();
+        LambdaInvoker localInvoker = new LocalLambdaInvoker(scheduler, 1);
+        AWSLambdaCalculator singleLambda = new AWSLambdaCalculator(request -> {
+            invocations.incrementAndGet();
+            return localInvoker.invoke(request);
+        }, 10, 50, 1, 19);
+        ProgressMonitor monitor = new ProgressMonitor() {
+            @Override
+            public void segmentCompleted() {
+                super.segmentCompleted();
+                if (getCompletedSegments() == 3) {
+                    cancel();
+                }
+            }
+        };
+        exception.expect(CalculationCancelledException.class);
+        try {
+            singleLambda.calculatePrimes(PrimordialFixtures.CEILING, monitor);
+        } finally {
+            assertEquals(3, invocations.get());
+            assertTrue(monitor.getTotalSegments() > 3);
+        }
+    }
+
+    @Test
+    public void whenTheDeadlinePasses_thenTheLambdasInFlightAreCancelled() throws Exception {
+        List<CompletableFuture<String>> responses = Lists.newCopyOnWriteArrayList();
+        LambdaInvoker hangingInvoker = request -> {
+            CompletableFuture<String> response = new CompletableFuture<>();
+            responses.add(response);
+            return response;
+        };
+        AWSLambdaCalculator hanging = createCalculator(hangingInvoker, 10, 50);
+
+        exception.expect(CalculationCancelledException.class);
+        try {
+            hanging.calculatePrimes(PrimordialFixtures.CEILING, new ProgressMonitor(50));
+        } finally {
+            assertEquals(NUM_LAMBDAS, responses.size());
+            assertTrue(responses.stream().allMatch(CompletableFuture::isCancelled));
+        }
+    }
+
+    private AWSLambdaCalculator createCalculator(LambdaInvoker invoker, int minSegmentSize, int maxSegmentSize) {
+        return new AWSLambdaCalculator(invoker, minSegmentSize, maxSegmentSize, NUM_LAMBDAS, 19);
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.villarsolutions.primordial.calculator.impl.aws;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
+import com.villarsolutions.primordial.PrimordialFixtures;
+import com.villarsolutions.primordial.calculator.AbstractPrimeCalculatorTest;
+import com.villarsolutions.primordial.calculator.PrimeCalculator;
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.exception.CalculationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.villarsolutions.primordial.PrimordialFixtures.PRIMES_UP_TO_CEILING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The lambdas run in-process, see LocalLambdaInvoker.  The functionality is tested in the abstract superclass.
+ */
+public class HybridSieveCalculatorTest extends AbstractPrimeCalculatorTest {
+
+    private static final int NUM_THREADS = 2;
+    private static final int NUM_LAMBDAS = 2;
+
+    private ExecutorService executorService;
+    private ScheduledExecutorService scheduler;
+    private HybridSieveCalculator calculator;
+
+    @Before
+    public void setUp() throws Exception {
+        executorService = Executors.newFixedThreadPool(NUM_THREADS);
+        scheduler = Executors.newScheduledThreadPool(NUM_LAMBDAS);
+        calculator = createCalculator(new LocalLambdaInvoker(scheduler, 1), 1, Integer.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executorService.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    protected PrimeCalculator getCalculator() {
+        return calculator;
+    }
+
+    @Test
+    public void whenThereAreManySegments_thenBothSidesSieveSomeAndTheyAreConcatenatedInOrder() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        HybridSieveCalculator smallSegments = createCalculator(new LocalLambdaInvoker(scheduler, 1), 10, 50);
+        smallSegments.registerMetrics(metrics);
+
+        assertEquals(PRIMES_UP_TO_CEILING, smallSegments.calculatePrimes(PrimordialFixtures.CEILING));
+        assertTrue(getCount(metrics, "localSegments") > 0);
+        assertTrue(getCount(metrics, "remoteSegments") > 0);
+    }
+
+    @Test
+    public void whenTheLambdasAreSlow_thenTheLocalWorkersSieveMostSegments() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        HybridSieveCalculator slowLambdas = createCalculator(new LocalLambdaInvoker(scheduler, 100), 10, 50);
+        slowLambdas.registerMetrics(metrics);
+
+        assertEquals(PRIMES_UP_TO_CEILING, slowLambdas.calculatePrimes(PrimordialFixtures.CEILING));
+        assertTrue(getCount(metrics, "remoteSegments") <= NUM_LAMBDAS * 2);
+        assertTrue(getCount(metrics, "localSegments") > getCount(metrics, "remoteSegments"));
+    }
+
+    @Test
+    public void whenStreamingManySegments_thenEachSegmentIsHandedOverInOrder() throws Exception {
+        HybridSieveCalculator smallSegments = createCalculator(new LocalLambdaInvoker(scheduler, 1), 10, 50);
+        List<PrimeSequence> chunks = Lists.newArrayList();
+        smallSegments.streamPrimes(PrimordialFixtures.CEILING, chunks::add);
+
+        assertTrue(chunks.size() > 10);
+        assertEquals(PRIMES_UP_TO_CEILING, PrimeSequence.concat(chunks));
+    }
+
+    @Test
+    public void whenALambdaFails_thenCalculationExceptionIsThrown() throws Exception {
+        LambdaInvoker failingInvoker = request -> {
+            CompletableFuture<String> response = new CompletableFuture<>();
+            response.completeExceptionally(new IllegalStateException("The lambda timed out"));
+            return response;
+        };
+        HybridSieveCalculator failing = createCalculator(failingInvoker, 10, 50);
+
+        exception.expect(CalculationException.class);
+        exception.expectMessage("The lambda timed out");
+        failing.calculatePrimes(PrimordialFixtures.CEILING);
+    }
+
+    private HybridSieveCalculator createCalculator(LambdaInvoker invoker, int minSegmentSize, int maxSegmentSize) {
+        return new HybridSieveCalculator(executorService, NUM_THREADS, 32, invoker, NUM_LAMBDAS,
+            minSegmentSize, maxSegmentSize, 19);
+    }
+
+    private static long getCount(MetricRegistry metrics, String name) {
+        return metrics.meter(MetricRegistry.name(HybridSieveCalculator.class, name)).getCount();
+    }
+
+}
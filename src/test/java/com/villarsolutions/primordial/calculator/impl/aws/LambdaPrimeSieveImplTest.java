@@ -0,0 +1,52 @@
+package com.villarsolutions.primordial.calculator.impl.aws;
+
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.impl.MillerRabin;
+import com.villarsolutions.primordial.calculator.impl.Segment;
+import com.villarsolutions.primordial.calculator.impl.SegmentedSieveUtil;
+import org.junit.Test;
+
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LambdaPrimeSieveImplTest {
+
+    private final MillerRabin millerRabin = new MillerRabin();
+
+    @Test
+    public void whenSegmentsAreRequestedInAnyOrder_thenTheirPrimesAreFound() throws Exception {
+        assertSegment(Segment.create(10_000_000_000L, 100_000));
+        assertSegment(Segment.create(2, 1000));
+        assertSegment(Segment.create(1_000_000, 1000));
+        assertSegment(Segment.create(100_000_000_000L, 10_000));
+    }
+
+    @Test
+    public void whenTheSegmentIsAboveTheSquareOfTheStoredSievingPrimes_thenItIsSievedAsARange() throws Exception {
+        long lowerBound = (SegmentedSieveUtil.MAX_STORED_SIEVING_PRIME + 1) * (SegmentedSieveUtil.MAX_STORED_SIEVING_PRIME + 1);
+        assertSegment(Segment.create(lowerBound, 2000));
+        assertSegment(Segment.create(Long.MAX_VALUE - 999, 1000));
+    }
+
+    @Test
+    public void whenTheSievingPrimesAreExtended_thenTheyHoldEveryPrimeUpToTheCeiling() throws Exception {
+        PrimeSequence sievingPrimes = LambdaPrimeSieveImpl.getSievingPrimes(1_000_000);
+        assertTrue(sievingPrimes.get(sievingPrimes.size() - 1) >= 999_983);
+
+        long[] expected = LongStream.rangeClosed(2, 1_000_000).filter(millerRabin::isPrime).toArray();
+        assertArrayEquals(expected, sievingPrimes.slice(2, 1_000_000).toArray());
+    }
+
+    private void assertSegment(Segment segment) {
+        String response = LambdaPrimeSieveImpl.calculatePrimesInSegment(SieveSegmentRequest.create(segment));
+        long[] expected = LongStream.rangeClosed(segment.getLowerBound(), segment.getUpperBound())
+            .filter(millerRabin::isPrime).toArray();
+        long[] actual = SegmentPrimesCodec.decode(response).toArray();
+        assertEquals(segment.toString(), expected.length, actual.length);
+        assertArrayEquals(expected, actual);
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.villarsolutions.primordial.calculator.impl.aws;
+
+import com.villarsolutions.primordial.calculator.PrimeSequence;
+import com.villarsolutions.primordial.calculator.impl.PrimeIterator;
+import com.villarsolutions.primordial.exception.CalculationException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+import static com.villarsolutions.primordial.PrimordialFixtures.PRIMES_UP_TO_CEILING;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SegmentPrimesCodecTest {
+
+    @Test
+    public void whenThePrimesStartFrom2_thenTheyAreDecodedAsTheyWereEncoded() throws Exception {
+        assertRoundTrip(PRIMES_UP_TO_CEILING);
+        assertRoundTrip(PrimeSequence.of(2));
+        assertRoundTrip(PrimeSequence.of(2, 3));
+        assertRoundTrip(new PrimeSequence());
+    }
+
+    @Test
+    public void whenThePrimesAreNearLongMaxValue_thenTheyAreDecodedAsTheyWereEncoded() throws Exception {
+        assertRoundTrip(PrimeSequence.wrap(PrimeIterator.before(Long.MAX_VALUE).stream().limit(1000).sorted().toArray()));
+    }
+
+    @Test
+    public void whenASegmentHasManyPrimes_thenTheyTakeAboutOneCharacterEach() throws Exception {
+        PrimeSequence primes = PrimeSequence.wrap(PrimeIterator.after(1_000_000_000).stream().limit(1_000_000).toArray());
+        String encoded = SegmentPrimesCodec.encode(primes);
+        assertTrue(encoded.length() < 1_100_000);
+        assertRoundTrip(primes);
+    }
+
+    @Test
+    public void whenTheResponseIsTruncated_thenDecodingFails() throws Exception {
+        String encoded = SegmentPrimesCodec.encode(PRIMES_UP_TO_CEILING);
+        byte[] bytes = Base64.getDecoder().decode(encoded);
+        String truncated = Base64.getEncoder().encodeToString(Arrays.copyOf(bytes, bytes.length / 2));
+        try {
+            SegmentPrimesCodec.decode(truncated);
+            fail("Expected CalculationException");
+        } catch (CalculationException e) {
+            // expected
+        }
+    }
+
+    private static void assertRoundTrip(PrimeSequence primes) {
+        PrimeSequence decoded = SegmentPrimesCodec.decode(SegmentPrimesCodec.encode(primes));
+        assertEquals(primes.size(), decoded.size());
+        assertArrayEquals(primes.toArray(), decoded.toArray());
+    }
+
+}
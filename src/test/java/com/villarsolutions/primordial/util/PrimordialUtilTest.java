@@ -2,7 +2,12 @@ package com.villarsolutions.primordial.util;
 
 import org.junit.Test;
 
+import java.util.concurrent.CompletableFuture;
+
 import static com.villarsolutions.primordial.util.PrimordialUtil.isEven;
+import static com.villarsolutions.primordial.util.PrimordialUtil.isqrt;
+import static com.villarsolutions.primordial.util.PrimordialUtil.propagateCancellation;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -21,4 +26,32 @@ public class PrimordialUtilTest {
         assertTrue(isEven(-90));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testIsqrt() throws Exception {
+        assertEquals(0, isqrt(0));
+        assertEquals(1, isqrt(1));
+        assertEquals(1, isqrt(3));
+        assertEquals(2, isqrt(4));
+        assertEquals(31, isqrt(1023));
+        assertEquals(32, isqrt(1024));
+        assertEquals(46_340, isqrt(Integer.MAX_VALUE));
+        assertEquals(Integer.MAX_VALUE, isqrt((long) Integer.MAX_VALUE * Integer.MAX_VALUE));
+        assertEquals(Integer.MAX_VALUE - 1, isqrt((long) Integer.MAX_VALUE * Integer.MAX_VALUE - 1));
+        assertEquals(3_037_000_499L, isqrt(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPropagateCancellation() throws Exception {
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<Integer> derived = propagateCancellation(source, source.thenApply(String::length));
+        derived.cancel(true);
+        assertTrue(source.isCancelled());
+
+        CompletableFuture<String> completed = new CompletableFuture<>();
+        CompletableFuture<Integer> length = propagateCancellation(completed, completed.thenApply(String::length));
+        completed.complete("primes");
+        assertEquals(Integer.valueOf(6), length.get());
+        assertFalse(completed.isCancelled());
+    }
+
+}